@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of authorized GET calls, authenticated by API key and by JWT. Resolved principals are
+ * cached, so this measures the steady state of a caller repeating its calls.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookAuthBenchmark {
+  private WebhookBenchmarkFixture fixture;
+  private HttpServletRequest apikeyRequest;
+  private HttpServletRequest jwtRequest;
+  private HttpServletResponse response;
+
+  @Setup
+  public void setUp() {
+    fixture = new WebhookBenchmarkFixture();
+    WebhookBenchmarkFixture.BenchmarkWebhookService.responseSize = 1;
+    apikeyRequest = fixture.request(WebhookBenchmarkFixture.API_KEY, null, null);
+    jwtRequest = fixture.request(null, WebhookBenchmarkFixture.JWT, null);
+    response = fixture.response();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public void apikey() {
+    fixture.getHandler().doGet(apikeyRequest, response);
+  }
+
+  @Benchmark
+  public void jwt() {
+    fixture.getHandler().doGet(jwtRequest, response);
+  }
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.mockito.MockSettings;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.openbravo.base.session.OBPropertiesProvider;
+import org.openbravo.base.util.OBClassLoader;
+import org.openbravo.base.weld.WeldUtils;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+import org.openbravo.database.SessionInfo;
+import org.openbravo.model.ad.access.Role;
+import org.openbravo.model.ad.access.UserRoles;
+
+import com.auth0.jwt.interfaces.Claim;
+import com.auth0.jwt.interfaces.DecodedJWT;
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.DefinedWebhookParam;
+import com.etendoerp.webhookevents.data.DefinedwebhookAccess;
+import com.etendoerp.webhookevents.data.DefinedwebhookRole;
+import com.etendoerp.webhookevents.data.DefinedwebhookToken;
+import com.smf.securewebservices.utils.SecureWebServicesUtils;
+
+/**
+ * Stubbed environment of the inbound webhook benchmarks: a webhook granted to an API key and to the
+ * role of a JWT, resolved from mocked DAL lookups.
+ * <p>
+ * Mocks are stub only, so they do not record invocations during long runs. Static mocks are bound
+ * to the thread that creates them, so the fixture must be opened and used by the benchmark thread.
+ */
+class WebhookBenchmarkFixture implements AutoCloseable {
+  static final String WEBHOOK = "benchmark";
+  static final String API_KEY = "benchmarkApiKey";
+  static final String JWT = "header.payload.signature";
+  static final String PAYLOAD = "payload";
+  private static final String TOKEN_ID = "benchmarkToken";
+  private static final String ROLE_ID = "benchmarkRole";
+
+  private final List<MockedStatic<?>> statics = new ArrayList<>();
+  private final WebhookServiceHandler handler = new WebhookServiceHandler();
+
+  WebhookBenchmarkFixture() {
+    OBDal obDal = stub(OBDal.class);
+    OBPropertiesProvider properties = stub(OBPropertiesProvider.class);
+    OBClassLoader classLoader = stub(OBClassLoader.class);
+    staticMock(OBDal.class).when(OBDal::getInstance).thenReturn(obDal);
+    staticMock(OBContext.class).when(OBContext::getOBContext).thenReturn(stub(OBContext.class));
+    staticMock(SessionInfo.class);
+    staticMock(OBPropertiesProvider.class).when(OBPropertiesProvider::getInstance).thenReturn(properties);
+    when(properties.getOpenbravoProperties()).thenReturn(new Properties());
+    staticMock(OBClassLoader.class).when(OBClassLoader::getInstance).thenReturn(classLoader);
+    try {
+      when(classLoader.loadClass(BenchmarkWebhookService.class.getName()))
+          .thenReturn((Class) BenchmarkWebhookService.class);
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException(e);
+    }
+    staticMock(WeldUtils.class).when(
+        () -> WeldUtils.getInstanceFromStaticBeanManager(BenchmarkWebhookService.class))
+        .thenReturn(new BenchmarkWebhookService());
+
+    DefinedwebhookToken token = stub(DefinedwebhookToken.class);
+    UserRoles userRoles = stub(UserRoles.class);
+    Role role = stub(Role.class);
+    when(token.getId()).thenReturn(TOKEN_ID);
+    when(token.getUserRole()).thenReturn(userRoles);
+    when(userRoles.getRole()).thenReturn(role);
+    when(role.getId()).thenReturn(ROLE_ID);
+
+    DefinedWebhookParam param = stub(DefinedWebhookParam.class);
+    when(param.getName()).thenReturn(PAYLOAD);
+    DefinedwebhookAccess access = stub(DefinedwebhookAccess.class);
+    when(access.getSmfwheDefinedwebhookToken()).thenReturn(token);
+    DefinedwebhookRole roleAccess = stub(DefinedwebhookRole.class);
+    when(roleAccess.getRole()).thenReturn(role);
+    DefinedWebHook webHook = stub(DefinedWebHook.class);
+    when(webHook.getId()).thenReturn(WEBHOOK);
+    when(webHook.getName()).thenReturn(WEBHOOK);
+    when(webHook.getJavaClass()).thenReturn(BenchmarkWebhookService.class.getName());
+    when(webHook.getSmfwheDefinedwebhookParamList()).thenReturn(List.of(param));
+    when(webHook.getSmfwheDefinedwebhookAccessList()).thenReturn(List.of(access));
+    when(webHook.getSmfwheDefinedwebhookRoleList()).thenReturn(List.of(roleAccess));
+    when(obDal.get(DefinedWebHook.class, WEBHOOK)).thenReturn(webHook);
+
+    OBQuery<DefinedWebHook> webhookQuery = stub(OBQuery.class);
+    when(obDal.createQuery(DefinedWebHook.class, "name = :name")).thenReturn(webhookQuery);
+    when(webhookQuery.setNamedParameter(anyString(), any())).thenReturn(webhookQuery);
+    when(webhookQuery.setMaxResult(1)).thenReturn(webhookQuery);
+    when(webhookQuery.uniqueResult()).thenReturn(webHook);
+
+    OBCriteria<DefinedwebhookToken> tokenCriteria = stub(OBCriteria.class);
+    when(obDal.createCriteria(DefinedwebhookToken.class)).thenReturn(tokenCriteria);
+    when(tokenCriteria.setFilterOnReadableClients(false)).thenReturn(tokenCriteria);
+    when(tokenCriteria.setFilterOnReadableOrganization(false)).thenReturn(tokenCriteria);
+    when(tokenCriteria.add(any())).thenReturn(tokenCriteria);
+    when(tokenCriteria.setMaxResults(1)).thenReturn(tokenCriteria);
+    when(tokenCriteria.uniqueResult()).thenReturn(token);
+    OBQuery<UserRoles> userRolesQuery = stub(OBQuery.class);
+    when(obDal.createQuery(UserRoles.class,
+        "as e where e.role.id = :roleId and e.userContact.id = :userId"))
+        .thenReturn(userRolesQuery);
+    when(userRolesQuery.setNamedParameter(anyString(), any())).thenReturn(userRolesQuery);
+    when(userRolesQuery.setMaxResult(1)).thenReturn(userRolesQuery);
+
+    DecodedJWT decodedJWT = stub(DecodedJWT.class);
+    for (String claim : new String[] { "user", "role", "organization", "warehouse", "client" }) {
+      Claim value = stub(Claim.class);
+      when(value.asString()).thenReturn(claim.equals("role") ? ROLE_ID : claim);
+      when(decodedJWT.getClaim(claim)).thenReturn(value);
+    }
+    MockedStatic<SecureWebServicesUtils> secureWebServices = staticMock(SecureWebServicesUtils.class);
+    secureWebServices.when(() -> SecureWebServicesUtils.decodeToken(JWT)).thenReturn(decodedJWT);
+    secureWebServices.when(() -> SecureWebServicesUtils.createContext(anyString(), anyString(),
+        anyString(), anyString(), anyString())).thenReturn(stub(OBContext.class));
+
+    WebhookRegistry.getInstance().invalidate();
+    WebhookAuthCache.getInstance().invalidate();
+    WebhookAccessIndex.getInstance().invalidate();
+    WebhookHandlerCache.getInstance().invalidate();
+    WebhookMetrics.getInstance().reset();
+  }
+
+  WebhookServiceHandler getHandler() {
+    return handler;
+  }
+
+  /**
+   * @param apikey
+   *     API key of the caller, or null
+   * @param jwt
+   *     JWT of the caller, or null
+   * @param body
+   *     Body of the request, or null for a GET request without params
+   * @return A request to the benchmark webhook
+   */
+  HttpServletRequest request(String apikey, String jwt, String body) {
+    HttpServletRequest request = stub(HttpServletRequest.class);
+    when(request.getPathInfo()).thenReturn("/" + WEBHOOK);
+    when(request.getParameter("apikey")).thenReturn(apikey);
+    when(request.getHeader("Authorization")).thenReturn(jwt != null ? "Bearer " + jwt : null);
+    when(request.getParameterMap()).thenReturn(Collections.emptyMap());
+    if (body != null) {
+      try {
+        when(request.getReader()).thenAnswer(
+            invocation -> new BufferedReader(new StringReader(body)));
+      } catch (IOException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+    return request;
+  }
+
+  /**
+   * @return A response discarding its body
+   */
+  HttpServletResponse response() {
+    HttpServletResponse response = stub(HttpServletResponse.class);
+    try {
+      when(response.getWriter()).thenReturn(new PrintWriter(Writer.nullWriter()));
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+    return response;
+  }
+
+  @Override
+  public void close() {
+    statics.forEach(MockedStatic::close);
+    statics.clear();
+  }
+
+  private <T> MockedStatic<T> staticMock(Class<T> type) {
+    MockedStatic<T> mocked = mockStatic(type, settings());
+    statics.add(mocked);
+    return mocked;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T stub(Class<?> type) {
+    return (T) Mockito.mock(type, settings());
+  }
+
+  private static MockSettings settings() {
+    return withSettings().stubOnly();
+  }
+
+  /**
+   * Handler of the benchmark webhook. It answers with the length of the received payload and
+   * {@link #responseSize} variables.
+   */
+  public static class BenchmarkWebhookService extends BaseWebhookService {
+    static volatile int responseSize = 1;
+
+    @Override
+    public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+      String payload = parameter.get(PAYLOAD);
+      responseVars.put("received", String.valueOf(payload != null ? payload.length() : 0));
+      for (int i = 0; i < responseSize; i++) {
+        responseVars.put("var" + i, "value" + i);
+      }
+    }
+  }
+}
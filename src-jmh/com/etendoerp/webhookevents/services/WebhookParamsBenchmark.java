@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang3.StringUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of POST calls by body size. The body holds the declared param of the webhook and an
+ * undeclared member of the same size, which the streaming parser must skip.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebhookParamsBenchmark {
+  @Param({ "100", "10000", "1000000" })
+  public int bodySize;
+
+  private WebhookBenchmarkFixture fixture;
+  private HttpServletRequest request;
+  private HttpServletResponse response;
+
+  @Setup
+  public void setUp() {
+    fixture = new WebhookBenchmarkFixture();
+    WebhookBenchmarkFixture.BenchmarkWebhookService.responseSize = 1;
+    String value = StringUtils.repeat('x', bodySize / 2);
+    String body = "{\"ignored\":\"" + value + "\",\"" + WebhookBenchmarkFixture.PAYLOAD + "\":\""
+        + value + "\"}";
+    request = fixture.request(WebhookBenchmarkFixture.API_KEY, null, body);
+    response = fixture.response();
+  }
+
+  @TearDown
+  public void tearDown() {
+    fixture.close();
+  }
+
+  @Benchmark
+  public void post() {
+    fixture.getHandler().doPost(request, response);
+  }
+}
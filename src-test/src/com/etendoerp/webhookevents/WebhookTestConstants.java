@@ -26,7 +26,6 @@ public class WebhookTestConstants {
   public static final String TEST_DESCRIPTION = "Test Description";
   public static final String TEST_WEBHOOK_ENDPOINT = "/webhooks/testWebhook";
 
-  public static final String GET_DEFINED_WEBHOOK_ROLE = "getDefinedwebhookRole";
   public static final String CHECK_ROLE_SECURITY = "checkRoleSecurity";
 
   public static final String DEFAULT_API_PREFIX = "/api";
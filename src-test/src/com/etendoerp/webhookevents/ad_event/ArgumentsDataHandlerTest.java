@@ -30,6 +30,7 @@ import com.etendoerp.webhookevents.data.ArgumentsData;
 import com.etendoerp.webhookevents.data.Events;
 import com.etendoerp.webhookevents.data.JsonXmlData;
 import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Test class for ArgumentsDataHandler.
@@ -58,6 +59,7 @@ public class ArgumentsDataHandlerTest extends OBBaseTest {
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    WebhookMessages.invalidate();
 
     handler = new ArgumentsDataHandler() {
       @Override
@@ -31,6 +31,7 @@ import com.etendoerp.webhookevents.data.Arguments;
 import com.etendoerp.webhookevents.data.Events;
 import com.etendoerp.webhookevents.data.UrlPathParam;
 import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Test class for ArgumentsHandler.
@@ -59,6 +60,7 @@ public class ArgumentsHandlerTest extends OBBaseTest {
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    WebhookMessages.invalidate();
 
     handler = new ArgumentsHandler() {
       @Override
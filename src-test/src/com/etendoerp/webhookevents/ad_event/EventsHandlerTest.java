@@ -36,6 +36,7 @@ import org.openbravo.test.base.OBBaseTest;
 
 import com.etendoerp.webhookevents.data.EventType;
 import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Test class for EventsHandler, which handles saving and updating of Events.
@@ -66,6 +67,7 @@ public class EventsHandlerTest extends OBBaseTest {
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    WebhookMessages.invalidate();
     initializeMocks();
     setupBasicMockBehavior();
   }
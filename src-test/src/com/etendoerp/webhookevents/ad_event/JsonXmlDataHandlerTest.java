@@ -33,6 +33,7 @@ import com.etendoerp.webhookevents.data.Events;
 import com.etendoerp.webhookevents.data.JsonXmlData;
 import com.etendoerp.webhookevents.data.Webhook;
 import com.etendoerp.webhookevents.webhook_util.Constants;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Test class for JsonXmlDataHandler.
@@ -60,6 +61,7 @@ public class JsonXmlDataHandlerTest extends OBBaseTest {
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    WebhookMessages.invalidate();
 
     handler = new JsonXmlDataHandler() {
       @Override
@@ -31,6 +31,7 @@ import com.etendoerp.webhookevents.data.Events;
 import com.etendoerp.webhookevents.data.UrlPathParam;
 import com.etendoerp.webhookevents.data.Webhook;
 import com.etendoerp.webhookevents.webhook_util.Constants;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Test class for UrlPathParameterHandler.
@@ -57,6 +58,7 @@ public class UrlPathParameterHandlerTest extends OBBaseTest {
   @Before
   public void setUp() throws Exception {
     super.setUp();
+    WebhookMessages.invalidate();
 
     handler = new UrlPathParameterHandler() {
       @Override
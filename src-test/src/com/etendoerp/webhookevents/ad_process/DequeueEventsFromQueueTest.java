@@ -0,0 +1,258 @@
+package com.etendoerp.webhookevents.ad_process;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.scheduling.ProcessLogger;
+
+import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.data.QueueEventHook;
+import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.data.WebhookDeadLetter;
+import com.etendoerp.webhookevents.exceptions.WebhookCircuitOpenException;
+import com.etendoerp.webhookevents.webhook_util.WebhookDeliveryPipeline;
+import com.etendoerp.webhookevents.webhook_util.WebhookDeliveryResult;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+import com.etendoerp.webhookevents.webhook_util.WebhookRetryPolicy;
+
+/**
+ * Unit tests for the retries and dead letters of the DequeueEventsFromQueue class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class DequeueEventsFromQueueTest {
+
+  private static final String ENTRY_ID = "entryId";
+  private static final String RECORD_ID = "recordId";
+
+  @Mock
+  private OBDal obDal;
+  @Mock
+  private OBProvider obProvider;
+  @Mock
+  private ProcessLogger logger;
+  @Mock
+  private WebhookRetryPolicy retryPolicy;
+  @Mock
+  private QueueEventHook entry;
+  @Mock
+  private Events event;
+  @Mock
+  private Table table;
+  @Mock
+  private Webhook delivered;
+  @Mock
+  private Webhook failed;
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<OBProvider> mockedOBProvider;
+  private MockedStatic<WebhookMessages> mockedMessages;
+  private final Date nextAttempt = new Date();
+
+  /**
+   * Sets up a queue entry of an event sent to two webhooks and a retry policy that is not
+   * exhausted.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedOBProvider = mockStatic(OBProvider.class);
+    mockedMessages = mockStatic(WebhookMessages.class, CALLS_REAL_METHODS);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+    mockedOBProvider.when(OBProvider::getInstance).thenReturn(obProvider);
+    mockedMessages.when(() -> WebhookMessages.getMessage(anyString())).thenReturn("%s %s %s");
+
+    when(obDal.get(QueueEventHook.class, ENTRY_ID)).thenReturn(entry);
+    when(entry.getSmfwheEvents()).thenReturn(event);
+    when(entry.getTable()).thenReturn(table);
+    when(entry.getRecord()).thenReturn(RECORD_ID);
+    when(event.getName()).thenReturn("event");
+    when(delivered.getName()).thenReturn("delivered");
+    when(failed.getName()).thenReturn("failed");
+    when(retryPolicy.isExhausted(anyLong())).thenReturn(false);
+    when(retryPolicy.getNextAttempt(anyLong())).thenReturn(nextAttempt);
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+    mockedOBProvider.close();
+    mockedMessages.close();
+  }
+
+  /**
+   * An event sent to all its webhooks is removed from the queue and each failed webhook gets its
+   * own retry entry, so the webhooks that got it are not called again.
+   */
+  @Test
+  void testFailedFanOutIsSplitPerWebhook() {
+    QueueEventHook retry = mock(QueueEventHook.class);
+    when(obProvider.get(QueueEventHook.class)).thenReturn(retry);
+    var delivery = delivery(result(delivered, 200, null),
+        result(failed, 503, new IOException("Service unavailable")));
+
+    DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    verify(retry).setSmfwheWebhook(failed);
+    verify(retry).setSmfwheEvents(event);
+    verify(retry).setRecord(RECORD_ID);
+    verify(retry).setAttempts(1L);
+    verify(retry).setNextAttempt(nextAttempt);
+    verify(retry).setLastStatus(503L);
+    verify(retry).setLastError("IOException: Service unavailable");
+    verify(obDal).save(retry);
+    verify(obDal).remove(entry);
+    verify(obProvider, times(1)).get(QueueEventHook.class);
+  }
+
+  /**
+   * A retry entry that fails again is rescheduled in place with one more attempt.
+   */
+  @Test
+  void testRetryEntryIsRescheduledInPlace() {
+    when(entry.getSmfwheWebhook()).thenReturn(failed);
+    when(entry.getAttempts()).thenReturn(2L);
+    var delivery = delivery(result(failed, 0, new IOException("Connection refused")));
+
+    DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    verify(entry).setAttempts(3L);
+    verify(entry).setNextAttempt(nextAttempt);
+    verify(entry).setLastStatus(null);
+    verify(entry).setLastError("IOException: Connection refused");
+    verify(retryPolicy).getNextAttempt(3L);
+    verify(obDal).save(entry);
+    verify(obDal, never()).remove(any());
+    verify(obProvider, never()).get(QueueEventHook.class);
+  }
+
+  /**
+   * A retry entry that runs out of attempts is moved to the dead letters and removed from the
+   * queue only once.
+   */
+  @Test
+  void testExhaustedRetryIsMovedToDeadLetters() {
+    WebhookDeadLetter deadLetter = mock(WebhookDeadLetter.class);
+    when(obProvider.get(WebhookDeadLetter.class)).thenReturn(deadLetter);
+    when(entry.getSmfwheWebhook()).thenReturn(failed);
+    when(entry.getAttempts()).thenReturn(7L);
+    when(retryPolicy.isExhausted(8L)).thenReturn(true);
+    var delivery = delivery(result(failed, 500, new IOException("Internal error")));
+
+    DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    verify(deadLetter).setSmfwheWebhook(failed);
+    verify(deadLetter).setSmfwheEvents(event);
+    verify(deadLetter).setTable(table);
+    verify(deadLetter).setRecord(RECORD_ID);
+    verify(deadLetter).setAttempts(8L);
+    verify(deadLetter).setLastStatus(500L);
+    verify(obDal).save(deadLetter);
+    verify(obDal, times(1)).remove(entry);
+    verify(obDal, never()).save(entry);
+  }
+
+  /**
+   * A fan-out entry whose webhook fails with a single attempt allowed goes straight to the dead
+   * letters, and the entry is removed once.
+   */
+  @Test
+  void testExhaustedFanOutIsMovedToDeadLetters() {
+    WebhookDeadLetter deadLetter = mock(WebhookDeadLetter.class);
+    when(obProvider.get(WebhookDeadLetter.class)).thenReturn(deadLetter);
+    when(retryPolicy.isExhausted(1L)).thenReturn(true);
+    var delivery = delivery(result(failed, 404, new IOException("Not found")));
+
+    DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    verify(deadLetter).setAttempts(1L);
+    verify(obDal).save(deadLetter);
+    verify(obDal, times(1)).remove(entry);
+    verify(obProvider, never()).get(QueueEventHook.class);
+  }
+
+  /**
+   * A delivery deferred by an open circuit breaker is scheduled for when the breaker allows it,
+   * without counting an attempt, so it never reaches the dead letters.
+   */
+  @Test
+  void testCircuitOpenDeferralDoesNotCountAttempt() {
+    Date retryAt = new Date(System.currentTimeMillis() + 60000);
+    when(entry.getSmfwheWebhook()).thenReturn(failed);
+    when(entry.getAttempts()).thenReturn(2L);
+    when(retryPolicy.isExhausted(anyLong())).thenReturn(true);
+    var delivery = delivery(result(failed, 0,
+        new WebhookCircuitOpenException("Circuit open", retryAt.getTime())));
+
+    DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    verify(entry).setAttempts(2L);
+    verify(entry).setNextAttempt(retryAt);
+    verify(entry, never()).setLastError(any());
+    verify(obDal).save(entry);
+    verify(obDal, never()).remove(any());
+    verify(obProvider, never()).get(WebhookDeadLetter.class);
+  }
+
+  /**
+   * A successful retry entry is removed from the queue.
+   */
+  @Test
+  void testDeliveredRetryIsRemoved() {
+    when(entry.getSmfwheWebhook()).thenReturn(failed);
+    var delivery = delivery(result(failed, 200, null));
+
+    int changes = DequeueEventsFromQueue.recordDeliveries(List.of(delivery), retryPolicy, logger);
+
+    assertEquals(1, changes);
+    verify(obDal).remove(entry);
+    verify(obDal, never()).save(any());
+  }
+
+  private static WebhookDeliveryPipeline.Delivery delivery(WebhookDeliveryResult... results) {
+    boolean successful = List.of(results).stream().allMatch(WebhookDeliveryResult::isSuccessful);
+    WebhookDeliveryPipeline.Delivery delivery = mock(WebhookDeliveryPipeline.Delivery.class);
+    when(delivery.getQueueEntryId()).thenReturn(ENTRY_ID);
+    when(delivery.getEventName()).thenReturn("event");
+    when(delivery.getResults()).thenReturn(List.of(results));
+    when(delivery.isSuccessful()).thenReturn(successful);
+    return delivery;
+  }
+
+  private static WebhookDeliveryResult result(Webhook webhook, int status, Exception error) {
+    WebhookDeliveryResult result = mock(WebhookDeliveryResult.class);
+    when(result.getWebhook()).thenReturn(webhook);
+    when(result.getStatus()).thenReturn(status);
+    when(result.getError()).thenReturn(error);
+    when(result.isSuccessful()).thenReturn(error == null);
+    return result;
+  }
+}
@@ -0,0 +1,106 @@
+package com.etendoerp.webhookevents.ad_process;
+
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hibernate.ScrollableResults;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.datamodel.Table;
+import org.openbravo.model.common.enterprise.Organization;
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.scheduling.ProcessLogger;
+
+import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.data.QueueEventHook;
+import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.data.WebhookDeadLetter;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Unit tests for the RedriveDeadLetters class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class RedriveDeadLettersTest {
+
+  @Mock
+  private OBDal obDal;
+  @Mock
+  private OBProvider obProvider;
+  @Mock
+  private ProcessBundle bundle;
+  @Mock
+  private ProcessLogger logger;
+  @Mock
+  private OBCriteria<WebhookDeadLetter> criteria;
+  @Mock
+  private ScrollableResults scroller;
+  @Mock
+  private WebhookDeadLetter deadLetter;
+  @Mock
+  private QueueEventHook entry;
+
+  /**
+   * A dead letter is queued again for the webhook that failed, with its attempts reset, and it is
+   * removed from the dead letters.
+   *
+   * @throws Exception
+   *     if the process fails
+   */
+  @Test
+  void testDeadLetterIsQueuedWithAttemptsReset() throws Exception {
+    try (MockedStatic<OBDal> mockedOBDal = mockStatic(OBDal.class);
+         MockedStatic<OBProvider> mockedOBProvider = mockStatic(OBProvider.class);
+         MockedStatic<OBContext> mockedOBContext = mockStatic(OBContext.class);
+         MockedStatic<WebhookMessages> mockedMessages = mockStatic(WebhookMessages.class,
+             CALLS_REAL_METHODS)) {
+      mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+      mockedOBProvider.when(OBProvider::getInstance).thenReturn(obProvider);
+      mockedMessages.when(() -> WebhookMessages.getMessage(anyString()))
+          .thenReturn("%s dead letters queued again");
+      when(bundle.getLogger()).thenReturn(logger);
+      when(obDal.createCriteria(WebhookDeadLetter.class)).thenReturn(criteria);
+      when(criteria.scroll()).thenReturn(scroller);
+      when(scroller.next()).thenReturn(true, false);
+      when(scroller.get()).thenReturn(new Object[] { deadLetter });
+      when(obProvider.get(QueueEventHook.class)).thenReturn(entry);
+
+      Organization organization = mock(Organization.class);
+      Table table = mock(Table.class);
+      Events event = mock(Events.class);
+      Webhook webhook = mock(Webhook.class);
+      when(deadLetter.getOrganization()).thenReturn(organization);
+      when(deadLetter.getTable()).thenReturn(table);
+      when(deadLetter.getRecord()).thenReturn("recordId");
+      when(deadLetter.getSmfwheEvents()).thenReturn(event);
+      when(deadLetter.getSmfwheWebhook()).thenReturn(webhook);
+      when(deadLetter.getAttempts()).thenReturn(8L);
+
+      new RedriveDeadLetters().doExecute(bundle);
+
+      verify(entry).setOrganization(organization);
+      verify(entry).setTable(table);
+      verify(entry).setRecord("recordId");
+      verify(entry).setSmfwheEvents(event);
+      verify(entry).setSmfwheWebhook(webhook);
+      verify(entry).setAttempts(0L);
+      verify(obDal).save(entry);
+      verify(obDal).remove(deadLetter);
+      verify(logger).logln("1 dead letters queued again");
+    }
+  }
+}
@@ -9,6 +9,8 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.lang.reflect.Field;
@@ -75,6 +77,7 @@ class OpenAPIWebhooksTest {
     mockedOBDal.when(OBDal::getInstance).thenReturn(mockOBDal);
     mockedOBContext.when(OBContext::setAdminMode).thenAnswer(invocation -> null);
     mockedOBContext.when(OBContext::restorePreviousMode).thenAnswer(invocation -> null);
+    OpenAPIWebhooksIndex.getInstance().invalidate();
   }
 
   /**
@@ -466,6 +469,26 @@ class OpenAPIWebhooksTest {
     assertEquals(1, openAPI.getTags().size());
   }
 
+  /**
+   * Tests that the flows are read once and shared by every request until the index is invalidated.
+   */
+  @Test
+  void testFlowsAreIndexedOnce() {
+    List<OpenApiFlow> flows = createMockFlowsWithWebhooks(TEST_FLOW_NAME);
+
+    when(mockOBDal.createCriteria(OpenApiFlow.class)).thenReturn(mockCriteria);
+    when(mockCriteria.list()).thenReturn(flows);
+
+    assertTrue(endpoint.isValid(TEST_FLOW_NAME));
+    endpoint.add(new OpenAPI());
+    assertTrue(new OpenAPIWebhooksEndpoint().isValid(TEST_FLOW_NAME));
+    verify(mockCriteria, times(1)).list();
+
+    OpenAPIWebhooksIndex.getInstance().invalidate();
+    endpoint.add(new OpenAPI());
+    verify(mockCriteria, times(2)).list();
+  }
+
   /**
    * Creates a list of mock OpenApiFlow objects with webhooks for testing.
    *
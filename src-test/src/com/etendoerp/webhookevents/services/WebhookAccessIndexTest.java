@@ -0,0 +1,124 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.model.ad.access.Role;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.DefinedwebhookAccess;
+import com.etendoerp.webhookevents.data.DefinedwebhookRole;
+import com.etendoerp.webhookevents.data.DefinedwebhookToken;
+
+/**
+ * Unit tests for the WebhookAccessIndex class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class WebhookAccessIndexTest {
+
+  private static final String WEBHOOK_ID = "indexWebhookId";
+  private static final String TOKEN_ID = "indexTokenId";
+  private static final String ROLE_ID = "indexRoleId";
+
+  @Mock
+  private OBDal mockOBDal;
+  @Mock
+  private DefinedWebHook mockDefinedWebHook;
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<OBContext> mockedOBContext;
+
+  private final WebhookAccessIndex index = WebhookAccessIndex.getInstance();
+
+  /**
+   * Sets up a webhook granted to one token and one role.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(mockOBDal);
+    when(mockOBDal.get(DefinedWebHook.class, WEBHOOK_ID)).thenReturn(mockDefinedWebHook);
+
+    var access = mock(DefinedwebhookAccess.class);
+    var token = mock(DefinedwebhookToken.class);
+    when(token.getId()).thenReturn(TOKEN_ID);
+    when(access.getSmfwheDefinedwebhookToken()).thenReturn(token);
+    when(mockDefinedWebHook.getSmfwheDefinedwebhookAccessList()).thenReturn(List.of(access));
+
+    var roleAccess = mock(DefinedwebhookRole.class);
+    var role = mock(Role.class);
+    when(role.getId()).thenReturn(ROLE_ID);
+    when(roleAccess.getRole()).thenReturn(role);
+    when(mockDefinedWebHook.getSmfwheDefinedwebhookRoleList()).thenReturn(List.of(roleAccess));
+
+    index.invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+    mockedOBContext.close();
+  }
+
+  /**
+   * Ordinals are stable for the same identifier and distinct between identifiers.
+   */
+  @Test
+  void testOrdinalsAreInterned() {
+    assertEquals(index.getTokenOrdinal(TOKEN_ID), index.getTokenOrdinal(TOKEN_ID));
+    assertNotEquals(index.getTokenOrdinal(TOKEN_ID), index.getTokenOrdinal("otherTokenId"));
+    assertEquals(WebhookAccessIndex.NONE, index.getRoleOrdinal(null));
+  }
+
+  /**
+   * Granted tokens and roles are allowed and the access rows are loaded only once.
+   */
+  @Test
+  void testGrantedAccess() {
+    assertTrue(index.isTokenAllowed(WEBHOOK_ID, index.getTokenOrdinal(TOKEN_ID)));
+    assertTrue(index.isRoleAllowed(WEBHOOK_ID, index.getRoleOrdinal(ROLE_ID)));
+    assertFalse(index.isTokenAllowed(WEBHOOK_ID, index.getTokenOrdinal("otherTokenId")));
+    assertFalse(index.isRoleAllowed(WEBHOOK_ID, WebhookAccessIndex.NONE));
+    verify(mockOBDal, times(1)).get(DefinedWebHook.class, WEBHOOK_ID);
+  }
+
+  /**
+   * Invalidating a webhook rebuilds only its entry on the next lookup.
+   */
+  @Test
+  void testInvalidateWebhook() {
+    int roleOrdinal = index.getRoleOrdinal(ROLE_ID);
+    assertTrue(index.isRoleAllowed(WEBHOOK_ID, roleOrdinal));
+
+    when(mockDefinedWebHook.getSmfwheDefinedwebhookRoleList()).thenReturn(List.of());
+    index.invalidate(WEBHOOK_ID);
+
+    assertFalse(index.isRoleAllowed(WEBHOOK_ID, roleOrdinal));
+    verify(mockOBDal, times(2)).get(DefinedWebHook.class, WEBHOOK_ID);
+  }
+}
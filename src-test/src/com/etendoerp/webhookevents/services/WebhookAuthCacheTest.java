@@ -0,0 +1,82 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookAuthCache class.
+ */
+class WebhookAuthCacheTest {
+
+  private static final String API_KEY = "apikey";
+
+  private final WebhookAuthCache cache = WebhookAuthCache.getInstance();
+
+  /**
+   * Starts every test with an empty cache.
+   */
+  @BeforeEach
+  void setUp() {
+    cache.invalidate();
+  }
+
+  /**
+   * Requests without credentials have no key, so they are never cached.
+   */
+  @Test
+  void testKeyWithoutCredentials() {
+    assertNull(WebhookAuthCache.key(null, ""));
+    assertNotEquals(WebhookAuthCache.key(API_KEY, null), WebhookAuthCache.key(null, API_KEY));
+  }
+
+  /**
+   * JWTs are identified by their signature.
+   */
+  @Test
+  void testKeyOfJwtUsesSignature() {
+    assertEquals(WebhookAuthCache.key(null, "header.payload.signature"),
+        WebhookAuthCache.key(null, "other.payload.signature"));
+    assertNotEquals(WebhookAuthCache.key(null, "header.payload.signature"),
+        WebhookAuthCache.key(null, "header.payload.other"));
+  }
+
+  /**
+   * A cached principal is returned until the cache is invalidated.
+   */
+  @Test
+  void testPutAndInvalidate() {
+    var key = WebhookAuthCache.key(API_KEY, null);
+    var principal = jwtPrincipal(Long.MAX_VALUE);
+
+    cache.put(key, principal);
+    assertSame(principal, cache.get(key));
+
+    cache.invalidate();
+    assertNull(cache.get(key));
+  }
+
+  /**
+   * Expired principals and principals that do not identify a caller are not served.
+   */
+  @Test
+  void testExpiredAndEmptyPrincipals() {
+    var expiredKey = WebhookAuthCache.key(API_KEY, "expired");
+    var emptyKey = WebhookAuthCache.key(API_KEY, "empty");
+
+    cache.put(expiredKey, jwtPrincipal(0));
+    cache.put(emptyKey, new WebhookPrincipal(null, null, Long.MAX_VALUE));
+
+    assertNull(cache.get(expiredKey));
+    assertNull(cache.get(emptyKey));
+  }
+
+  private WebhookPrincipal jwtPrincipal(long expiresAt) {
+    var claims = new WebhookPrincipal.Claims("user", "role", "org", "warehouse", "client");
+    return new WebhookPrincipal(null, claims, expiresAt);
+  }
+}
@@ -0,0 +1,51 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookBodyParser class.
+ */
+class WebhookBodyParserTest {
+
+  /**
+   * Only declared members are extracted, keeping nested values as JSON text.
+   */
+  @Test
+  void testParseDeclaredParams() throws Exception {
+    var body = WebhookBodyParser.parse(new StringReader(
+            "{\"name\":\"test\",\"ignored\":{\"big\":[1,2,3]},\"count\":10,\"lines\":[{\"a\":1}]}"),
+        Set.of("name", "count", "lines"), -1);
+
+    assertEquals("test", body.getString("name"));
+    assertEquals("10", body.getString("count"));
+    assertEquals("[{\"a\":1}]", body.getString("lines"));
+    assertFalse(body.has("ignored"));
+  }
+
+  /**
+   * Bodies that are not a JSON object are rejected.
+   */
+  @Test
+  void testParseInvalidBody() {
+    assertThrows(IOException.class,
+        () -> WebhookBodyParser.parse(new StringReader("invalid json"), Set.of("name"), -1));
+  }
+
+  /**
+   * Bodies bigger than the allowed size are rejected while they are read.
+   */
+  @Test
+  void testParseBodyTooLarge() {
+    assertThrows(WebhookBodyParser.BodyTooLargeException.class,
+        () -> WebhookBodyParser.parse(new StringReader("{\"name\":\"" + "x".repeat(100) + "\"}"),
+            Set.of("name"), 50));
+  }
+}
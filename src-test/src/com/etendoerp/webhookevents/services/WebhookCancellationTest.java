@@ -0,0 +1,140 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.Utility;
+
+import com.etendoerp.webhookevents.exceptions.WebhookTimeoutException;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Unit tests for the execution timeout of the webhook calls.
+ */
+class WebhookCancellationTest {
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<OBContext> mockedOBContext;
+  private MockedStatic<Utility> mockedUtility;
+  private OBDal obDal;
+  private Session session;
+  private WebhookDefinition webHook;
+
+  /**
+   * Mocks the DAL session and a webhook with a short execution timeout.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedUtility = mockStatic(Utility.class);
+    obDal = mock(OBDal.class);
+    session = mock(Session.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+    when(obDal.getSession()).thenReturn(session);
+    mockedUtility.when(() -> Utility.messageBD(any(ConnectionProvider.class), anyString(), anyString()))
+        .thenReturn("%s %s");
+    WebhookMessages.invalidate();
+
+    webHook = mock(WebhookDefinition.class);
+    when(webHook.getName()).thenReturn("slow");
+    when(webHook.getExecutionTimeout()).thenReturn(50L);
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+    mockedOBContext.close();
+    mockedUtility.close();
+  }
+
+  /**
+   * A cancellable handler stops when it is signaled and the changes of the call are rolled back.
+   */
+  @Test
+  void testCancellableHandlerIsSignaled() {
+    var handler = new BaseCancellableWebhookService() {
+      @Override
+      public void get(Map<String, String> parameter, Map<String, String> responseVars,
+          WebhookCancellation cancellation) {
+        while (true) {
+          cancellation.throwIfCancelled();
+          Thread.onSpinWait();
+        }
+      }
+    };
+
+    var e = assertThrows(WebhookTimeoutException.class,
+        () -> WebhookCancellation.invoke(webHook, handler, new HashMap<>(), new HashMap<>()));
+
+    assertEquals("slow 50", e.getMessage());
+    verify(obDal).rollbackAndClose();
+    verify(session).cancelQuery();
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  /**
+   * A handler blocked in an interruptible wait is released by the timeout.
+   */
+  @Test
+  void testBlockedHandlerIsInterrupted() {
+    var handler = new BaseWebhookService() {
+      @Override
+      public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+        try {
+          Thread.sleep(10000);
+        } catch (InterruptedException e) {
+          throw new IllegalStateException(e);
+        }
+      }
+    };
+
+    assertThrows(WebhookTimeoutException.class,
+        () -> WebhookCancellation.invoke(webHook, handler, new HashMap<>(), new HashMap<>()));
+    assertFalse(Thread.currentThread().isInterrupted());
+  }
+
+  /**
+   * Calls finishing within the timeout are neither cancelled nor rolled back.
+   *
+   * @throws Exception
+   *     if the call is cancelled
+   */
+  @Test
+  void testHandlerWithinTimeout() throws Exception {
+    var handler = new BaseWebhookService() {
+      @Override
+      public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+        responseVars.put("status", "done");
+      }
+    };
+    Map<String, String> responseVars = new HashMap<>();
+
+    WebhookCancellation.invoke(webHook, handler, new HashMap<>(), responseVars);
+
+    assertEquals("done", responseVars.get("status"));
+    verify(obDal, never()).rollbackAndClose();
+  }
+}
@@ -0,0 +1,149 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.Utility;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.DefinedWebhookParam;
+import com.etendoerp.webhookevents.exceptions.WebhookParamException;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Unit tests for the decoding of params done by the WebhookDefinition class.
+ */
+class WebhookDefinitionTest {
+
+  private MockedStatic<Utility> mockedUtility;
+  private MockedStatic<OBContext> mockedOBContext;
+  private WebhookDefinition definition;
+
+  /**
+   * Builds a webhook with a param of each type.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedUtility = mockStatic(Utility.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedUtility.when(() -> Utility.messageBD(any(ConnectionProvider.class), anyString(), anyString()))
+        .thenReturn("%s %s");
+    WebhookMessages.invalidate();
+
+    var webHook = mock(DefinedWebHook.class);
+    when(webHook.getSmfwheDefinedwebhookParamList()).thenReturn(List.of(
+        param("amount", "number", true),
+        param("count", "integer", false),
+        param("enabled", "boolean", false),
+        param("from", "date", false),
+        param("lines", "array", false),
+        param("text", null, false)));
+    definition = WebhookDefinition.of(webHook);
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedUtility.close();
+    mockedOBContext.close();
+  }
+
+  /**
+   * Received values are decoded to the type of their param, keeping the received texts.
+   *
+   * @throws Exception
+   *     if the params cannot be decoded
+   */
+  @Test
+  void testDecodeTypedParams() throws Exception {
+    var body = new JSONObject().put("amount", "10.50").put("count", "3").put("enabled", "TRUE")
+        .put("from", "2024-01-31").put("lines", "[1,2]").put("text", "abc");
+
+    WebhookParams params = definition.decode(body);
+
+    assertEquals(new BigDecimal("10.50"), params.getValue("amount"));
+    assertEquals(3L, params.getValue("count"));
+    assertEquals(Boolean.TRUE, params.getBoolean("enabled"));
+    assertEquals(LocalDate.of(2024, 1, 31), params.getDate("from"));
+    assertEquals(2, params.getJSONArray("lines").length());
+    assertEquals("abc", params.getValue("text"));
+    assertEquals("10.50", params.get("amount"));
+  }
+
+  /**
+   * Missing required params and values that are not valid for their type are rejected.
+   */
+  @Test
+  void testDecodeRejectsInvalidParams() {
+    assertThrows(WebhookParamException.class,
+        () -> definition.decode(new JSONObject().put("count", "1")));
+    assertThrows(WebhookParamException.class,
+        () -> definition.decode(new JSONObject().put("amount", "1").put("count", "1.5")));
+    assertThrows(WebhookParamException.class,
+        () -> definition.decode(new JSONObject().put("amount", "1").put("enabled", "yes")));
+    assertThrows(WebhookParamException.class,
+        () -> definition.decode(new JSONObject().put("amount", "1").put("from", "31/01/2024")));
+  }
+
+  /**
+   * Maps that were not decoded by a definition are converted when a typed value is read.
+   */
+  @Test
+  void testTypedViewOfPlainParams() {
+    var params = WebhookParams.of(Map.of("count", "7", "enabled", "false"));
+
+    assertEquals(7L, params.getLong("count"));
+    assertFalse(params.getBoolean("enabled"));
+  }
+
+  /**
+   * Texts changed by a handler through any operation of the map replace their decoded values.
+   */
+  @Test
+  void testChangedTextsDiscardDecodedValues() {
+    var params = new WebhookParams();
+    params.put("count", "1", 1L);
+    params.put("from", "2024-01-31", LocalDate.of(2024, 1, 31));
+    params.put("amount", "1", BigDecimal.ONE);
+
+    params.putAll(Map.of("count", "2"));
+    params.remove("from");
+    params.putIfAbsent("from", "2024-02-01");
+    params.entrySet().stream()
+        .filter(entry -> "amount".equals(entry.getKey()))
+        .forEach(entry -> entry.setValue("3.5"));
+
+    assertEquals(2L, params.getLong("count"));
+    assertEquals(LocalDate.of(2024, 2, 1), params.getDate("from"));
+    assertEquals(new BigDecimal("3.5"), params.getBigDecimal("amount"));
+    assertEquals(Map.of("count", "2", "from", "2024-02-01", "amount", "3.5"), params);
+  }
+
+  private static DefinedWebhookParam param(String name, String type, boolean required) {
+    var param = mock(DefinedWebhookParam.class);
+    when(param.getName()).thenReturn(name);
+    when(param.getParamType()).thenReturn(type);
+    when(param.isRequired()).thenReturn(required);
+    return param;
+  }
+}
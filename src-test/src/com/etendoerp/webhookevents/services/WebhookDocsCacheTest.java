@@ -0,0 +1,101 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookDocsCache class.
+ */
+class WebhookDocsCacheTest {
+
+  private static final String HOST = "localhost";
+  private static final String DOCUMENT = "{\"openapi\":\"3.0.1\"}";
+
+  private final WebhookDocsCache cache = WebhookDocsCache.getInstance();
+
+  /**
+   * Starts every test with an empty cache.
+   */
+  @BeforeEach
+  void setUp() {
+    cache.invalidate();
+  }
+
+  /**
+   * The order and repetitions of the requested webhooks do not change the key, the host does.
+   */
+  @Test
+  void testKey() {
+    assertEquals(WebhookDocsCache.key(List.of("b", "a", "b"), HOST),
+        WebhookDocsCache.key(List.of("a", "b"), HOST));
+    assertNotEquals(WebhookDocsCache.key(List.of("a"), HOST),
+        WebhookDocsCache.key(List.of("a"), "other"));
+  }
+
+  /**
+   * Documents are only served for the configuration version they were generated from.
+   */
+  @Test
+  void testDocumentsOfOtherVersionsAreStale() {
+    var key = WebhookDocsCache.key(List.of(), HOST);
+    var document = new WebhookDocsCache.Document(1L, DOCUMENT);
+
+    cache.put(key, document);
+
+    assertSame(document, cache.get(key, 1L));
+    assertNull(cache.get(key, 2L));
+  }
+
+  /**
+   * Both variants share the If-None-Match validation and the gzip variant holds the same document.
+   *
+   * @throws IOException
+   *     if the compressed document cannot be read
+   */
+  @Test
+  void testETagAndGzipVariant() throws IOException {
+    var document = new WebhookDocsCache.Document(1L, DOCUMENT);
+
+    assertNotEquals(document.getETag(false), document.getETag(true));
+    assertTrue(document.matches(document.getETag(false)));
+    assertTrue(document.matches("\"other\", W/" + document.getETag(true)));
+    assertTrue(document.matches("*"));
+    assertFalse(document.matches("\"other\""));
+    assertFalse(document.matches(null));
+
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(document.getGzip()))) {
+      assertEquals(DOCUMENT, new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * The gzip variant is only sent when gzip is accepted with a quality above 0, explicitly or
+   * through the wildcard.
+   */
+  @Test
+  void testAcceptsGzip() {
+    assertTrue(WebhookDocsCache.acceptsGzip("gzip, deflate, br"));
+    assertTrue(WebhookDocsCache.acceptsGzip("deflate;q=1.0, GZIP;q=0.5"));
+    assertTrue(WebhookDocsCache.acceptsGzip("x-gzip"));
+    assertTrue(WebhookDocsCache.acceptsGzip("br, *;q=0.1"));
+    assertFalse(WebhookDocsCache.acceptsGzip("gzip;q=0"));
+    assertFalse(WebhookDocsCache.acceptsGzip("gzip; q=0.000, *"));
+    assertFalse(WebhookDocsCache.acceptsGzip("*;q=1, gzip;q=0"));
+    assertFalse(WebhookDocsCache.acceptsGzip("identity, *;q=0"));
+    assertFalse(WebhookDocsCache.acceptsGzip("deflate"));
+    assertFalse(WebhookDocsCache.acceptsGzip(null));
+  }
+}
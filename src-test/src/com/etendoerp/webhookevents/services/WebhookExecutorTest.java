@@ -0,0 +1,281 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.database.SessionInfo;
+
+/**
+ * Unit tests for the dispatch of webhook calls done by the WebhookExecutor class.
+ */
+class WebhookExecutorTest {
+
+  private MockedStatic<OBContext> mockedOBContext;
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<SessionInfo> mockedSessionInfo;
+  private OBContext context;
+  private OBDal obDal;
+  private HttpServletRequest request;
+  private AsyncContext asyncContext;
+  private HttpServletResponse response;
+  private WebhookExecutor executor;
+  private final List<Long> timeouts = new ArrayList<>();
+  private final List<Integer> statuses = new ArrayList<>();
+  private final WebhookExecutor.TimeoutHandler timeoutHandler = (timedOut, timeout) -> {
+    timedOut.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    timeouts.add(timeout);
+  };
+
+  /**
+   * Mocks the context of the caller and an asynchronous request. Tasks are executed in the calling
+   * thread so the static mocks are visible to them.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedSessionInfo = mockStatic(SessionInfo.class);
+    context = mock(OBContext.class);
+    obDal = mock(OBDal.class);
+    request = mock(HttpServletRequest.class);
+    asyncContext = mock(AsyncContext.class);
+    response = mock(HttpServletResponse.class);
+    mockedOBContext.when(OBContext::getOBContext).thenReturn(context);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+    mockedSessionInfo.when(SessionInfo::getUserId).thenReturn("user");
+    when(request.isAsyncSupported()).thenReturn(true);
+    when(request.startAsync()).thenReturn(asyncContext);
+    when(asyncContext.getResponse()).thenReturn(response);
+    when(response.getOutputStream()).thenReturn(mock(ServletOutputStream.class));
+    executor = new WebhookExecutor(Runnable::run, 300000);
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBContext.close();
+    mockedOBDal.close();
+    mockedSessionInfo.close();
+  }
+
+  /**
+   * Dispatched calls get the context of the caller, their transaction is committed and their
+   * buffered response is sent.
+   *
+   * @throws Exception
+   *     if the response cannot be written
+   */
+  @Test
+  void testDispatchPropagatesContext() throws Exception {
+    var executed = new boolean[1];
+
+    executor.dispatch(request, 0, target -> {
+      executed[0] = true;
+      target.setStatus(HttpServletResponse.SC_CREATED);
+    }, timeoutHandler, statuses::add);
+
+    assertTrue(executed[0]);
+    mockedOBContext.verify(() -> OBContext.setOBContext(context));
+    mockedSessionInfo.verify(() -> SessionInfo.setUserId("user"));
+    verify(obDal).commitAndClose();
+    verify(obDal, never()).rollbackAndClose();
+    verify(response).setStatus(HttpServletResponse.SC_CREATED);
+    assertEquals(List.of(HttpServletResponse.SC_CREATED), statuses);
+    verify(asyncContext).complete();
+  }
+
+  /**
+   * Calls failing unexpectedly are rolled back and answered with an error.
+   */
+  @Test
+  void testDispatchRollsBackFailedCalls() {
+    executor.dispatch(request, 0, target -> {
+      throw new IllegalStateException("failed");
+    }, timeoutHandler, statuses::add);
+
+    verify(obDal).rollbackAndClose();
+    verify(response).setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    verify(asyncContext).complete();
+  }
+
+  /**
+   * Requests are not dispatched without virtual threads or asynchronous support.
+   */
+  @Test
+  void testIsDispatchable() {
+    assertTrue(executor.isDispatchable(request));
+    assertFalse(new WebhookExecutor(null, 300000).isDispatchable(request));
+    when(request.isAsyncSupported()).thenReturn(false);
+    assertFalse(executor.isDispatchable(request));
+  }
+
+  /**
+   * The asynchronous timeout is bounded by the execution timeout of the webhook, or by the
+   * configured timeout for webhooks without one.
+   */
+  @Test
+  void testDispatchSetsFiniteTimeout() {
+    executor.dispatch(request, 10000, target -> {
+    }, timeoutHandler, statuses::add);
+    executor.dispatch(request, 0, target -> {
+    }, timeoutHandler, statuses::add);
+
+    verify(asyncContext).setTimeout(15000);
+    verify(asyncContext).setTimeout(300000);
+    assertEquals(0, new WebhookExecutor(Runnable::run, 0).getAsyncTimeout(0));
+  }
+
+  /**
+   * A call still running when the timeout expires is answered by the timeout handler, and the
+   * request is completed only once.
+   *
+   * @throws Exception
+   *     if the listener fails
+   */
+  @Test
+  void testTimeoutAnswersRunningCall() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    executor = new WebhookExecutor(tasks::add, 300000);
+    executor.dispatch(request, 1000, target -> {
+    }, timeoutHandler, statuses::add);
+
+    listener().onTimeout(new AsyncEvent(asyncContext));
+    tasks.get(0).run();
+
+    verify(response).setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    verify(response).flushBuffer();
+    assertEquals(List.of(6000L), timeouts);
+    assertEquals(List.of(HttpServletResponse.SC_GATEWAY_TIMEOUT), statuses);
+    verify(asyncContext, times(1)).complete();
+  }
+
+  /**
+   * A call that finishes after its timeout was answered does not write the response, and its
+   * changes are rolled back instead of committed.
+   *
+   * @throws Exception
+   *     if the listener fails
+   */
+  @Test
+  void testCallAfterTimeoutIsDiscarded() throws Exception {
+    List<Runnable> tasks = new ArrayList<>();
+    executor = new WebhookExecutor(tasks::add, 300000);
+    List<HttpServletResponse> targets = new ArrayList<>();
+    executor.dispatch(request, 1000, target -> {
+      targets.add(target);
+      target.setStatus(HttpServletResponse.SC_OK);
+      target.getWriter().print("{}");
+    }, timeoutHandler, statuses::add);
+
+    listener().onTimeout(new AsyncEvent(asyncContext));
+    tasks.get(0).run();
+
+    assertNotSame(response, targets.get(0));
+    verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    verify(response, never()).getWriter();
+    verify(obDal, never()).commitAndClose();
+    verify(obDal).rollbackAndClose();
+    assertEquals(List.of(HttpServletResponse.SC_GATEWAY_TIMEOUT), statuses);
+  }
+
+  /**
+   * A call that finished before the timeout keeps its response.
+   *
+   * @throws Exception
+   *     if the listener fails
+   */
+  @Test
+  void testTimeoutAfterCompletionIsIgnored() throws Exception {
+    executor.dispatch(request, 1000, target -> {
+    }, timeoutHandler, statuses::add);
+
+    listener().onTimeout(new AsyncEvent(asyncContext));
+
+    verify(response, never()).setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    assertTrue(timeouts.isEmpty());
+    assertEquals(List.of(HttpServletResponse.SC_OK), statuses);
+    verify(asyncContext, times(1)).complete();
+  }
+
+  /**
+   * Calls executed in the container thread within their timeout send their buffered response.
+   *
+   * @throws Exception
+   *     if the call fails
+   */
+  @Test
+  void testExecuteSendsBufferedResponse() throws Exception {
+    executor.execute(response, 1000, target -> target.setStatus(HttpServletResponse.SC_CREATED),
+        timeoutHandler, statuses::add);
+
+    verify(response).setStatus(HttpServletResponse.SC_CREATED);
+    assertEquals(List.of(HttpServletResponse.SC_CREATED), statuses);
+    verify(obDal, never()).rollbackAndClose();
+  }
+
+  /**
+   * A call executed in the container thread that ignores its timeout is answered by the watchdog
+   * while it is still running, and its changes are rolled back once it returns.
+   *
+   * @throws Exception
+   *     if the call fails
+   */
+  @Test
+  void testExecuteAnswersAtDeadline() throws Exception {
+    executor = new WebhookExecutor(Runnable::run, 300000, 0);
+    CountDownLatch answered = new CountDownLatch(1);
+    List<Boolean> answeredWhileRunning = new ArrayList<>();
+    IntConsumer onComplete = status -> {
+      statuses.add(status);
+      answered.countDown();
+    };
+
+    executor.execute(response, 50, target -> {
+      answeredWhileRunning.add(answered.await(5, TimeUnit.SECONDS));
+      target.setStatus(HttpServletResponse.SC_OK);
+    }, timeoutHandler, onComplete);
+
+    assertEquals(List.of(true), answeredWhileRunning);
+    verify(response).setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+    verify(response).flushBuffer();
+    verify(response, never()).setStatus(HttpServletResponse.SC_OK);
+    assertEquals(List.of(HttpServletResponse.SC_GATEWAY_TIMEOUT), statuses);
+    verify(obDal).rollbackAndClose();
+  }
+
+  private AsyncListener listener() {
+    ArgumentCaptor<AsyncListener> listener = ArgumentCaptor.forClass(AsyncListener.class);
+    verify(asyncContext).addListener(listener.capture());
+    return listener.getValue();
+  }
+}
@@ -0,0 +1,92 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.base.util.OBClassLoader;
+import org.openbravo.base.weld.WeldUtils;
+
+/**
+ * Unit tests for the WebhookHandlerCache class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class WebhookHandlerCacheTest {
+
+  private static final String HANDLER_CLASS = "com.test.CachedWebhookService";
+  private static final String MISSING_CLASS = "com.test.MissingWebhookService";
+
+  @Mock
+  private OBClassLoader mockOBClassLoader;
+  @Mock
+  private BaseWebhookService mockHandler;
+
+  private MockedStatic<OBClassLoader> mockedOBClassLoader;
+  private MockedStatic<WeldUtils> mockedWeldUtils;
+
+  private final WebhookHandlerCache cache = WebhookHandlerCache.getInstance();
+
+  /**
+   * Sets up a class loader that knows one handler class.
+   */
+  @BeforeEach
+  @SuppressWarnings({ "unchecked", "rawtypes" })
+  void setUp() throws Exception {
+    mockedOBClassLoader = mockStatic(OBClassLoader.class);
+    mockedWeldUtils = mockStatic(WeldUtils.class);
+    mockedOBClassLoader.when(OBClassLoader::getInstance).thenReturn(mockOBClassLoader);
+    when(mockOBClassLoader.loadClass(HANDLER_CLASS)).thenReturn((Class) BaseWebhookService.class);
+    when(mockOBClassLoader.loadClass(MISSING_CLASS)).thenThrow(
+        new ClassNotFoundException(MISSING_CLASS));
+    mockedWeldUtils.when(() -> WeldUtils.getInstanceFromStaticBeanManager(BaseWebhookService.class))
+        .thenReturn(mockHandler);
+    cache.invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBClassLoader.close();
+    mockedWeldUtils.close();
+  }
+
+  /**
+   * The class is loaded once, while non application scoped handlers are requested to Weld on
+   * every call.
+   */
+  @Test
+  void testHandlerClassIsCached() throws Exception {
+    assertSame(mockHandler, cache.get(HANDLER_CLASS));
+    assertSame(mockHandler, cache.get(HANDLER_CLASS));
+
+    verify(mockOBClassLoader, times(1)).loadClass(HANDLER_CLASS);
+    mockedWeldUtils.verify(() -> WeldUtils.getInstanceFromStaticBeanManager(BaseWebhookService.class),
+        times(2));
+  }
+
+  /**
+   * Classes that cannot be loaded are remembered and fail again without hitting the class loader.
+   */
+  @Test
+  void testMissingClassIsCachedNegatively() throws Exception {
+    assertThrows(ClassNotFoundException.class, () -> cache.get(MISSING_CLASS));
+    assertThrows(ClassNotFoundException.class, () -> cache.get(MISSING_CLASS));
+
+    verify(mockOBClassLoader, times(1)).loadClass(MISSING_CLASS);
+  }
+}
@@ -0,0 +1,243 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.hibernate.exception.ConstraintViolationException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * Unit tests for the WebhookIdempotencyCache class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class WebhookIdempotencyCacheTest {
+
+  private static final String WEBHOOK_ID = "webhookId";
+  private static final String IDEMPOTENCY_KEY = "key-1";
+
+  @Mock
+  private WebhookDefinition mockWebhook;
+  @Mock
+  private WebhookPrincipal mockPrincipal;
+  @Mock
+  private OBDal mockOBDal;
+
+  private MockedStatic<OBDal> mockedOBDal;
+
+  /**
+   * Sets up a webhook called with a token and clears the cache.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(mockOBDal);
+    when(mockWebhook.getId()).thenReturn(WEBHOOK_ID);
+    when(mockPrincipal.getTokenId()).thenReturn("tokenId");
+    WebhookIdempotencyCache.getInstance().invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+  }
+
+  /**
+   * Keys are scoped to the caller, so the same header sent with another token is a new call.
+   */
+  @Test
+  void testKeyIsScopedToCaller() {
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    when(mockPrincipal.getTokenId()).thenReturn("otherTokenId");
+
+    assertNotEquals(key, WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY));
+  }
+
+  /**
+   * Only the first call owns the key and the retries get its response.
+   *
+   * @throws Exception
+   *     if the wait is interrupted
+   */
+  @Test
+  void testRetryGetsStoredResponse() throws Exception {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    var response = response(200, "{\"status\":\"ok\"}");
+
+    var first = cache.begin(key, WEBHOOK_ID);
+    cache.complete(first, response);
+    var retry = cache.begin(key, WEBHOOK_ID);
+
+    assertTrue(first.isOwner());
+    assertFalse(retry.isOwner());
+    assertSame(response, retry.await());
+    verify(mockOBDal).commitAndClose();
+  }
+
+  /**
+   * A duplicate received while the first call is running waits for its response.
+   *
+   * @throws Exception
+   *     if the wait is interrupted or the duplicate fails
+   */
+  @Test
+  void testConcurrentDuplicateWaits() throws Exception {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    var first = cache.begin(key, WEBHOOK_ID);
+
+    var duplicate = CompletableFuture.supplyAsync(() -> {
+      try {
+        return cache.begin(key, WEBHOOK_ID).await();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      }
+    });
+    var response = response(201, "{}");
+    cache.complete(first, response);
+
+    var replayed = duplicate.get(5, TimeUnit.SECONDS);
+    assertEquals(201, replayed.getStatus());
+    assertArrayEquals("{}".getBytes(StandardCharsets.UTF_8), replayed.getBody());
+  }
+
+  /**
+   * Server errors are not stored, so the next retry executes the handler again.
+   */
+  @Test
+  void testServerErrorIsNotStored() {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+
+    cache.complete(cache.begin(key, WEBHOOK_ID), response(500, "{}"));
+
+    assertTrue(cache.begin(key, WEBHOOK_ID).isOwner());
+  }
+
+  /**
+   * A rate-limited call is not stored, so a retry with the same key executes the handler and its
+   * response is the one replayed afterwards.
+   *
+   * @throws Exception
+   *     if the wait is interrupted
+   */
+  @Test
+  void testRateLimitedCallIsNotStored() throws Exception {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    cache.complete(cache.begin(key, WEBHOOK_ID), response(429, "{}"));
+
+    var retry = cache.begin(key, WEBHOOK_ID);
+    assertTrue(retry.isOwner());
+    var success = response(200, "{\"status\":\"ok\"}");
+    cache.complete(retry, success);
+
+    assertSame(success, cache.begin(key, WEBHOOK_ID).await());
+  }
+
+  /**
+   * Conflicts are transient and are not stored, while final client errors are replayed.
+   */
+  @Test
+  void testOnlyFinalClientErrorsAreStored() {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+
+    cache.complete(cache.begin(key, WEBHOOK_ID), response(409, "{}"));
+    assertTrue(cache.begin(key, WEBHOOK_ID).isOwner());
+
+    String otherKey = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, "key-2");
+    cache.complete(cache.begin(otherKey, WEBHOOK_ID), response(422, "{}"));
+    assertFalse(cache.begin(otherKey, WEBHOOK_ID).isOwner());
+  }
+
+  /**
+   * Responses not stored do not commit the transaction of the call.
+   */
+  @Test
+  void testTransientResponseIsNotCommitted() {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+
+    cache.complete(cache.begin(key, WEBHOOK_ID), response(429, "{}"));
+
+    verify(mockOBDal, never()).commitAndClose();
+  }
+
+  /**
+   * When the commit fails the response is not published: the duplicates get no response and the
+   * key is released.
+   *
+   * @throws Exception
+   *     if the wait is interrupted
+   */
+  @Test
+  void testFailedCommitReleasesKey() throws Exception {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    var first = cache.begin(key, WEBHOOK_ID);
+    var duplicate = cache.begin(key, WEBHOOK_ID);
+    doThrow(new ConstraintViolationException("duplicate key", null, "smfwhe_idempotency_key"))
+        .when(mockOBDal).commitAndClose();
+
+    var response = response(200, "{}");
+    assertThrows(ConstraintViolationException.class, () -> cache.complete(first, response));
+
+    assertNull(duplicate.await());
+    assertTrue(cache.begin(key, WEBHOOK_ID).isOwner());
+  }
+
+  /**
+   * A failed owner releases the key and the waiting duplicates get no response.
+   *
+   * @throws Exception
+   *     if the wait is interrupted
+   */
+  @Test
+  void testFailedOwnerReleasesKey() throws Exception {
+    var cache = WebhookIdempotencyCache.getInstance();
+    String key = WebhookIdempotencyCache.key(mockPrincipal, mockWebhook, IDEMPOTENCY_KEY);
+    var first = cache.begin(key, WEBHOOK_ID);
+    var duplicate = cache.begin(key, WEBHOOK_ID);
+
+    cache.complete(first, null);
+
+    assertNull(duplicate.await());
+    assertTrue(cache.begin(key, WEBHOOK_ID).isOwner());
+  }
+
+  private static WebhookIdempotencyCache.StoredResponse response(int status, String body) {
+    return new WebhookIdempotencyCache.StoredResponse(status,
+        Map.of("Content-Type", "application/json"), body.getBytes(StandardCharsets.UTF_8));
+  }
+}
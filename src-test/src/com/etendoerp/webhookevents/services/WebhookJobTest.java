@@ -0,0 +1,57 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookJob class.
+ */
+class WebhookJobTest {
+
+  /**
+   * A queued job only exposes its status.
+   */
+  @Test
+  void testQueuedJobJSON() throws Exception {
+    var job = new WebhookJob("jobId", "webhook", "userId");
+
+    var json = job.toJSON();
+
+    assertEquals("jobId", json.getString("id"));
+    assertEquals("QUEUED", json.getString("status"));
+    assertFalse(json.has("result"));
+  }
+
+  /**
+   * A finished job exposes the response variables of the handler.
+   */
+  @Test
+  void testDoneJobJSON() throws Exception {
+    var job = new WebhookJob("jobId", "webhook", "userId");
+    job.running();
+    job.done(Map.of("created", "recordId"));
+
+    var json = job.toJSON();
+
+    assertEquals("DONE", json.getString("status"));
+    assertEquals("recordId", json.getJSONObject("result").getString("created"));
+  }
+
+  /**
+   * A failed job exposes the error message.
+   */
+  @Test
+  void testFailedJobJSON() throws Exception {
+    var job = new WebhookJob("jobId", "webhook", "userId");
+    job.failed("Boom");
+
+    var json = job.toJSON();
+
+    assertEquals("ERROR", json.getString("status"));
+    assertEquals("Boom", json.getString("message"));
+  }
+}
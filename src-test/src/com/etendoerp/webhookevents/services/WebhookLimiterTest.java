@@ -0,0 +1,256 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+/**
+ * Unit tests for the WebhookLimiter class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class WebhookLimiterTest {
+
+  @Mock
+  private WebhookDefinition mockWebhook;
+  @Mock
+  private WebhookPrincipal mockPrincipal;
+
+  /**
+   * Sets up a webhook without limits called with a token without limits.
+   */
+  @BeforeEach
+  void setUp() {
+    when(mockWebhook.getId()).thenReturn("webhookId");
+    when(mockWebhook.getName()).thenReturn("limitedWebhook");
+    when(mockPrincipal.getTokenId()).thenReturn("tokenId");
+    WebhookLimiter.getInstance().invalidate();
+  }
+
+  /**
+   * Calls without limits are always granted.
+   */
+  @Test
+  void testUnlimited() {
+    for (int i = 0; i < 100; i++) {
+      try (var permit = WebhookLimiter.getInstance().acquire(mockWebhook, mockPrincipal)) {
+        assertTrue(permit.isGranted());
+      }
+    }
+  }
+
+  /**
+   * Calls over the webhook concurrency limit are rejected until a running call finishes.
+   */
+  @Test
+  void testConcurrencyLimit() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    var limiter = WebhookLimiter.getInstance();
+
+    var first = limiter.acquire(mockWebhook, mockPrincipal);
+    var second = limiter.acquire(mockWebhook, mockPrincipal);
+
+    assertTrue(first.isGranted());
+    assertFalse(second.isGranted());
+    assertEquals(1, second.getRetryAfter());
+    first.close();
+    try (var third = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(third.isGranted());
+    }
+  }
+
+  /**
+   * A call over the concurrency limit waits for the queue timeout before being rejected.
+   */
+  @Test
+  void testConcurrencyLimitWaitsInQueue() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    when(mockWebhook.getQueueTimeout()).thenReturn(50L);
+    var limiter = WebhookLimiter.getInstance();
+
+    try (var first = limiter.acquire(mockWebhook, mockPrincipal)) {
+      long start = System.currentTimeMillis();
+      var second = limiter.acquire(mockWebhook, mockPrincipal);
+
+      assertFalse(second.isGranted());
+      assertTrue(System.currentTimeMillis() - start >= 50);
+    }
+  }
+
+  /**
+   * The token rate allows a burst of one second of calls and rejects the next one.
+   */
+  @Test
+  void testTokenRateLimit() {
+    when(mockPrincipal.getTokenMaxRate()).thenReturn(5);
+    var limiter = WebhookLimiter.getInstance();
+
+    for (int i = 0; i < 5; i++) {
+      try (var permit = limiter.acquire(mockWebhook, mockPrincipal)) {
+        assertTrue(permit.isGranted());
+      }
+    }
+    var rejected = limiter.acquire(mockWebhook, mockPrincipal);
+
+    assertFalse(rejected.isGranted());
+    assertEquals(1, rejected.getRetryAfter());
+  }
+
+  /**
+   * A transferred permit keeps the slot of the call after the original permit is closed, and
+   * releases it only once.
+   */
+  @Test
+  void testTransferredPermitKeepsSlot() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    var limiter = WebhookLimiter.getInstance();
+    var permit = limiter.acquire(mockWebhook, mockPrincipal);
+
+    var transferred = permit.transfer();
+    permit.close();
+
+    assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    transferred.close();
+    transferred.close();
+    try (var first = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(first.isGranted());
+      assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    }
+  }
+
+  /**
+   * Invalidating the limits keeps the counter of a running call, so it still counts against the
+   * limit, and discards it once the call has finished.
+   */
+  @Test
+  void testInvalidateKeepsRunningCalls() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    var limiter = WebhookLimiter.getInstance();
+    var first = limiter.acquire(mockWebhook, mockPrincipal);
+
+    limiter.invalidate();
+
+    assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    first.close();
+    limiter.invalidate();
+    try (var second = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(second.isGranted());
+    }
+  }
+
+  /**
+   * A call waiting in the queue is granted as soon as the running call finishes.
+   *
+   * @throws Exception
+   *     if the waiting call fails
+   */
+  @Test
+  void testQueuedCallIsWokenOnExit() throws Exception {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    when(mockWebhook.getQueueTimeout()).thenReturn(10000L);
+    var limiter = WebhookLimiter.getInstance();
+    var first = limiter.acquire(mockWebhook, mockPrincipal);
+
+    var second = CompletableFuture.supplyAsync(() -> limiter.acquire(mockWebhook, mockPrincipal));
+    Thread.sleep(50);
+    long start = System.currentTimeMillis();
+    first.close();
+
+    try (var permit = second.get(5, TimeUnit.SECONDS)) {
+      assertTrue(permit.isGranted());
+      assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+  }
+
+  /**
+   * A call rejected by the token rate gives back the webhook rate token it took, so other callers
+   * of the webhook are not throttled by it.
+   */
+  @Test
+  void testTokenRejectionKeepsWebhookRate() {
+    when(mockWebhook.getMaxRate()).thenReturn(2);
+    when(mockPrincipal.getTokenMaxRate()).thenReturn(1);
+    WebhookPrincipal otherPrincipal = mock(WebhookPrincipal.class);
+    when(otherPrincipal.getTokenId()).thenReturn("otherTokenId");
+    var limiter = WebhookLimiter.getInstance();
+
+    try (var permit = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(permit.isGranted());
+    }
+    assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    try (var permit = limiter.acquire(mockWebhook, otherPrincipal)) {
+      assertTrue(permit.isGranted());
+    }
+  }
+
+  /**
+   * A call rejected by the concurrency limit gives back the rate tokens it took.
+   */
+  @Test
+  void testConcurrencyRejectionKeepsRate() {
+    when(mockWebhook.getMaxRate()).thenReturn(2);
+    when(mockPrincipal.getTokenMaxConcurrent()).thenReturn(1);
+    WebhookPrincipal otherPrincipal = mock(WebhookPrincipal.class);
+    when(otherPrincipal.getTokenId()).thenReturn("otherTokenId");
+    var limiter = WebhookLimiter.getInstance();
+
+    try (var running = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(running.isGranted());
+      assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+      try (var permit = limiter.acquire(mockWebhook, otherPrincipal)) {
+        assertTrue(permit.isGranted());
+      }
+    }
+  }
+
+  /**
+   * Lowering the concurrency limit keeps counting the calls that were already running.
+   */
+  @Test
+  void testLoweredLimitCountsRunningCalls() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(2);
+    var limiter = WebhookLimiter.getInstance();
+    var first = limiter.acquire(mockWebhook, mockPrincipal);
+    var second = limiter.acquire(mockWebhook, mockPrincipal);
+
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    first.close();
+    assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+    second.close();
+    try (var permit = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(permit.isGranted());
+    }
+  }
+
+  /**
+   * Raising the concurrency limit grants new calls while the previous ones are running.
+   */
+  @Test
+  void testRaisedLimitGrantsNewCalls() {
+    when(mockWebhook.getMaxConcurrent()).thenReturn(1);
+    var limiter = WebhookLimiter.getInstance();
+    try (var first = limiter.acquire(mockWebhook, mockPrincipal)) {
+      assertTrue(first.isGranted());
+
+      when(mockWebhook.getMaxConcurrent()).thenReturn(2);
+      try (var second = limiter.acquire(mockWebhook, mockPrincipal)) {
+        assertTrue(second.isGranted());
+        assertFalse(limiter.acquire(mockWebhook, mockPrincipal).isGranted());
+      }
+    }
+  }
+}
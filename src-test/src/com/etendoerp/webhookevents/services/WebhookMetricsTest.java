@@ -0,0 +1,87 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookMetrics class.
+ */
+class WebhookMetricsTest {
+
+  private final WebhookMetrics metrics = WebhookMetrics.getInstance();
+
+  /**
+   * Discards the metrics recorded by other tests.
+   */
+  @BeforeEach
+  void setUp() {
+    metrics.reset();
+  }
+
+  /**
+   * Calls are counted by webhook, token and status, and written in the Prometheus format.
+   *
+   * @throws Exception
+   *     if the metrics cannot be written
+   */
+  @Test
+  void testRecordAndWrite() throws Exception {
+    var timer = metrics.start();
+    timer.mark(WebhookMetrics.Phase.AUTH);
+    timer.mark(WebhookMetrics.Phase.HANDLER);
+    metrics.record("hook", "token", 200, timer);
+    metrics.record("hook", "token", 500, metrics.start());
+    metrics.record(null, null, 404, metrics.start());
+
+    var out = new StringWriter();
+    metrics.write(out);
+    String text = out.toString();
+
+    assertTrue(text.contains("webhook_requests_total{webhook=\"hook\",token=\"token\"} 2"));
+    assertTrue(text.contains(
+        "webhook_responses_total{webhook=\"hook\",token=\"token\",status=\"500\"} 1"));
+    assertTrue(text.contains("webhook_requests_total{webhook=\"_unknown\",token=\"\"} 1"));
+    assertTrue(text.contains(
+        "webhook_latency_seconds_count{webhook=\"hook\",token=\"token\",phase=\"total\"} 2"));
+    assertTrue(text.contains("quantile=\"0.99\""));
+  }
+
+  /**
+   * Quantiles are returned with the precision of the buckets.
+   */
+  @Test
+  void testHistogramQuantiles() {
+    var histogram = new WebhookMetrics.Histogram();
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(i));
+    }
+
+    assertEquals(1000, histogram.getCount());
+    assertEquals(500500, histogram.getSum());
+    assertWithin(500, histogram.getQuantile(0.5));
+    assertWithin(990, histogram.getQuantile(0.99));
+    assertEquals(5, histogram.getQuantile(0.005));
+  }
+
+  /**
+   * Bucket bounds grow monotonically, so every value falls in a bucket whose bound covers it.
+   */
+  @Test
+  void testHistogramBuckets() {
+    for (long value : new long[] { 0, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE }) {
+      assertTrue(WebhookMetrics.Histogram.upperBound(
+          WebhookMetrics.Histogram.index(value)) >= Math.min(value, 1L << 41) - 1);
+    }
+  }
+
+  private static void assertWithin(long expected, long actual) {
+    assertTrue(actual >= expected && actual <= expected * 1.125 + 1,
+        "Expected about " + expected + " but was " + actual);
+  }
+}
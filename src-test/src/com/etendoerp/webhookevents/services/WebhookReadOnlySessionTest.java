@@ -0,0 +1,87 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.service.OBDal;
+
+/**
+ * Unit tests for the WebhookReadOnlySession class.
+ */
+class WebhookReadOnlySessionTest {
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private OBDal obDal;
+  private Session session;
+  private WebhookDefinition webHook;
+
+  /**
+   * Mocks the DAL session of the current thread.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    obDal = mock(OBDal.class);
+    session = mock(Session.class);
+    webHook = mock(WebhookDefinition.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+    when(obDal.getSession()).thenReturn(session);
+    when(session.getHibernateFlushMode()).thenReturn(FlushMode.AUTO);
+    when(session.isOpen()).thenReturn(true);
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+  }
+
+  /**
+   * Calls to read-only webhooks never flush and load read-only entities, and the session is
+   * restored once they finish.
+   */
+  @Test
+  void testReadOnlyWebhook() {
+    when(webHook.isReadOnly()).thenReturn(true);
+
+    try (var readOnly = WebhookReadOnlySession.open(webHook)) {
+      assertSame(obDal, WebhookReadOnlySession.getDal());
+    }
+
+    var order = inOrder(session);
+    order.verify(session).setHibernateFlushMode(FlushMode.MANUAL);
+    order.verify(session).setDefaultReadOnly(true);
+    order.verify(session).clear();
+    order.verify(session).setDefaultReadOnly(false);
+    order.verify(session).setHibernateFlushMode(FlushMode.AUTO);
+  }
+
+  /**
+   * Calls to other webhooks keep the session untouched.
+   */
+  @Test
+  void testWritableWebhook() {
+    try (var readOnly = WebhookReadOnlySession.open(webHook)) {
+      assertSame(obDal, WebhookReadOnlySession.getDal());
+    }
+
+    verify(session, never()).setHibernateFlushMode(any());
+    verify(session, never()).setDefaultReadOnly(anyBoolean());
+    verify(session, never()).clear();
+  }
+}
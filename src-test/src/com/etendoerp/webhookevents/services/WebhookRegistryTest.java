@@ -0,0 +1,120 @@
+package com.etendoerp.webhookevents.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.dal.service.OBQuery;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+
+/**
+ * Unit tests for the WebhookRegistry class.
+ */
+@MockitoSettings(strictness = Strictness.LENIENT)
+@ExtendWith(MockitoExtension.class)
+class WebhookRegistryTest {
+
+  private static final String WEBHOOK_NAME = "registryWebhook";
+  private static final String QUERY_NAME_FILTER = "name = :name";
+
+  @Mock
+  private OBDal mockOBDal;
+  @Mock
+  private OBQuery<DefinedWebHook> mockWebhookQuery;
+  @Mock
+  private DefinedWebHook mockDefinedWebHook;
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<OBContext> mockedOBContext;
+
+  /**
+   * Sets up the static mocks and a query returning a webhook.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(mockOBDal);
+
+    when(mockOBDal.createQuery(DefinedWebHook.class, QUERY_NAME_FILTER)).thenReturn(mockWebhookQuery);
+    when(mockWebhookQuery.setNamedParameter("name", WEBHOOK_NAME)).thenReturn(mockWebhookQuery);
+    when(mockWebhookQuery.setMaxResult(1)).thenReturn(mockWebhookQuery);
+    when(mockWebhookQuery.uniqueResult()).thenReturn(mockDefinedWebHook);
+
+    when(mockDefinedWebHook.getName()).thenReturn(WEBHOOK_NAME);
+    when(mockDefinedWebHook.getJavaClass()).thenReturn("com.test.TestWebhookService");
+
+    WebhookRegistry.getInstance().invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+    mockedOBContext.close();
+  }
+
+  /**
+   * A resolved webhook must be served from the snapshot without querying again.
+   */
+  @Test
+  void testGetIsCached() {
+    var first = WebhookRegistry.getInstance().get(WEBHOOK_NAME);
+    var second = WebhookRegistry.getInstance().get(WEBHOOK_NAME);
+
+    assertSame(first, second);
+    assertEquals("com.test.TestWebhookService", first.getJavaClass());
+    verify(mockWebhookQuery, times(1)).uniqueResult();
+  }
+
+  /**
+   * Invalidating the registry bumps the version and forces the webhook to be loaded again.
+   */
+  @Test
+  void testInvalidateReloads() {
+    WebhookRegistry.getInstance().get(WEBHOOK_NAME);
+    long version = WebhookRegistry.getInstance().getVersion();
+
+    WebhookRegistry.getInstance().invalidate();
+    WebhookRegistry.getInstance().get(WEBHOOK_NAME);
+
+    assertEquals(version + 1, WebhookRegistry.getInstance().getVersion());
+    verify(mockWebhookQuery, times(2)).uniqueResult();
+  }
+
+  /**
+   * Unknown webhooks return null and are remembered until the registry is invalidated.
+   */
+  @Test
+  void testGetUnknownWebhook() {
+    when(mockWebhookQuery.uniqueResult()).thenReturn(null);
+
+    assertNull(WebhookRegistry.getInstance().get(WEBHOOK_NAME));
+    assertNull(WebhookRegistry.getInstance().get(WEBHOOK_NAME));
+    verify(mockWebhookQuery, times(1)).uniqueResult();
+
+    when(mockWebhookQuery.uniqueResult()).thenReturn(mockDefinedWebHook);
+    WebhookRegistry.getInstance().invalidate();
+
+    assertEquals(WEBHOOK_NAME, WebhookRegistry.getInstance().get(WEBHOOK_NAME).getName());
+    verify(mockWebhookQuery, times(2)).uniqueResult();
+  }
+}
@@ -2,29 +2,40 @@ package com.etendoerp.webhookevents.services;
 
 import static com.etendoerp.webhookevents.WebhookTestConstants.CHECK_ROLE_SECURITY;
 import static com.etendoerp.webhookevents.WebhookTestConstants.CONTENT_TYPE;
-import static com.etendoerp.webhookevents.WebhookTestConstants.GET_DEFINED_WEBHOOK_ROLE;
 import static org.junit.Assert.assertNull;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.lang.reflect.InvocationTargetException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
@@ -34,6 +45,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockedStatic;
@@ -44,6 +56,8 @@ import com.auth0.jwt.interfaces.Claim;
 import com.etendoerp.webhookevents.data.DefinedWebHook;
 import com.etendoerp.webhookevents.data.DefinedwebhookToken;
 import com.etendoerp.webhookevents.exceptions.WebhookNotfoundException;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.smf.securewebservices.utils.SecureWebServicesUtils;
 
 import org.mockito.junit.jupiter.MockitoSettings;
@@ -115,8 +129,6 @@ class WebhookServiceHandlerTest {
   @Mock
   private BaseWebhookService mockBaseWebhookService;
   @Mock
-  private BufferedReader mockBufferedReader;
-  @Mock
   private OBClassLoader mockOBClassLoader;
   @Mock
   private OBPropertiesProvider mockOBPropertiesProvider;
@@ -138,6 +150,7 @@ class WebhookServiceHandlerTest {
   private static final String TEST_ROLE_ID = "testRoleId";
   private static final String TEST_CLIENT_ID = "testClientId";
   private static final String TEST_ORG_ID = "testOrgId";
+  private static final String TEST_WEBHOOK_ID = "testWebhookId";
   private static final String TEST_JAVA_CLASS = "com.test.TestWebhookService";
   private static final String TEST_WEBHOOK_PATH = "/testWebhook";
   private static final String PARAM_NAME = "name";
@@ -177,6 +190,18 @@ class WebhookServiceHandlerTest {
     when(mockLanguage.getLanguage()).thenReturn(LANGUAGE_EN_US);
     when(mockOBContext.getRole()).thenReturn(mockRole);
     when(mockRole.getName()).thenReturn("TestRole");
+
+    when(mockDefinedWebHook.getId()).thenReturn(TEST_WEBHOOK_ID);
+    when(mockOBDal.get(DefinedWebHook.class, TEST_WEBHOOK_ID)).thenReturn(mockDefinedWebHook);
+
+    WebhookRegistry.getInstance().invalidate();
+    WebhookAuthCache.getInstance().invalidate();
+    WebhookAccessIndex.getInstance().invalidate();
+    WebhookHandlerCache.getInstance().invalidate();
+    WebhookIdempotencyCache.getInstance().invalidate();
+    WebhookMessages.invalidate();
+    WebhookDocsCache.getInstance().invalidate();
+    WebhookMetrics.getInstance().reset();
   }
 
   /**
@@ -268,8 +293,7 @@ class WebhookServiceHandlerTest {
     when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
     when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
     when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
-    when(mockRequest.getReader()).thenReturn(mockBufferedReader);
-    when(mockBufferedReader.lines()).thenReturn(java.util.stream.Stream.of("{\"param1\":\"value1\"}"));
+    when(mockRequest.getReader()).thenReturn(bodyReader("{\"param1\":\"value1\"}"));
 
     webhookServiceHandler.doPost(mockRequest, mockResponse);
 
@@ -277,6 +301,199 @@ class WebhookServiceHandlerTest {
     verify(mockResponse).addHeader(CONTENT_TYPE, CONTENT_TYPE_JSON);
   }
 
+  /**
+   * Tests the doGet method with a streaming webhook.
+   * Verifies that the response is written to the output stream instead of being buffered.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoGetWithStreamingWebhook() throws Exception {
+    setupValidWebhookScenario();
+    var streamingService = new BaseStreamingWebhookService() {
+      @Override
+      public void stream(Map<String, String> parameter, JsonGenerator generator)
+          throws IOException {
+        generator.writeStartArray();
+        generator.writeString("first");
+        generator.writeString("second");
+        generator.writeEndArray();
+      }
+    };
+    when(mockOBClassLoader.loadClass(TEST_JAVA_CLASS)).thenReturn((Class) streamingService.getClass());
+    mockedWeldUtils.when(() -> WeldUtils.getInstanceFromStaticBeanManager(streamingService.getClass()))
+        .thenReturn(streamingService);
+    var body = new ByteArrayOutputStream();
+    when(mockResponse.getOutputStream()).thenReturn(outputStream(body));
+    when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
+    when(mockRequest.getParameterMap()).thenReturn(new HashMap<>());
+
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpStatus.SC_OK);
+    verify(mockResponse).addHeader(CONTENT_TYPE, CONTENT_TYPE_JSON);
+    assertEquals("[\"first\",\"second\"]", body.toString(StandardCharsets.UTF_8));
+    verify(mockResponse, times(0)).getWriter();
+  }
+
+  /**
+   * Tests the doPost method with an Idempotency-Key header.
+   * Verifies that a retry with the same key is answered with the stored response without
+   * executing the handler again.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoPostWithIdempotencyKey() throws Exception {
+    setupValidWebhookScenario();
+    when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
+    when(mockRequest.getHeader("Idempotency-Key")).thenReturn("retry-1");
+    when(mockRequest.getReader()).thenReturn(bodyReader("{}"), bodyReader("{}"));
+    var body = new ByteArrayOutputStream();
+    when(mockResponse.getOutputStream()).thenReturn(outputStream(body));
+
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+
+    verify(mockBaseWebhookService, times(1)).get(any(Map.class), any(Map.class));
+    verify(mockResponse, times(2)).setStatus(HttpStatus.SC_OK);
+    verify(mockResponse).setHeader("Idempotent-Replayed", "true");
+    assertEquals("{\"status\":\"success\"}{\"status\":\"success\"}",
+        body.toString(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Tests the doPost method with an Idempotency-Key header on a rate-limited call.
+   * Verifies that the 429 is not replayed, so a retry with the same key executes the handler once
+   * the limit allows it.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoPostWithIdempotencyKeyAfterRateLimit() throws Exception {
+    setupValidWebhookScenario();
+    when(mockDefinedWebHook.getMaxRate()).thenReturn(1L);
+    mockedUtility.when(() -> Utility.messageBD(any(DalConnectionProvider.class),
+            eq("smfwhe_rateLimited"), eq(LANGUAGE_EN_US)))
+        .thenReturn("Too many calls to %s");
+    when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
+    when(mockRequest.getReader()).thenReturn(bodyReader("{}"), bodyReader("{}"), bodyReader("{}"));
+    var body = new ByteArrayOutputStream();
+    when(mockResponse.getOutputStream()).thenReturn(outputStream(body));
+    WebhookLimiter.getInstance().invalidate();
+
+    // Takes the only call allowed in this second
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+    when(mockRequest.getHeader("Idempotency-Key")).thenReturn("retry-1");
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+    WebhookLimiter.getInstance().invalidate();
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(429);
+    verify(mockBaseWebhookService, times(2)).get(any(Map.class), any(Map.class));
+    verify(mockResponse, times(2)).setStatus(HttpStatus.SC_OK);
+    verify(mockResponse, never()).setHeader("Idempotent-Replayed", "true");
+    WebhookLimiter.getInstance().invalidate();
+  }
+
+  /**
+   * Tests the doPost method with an asynchronous webhook.
+   * Verifies that the call is queued and answered with 202 and the job identifier.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoPostWithAsyncWebhook() throws Exception {
+    setupValidWebhookScenario();
+    when(mockDefinedWebHook.isAsync()).thenReturn(true);
+    when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
+    when(mockRequest.getReader()).thenReturn(bodyReader("{}"));
+
+    var mockJobManager = mock(WebhookJobManager.class);
+    var job = new WebhookJob("jobId", TEST_WEBHOOK_NAME, TEST_USER_ID);
+    when(mockJobManager.submit(any(), any(), any(), any())).thenReturn(job);
+    try (MockedStatic<WebhookJobManager> mockedJobManager = mockStatic(WebhookJobManager.class)) {
+      mockedJobManager.when(WebhookJobManager::getInstance).thenReturn(mockJobManager);
+
+      webhookServiceHandler.doPost(mockRequest, mockResponse);
+    }
+
+    verify(mockResponse).setStatus(HttpStatus.SC_ACCEPTED);
+    verify(mockResponse).addHeader("Location", "/webhooks/jobs/jobId");
+    verify(mockBaseWebhookService, times(0)).get(any(Map.class), any(Map.class));
+  }
+
+  /**
+   * Tests the batch endpoint with one valid item.
+   * Verifies that the item is executed and committed on its own and its result is returned.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoPostWithBatch() throws Exception {
+    setupValidWebhookScenario();
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn("/_batch");
+    when(mockRequest.getReader()).thenReturn(
+        bodyReader("[{\"name\":\"" + TEST_WEBHOOK_NAME + "\",\"params\":{}}]"));
+
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+
+    var captor = ArgumentCaptor.forClass(Object.class);
+    verify(mockResponse).setStatus(HttpStatus.SC_OK);
+    verify(mockPrintWriter).print(captor.capture());
+    var result = ((JSONObject) captor.getValue()).getJSONArray("results").getJSONObject(0);
+    assertEquals(HttpStatus.SC_OK, result.getInt("status"));
+    assertEquals("success", result.getJSONObject("response").getString("status"));
+    verify(mockOBDal).commitAndClose();
+  }
+
+  /**
+   * Tests the batch endpoint with a body that is not a list of items.
+   * It should return a 400 status code.
+   *
+   * @throws Exception
+   *     if an error occurs reading the body
+   */
+  @Test
+  void testDoPostWithInvalidBatch() throws Exception {
+    when(mockRequest.getPathInfo()).thenReturn("/_batch");
+    when(mockRequest.getReader()).thenReturn(bodyReader("{\"name\":1}"));
+
+    webhookServiceHandler.doPost(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpStatus.SC_BAD_REQUEST);
+  }
+
+  /**
+   * Tests the doGet method polling a job that does not exist.
+   * It should return a 404 status code.
+   */
+  @Test
+  void testDoGetWithUnknownJob() {
+    when(mockRequest.getPathInfo()).thenReturn("/jobs/unknownJob");
+    mockedUtility.when(() -> Utility.messageBD(any(DalConnectionProvider.class),
+            eq("smfwhe_jobNotFound"), eq(LANGUAGE_EN_US)))
+        .thenReturn("Job %s not found");
+
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpStatus.SC_NOT_FOUND);
+  }
+
   /**
    * Tests the doPost method with a webhook that does not exist.
    * It should return a 404 status code.
@@ -297,7 +514,7 @@ class WebhookServiceHandlerTest {
 
   /**
    * Tests the checkUserSecurity method with a valid API key.
-   * Verifies that the method correctly validates and returns the appropriate token for a valid API key.
+   * Verifies that the method correctly validates and returns the principal of the token for a valid API key.
    *
    * @throws Exception
    *     if an error occurs during security validation
@@ -315,13 +532,19 @@ class WebhookServiceHandlerTest {
     when(mockRole.getId()).thenReturn(TEST_ROLE_ID);
     when(mockClient.getId()).thenReturn(TEST_CLIENT_ID);
     when(mockOrganization.getId()).thenReturn(TEST_ORG_ID);
+    when(mockDefinedwebhookToken.getId()).thenReturn("tokenId");
 
     var method = WebhookServiceHandler.class.getDeclaredMethod("checkUserSecurity", String.class, String.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, TEST_API_KEY, null);
+    var result = (WebhookPrincipal) method.invoke(webhookServiceHandler, TEST_API_KEY, null);
+    var cached = (WebhookPrincipal) method.invoke(webhookServiceHandler, TEST_API_KEY, null);
 
     assertNotNull(result);
-    assertEquals(mockDefinedwebhookToken, result);
+    assertEquals("tokenId", result.getTokenId());
+    assertEquals(TEST_USER_ID, result.getTokenUserId());
+    assertEquals(TEST_ROLE_ID, result.getTokenRoleId());
+    assertSame(result, cached);
+    verify(mockTokenCriteria, times(1)).uniqueResult();
   }
 
   /**
@@ -364,9 +587,10 @@ class WebhookServiceHandlerTest {
 
     var method = WebhookServiceHandler.class.getDeclaredMethod("checkUserSecurity", String.class, String.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, TEST_API_KEY, TEST_TOKEN);
+    var result = (WebhookPrincipal) method.invoke(webhookServiceHandler, TEST_API_KEY, TEST_TOKEN);
 
     assertNotNull(result);
+    assertEquals(TEST_USER_ID, result.getTokenUserId());
   }
 
   /**
@@ -383,12 +607,16 @@ class WebhookServiceHandlerTest {
     when(mockWebhookQuery.setMaxResult(1)).thenReturn(mockWebhookQuery);
     when(mockWebhookQuery.uniqueResult()).thenReturn(mockDefinedWebHook);
 
+    when(mockDefinedWebHook.getName()).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockDefinedWebHook.getJavaClass()).thenReturn(TEST_JAVA_CLASS);
+
     var method = WebhookServiceHandler.class.getDeclaredMethod("getAction", String.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, TEST_WEBHOOK_NAME);
+    var result = (WebhookDefinition) method.invoke(webhookServiceHandler, TEST_WEBHOOK_NAME);
 
     assertNotNull(result);
-    assertEquals(mockDefinedWebHook, result);
+    assertEquals(TEST_WEBHOOK_NAME, result.getName());
+    assertEquals(TEST_JAVA_CLASS, result.getJavaClass());
   }
 
   /**
@@ -485,146 +713,44 @@ class WebhookServiceHandlerTest {
   }
 
 
-  /**
-   * Tests the getDefinedwebhookRole method with a valid DefinedWebHook and Role.
-   * Verifies that the method retrieves the correct DefinedwebhookRole based on the provided parameters.
-   *
-   * @throws Exception
-   *     if an error occurs during role retrieval
-   */
-  @Test
-  void testGetDefinedwebhookRoleWithValidData() throws Exception {
-    var mockDefinedwebhookRole = mock(com.etendoerp.webhookevents.data.DefinedwebhookRole.class);
-    var mockRoleCriteria = mock(OBCriteria.class);
-
-    when(mockOBDal.createCriteria(com.etendoerp.webhookevents.data.DefinedwebhookRole.class))
-        .thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableClients(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableOrganization(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.add(any())).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setMaxResults(1)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.uniqueResult()).thenReturn(mockDefinedwebhookRole);
-
-    var method = WebhookServiceHandler.class.getDeclaredMethod(GET_DEFINED_WEBHOOK_ROLE,
-        DefinedWebHook.class, Role.class);
-    method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockDefinedWebHook, mockRole);
-
-    assertNotNull(result);
-    assertEquals(mockDefinedwebhookRole, result);
-    verify(mockRoleCriteria).setFilterOnReadableClients(false);
-    verify(mockRoleCriteria).setFilterOnReadableOrganization(false);
-  }
-
-  /**
-   * Tests the getDefinedwebhookRole method when no matching role is found.
-   * Verifies that the method returns null when there is no matching DefinedwebhookRole.
-   *
-   * @throws Exception
-   *     if an error occurs during role retrieval
-   */
-  @Test
-  void testGetDefinedwebhookRoleWithNoMatch() throws Exception {
-    var mockRoleCriteria = mock(OBCriteria.class);
-
-    when(mockOBDal.createCriteria(com.etendoerp.webhookevents.data.DefinedwebhookRole.class))
-        .thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableClients(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableOrganization(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.add(any())).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setMaxResults(1)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.uniqueResult()).thenReturn(null);
-
-    var method = WebhookServiceHandler.class.getDeclaredMethod(GET_DEFINED_WEBHOOK_ROLE,
-        DefinedWebHook.class, Role.class);
-    method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockDefinedWebHook, mockRole);
-
-    assertNull(result);
-  }
-
-  /**
-   * Tests the getDefinedwebhookRole method when an exception occurs during role retrieval.
-   * Verifies that the method returns null when an exception is thrown.
-   *
-   * @throws Exception
-   *     if an error occurs during role retrieval
-   */
-  @Test
-  void testGetDefinedwebhookRoleWithException() throws Exception {
-    when(mockOBDal.createCriteria(com.etendoerp.webhookevents.data.DefinedwebhookRole.class))
-        .thenThrow(new RuntimeException("Database error"));
-
-    var method = WebhookServiceHandler.class.getDeclaredMethod(GET_DEFINED_WEBHOOK_ROLE,
-        DefinedWebHook.class, Role.class);
-    method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockDefinedWebHook, mockRole);
-
-    assertNull(result);
-  }
-
   /**
    * Tests the checkRoleSecurity method with a complete token.
-   * Verifies that the method correctly decodes the token and retrieves the appropriate DefinedwebhookRole.
+   * Verifies that the method sets the context from the JWT claims and allows the granted webhook.
    *
    * @throws Exception
    *     if an error occurs during role security check
    */
   @Test
   void testCheckRoleSecurityWithCompleteToken() throws Exception {
-    var mockDefinedwebhookRole = mock(com.etendoerp.webhookevents.data.DefinedwebhookRole.class);
-    var mockRoleCriteria = mock(OBCriteria.class);
-
-    mockedSecureWebServicesUtils.when(() -> SecureWebServicesUtils.decodeToken(TEST_TOKEN))
-        .thenReturn(mockDecodedJWT);
-
-    var userClaim = mock(Claim.class);
-    var roleClaim = mock(Claim.class);
-    var orgClaim = mock(Claim.class);
-    var warehouseClaim = mock(Claim.class);
-    var clientClaim = mock(Claim.class);
-
-    when(mockDecodedJWT.getClaim("user")).thenReturn(userClaim);
-    when(mockDecodedJWT.getClaim("role")).thenReturn(roleClaim);
-    when(mockDecodedJWT.getClaim("organization")).thenReturn(orgClaim);
-    when(mockDecodedJWT.getClaim("warehouse")).thenReturn(warehouseClaim);
-    when(mockDecodedJWT.getClaim("client")).thenReturn(clientClaim);
-
-    when(userClaim.asString()).thenReturn(TEST_USER_ID);
-    when(roleClaim.asString()).thenReturn(TEST_ROLE_ID);
-    when(orgClaim.asString()).thenReturn(TEST_ORG_ID);
-    when(warehouseClaim.asString()).thenReturn("testWarehouseId");
-    when(clientClaim.asString()).thenReturn(TEST_CLIENT_ID);
-
     mockedSecureWebServicesUtils.when(() -> SecureWebServicesUtils.createContext(
             TEST_USER_ID, TEST_ROLE_ID, TEST_ORG_ID, "testWarehouseId", TEST_CLIENT_ID))
         .thenReturn(mockOBContext);
+    var roleAccess = mock(com.etendoerp.webhookevents.data.DefinedwebhookRole.class);
+    when(roleAccess.getRole()).thenReturn(mockRole);
+    when(mockRole.getId()).thenReturn(TEST_ROLE_ID);
+    when(mockDefinedWebHook.getSmfwheDefinedwebhookRoleList()).thenReturn(List.of(roleAccess));
 
-    when(mockOBDal.get(Role.class, TEST_ROLE_ID)).thenReturn(mockRole);
-
-    when(mockOBDal.createCriteria(com.etendoerp.webhookevents.data.DefinedwebhookRole.class))
-        .thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableClients(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setFilterOnReadableOrganization(false)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.add(any())).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.setMaxResults(1)).thenReturn(mockRoleCriteria);
-    when(mockRoleCriteria.uniqueResult()).thenReturn(mockDefinedwebhookRole);
+    var claims = new WebhookPrincipal.Claims(TEST_USER_ID, TEST_ROLE_ID, TEST_ORG_ID,
+        "testWarehouseId", TEST_CLIENT_ID);
+    var principal = new WebhookPrincipal(null, claims, Long.MAX_VALUE);
 
     var method = WebhookServiceHandler.class.getDeclaredMethod(CHECK_ROLE_SECURITY,
-        HttpServletRequest.class, String.class, DefinedWebHook.class);
+        HttpServletRequest.class, WebhookPrincipal.class, WebhookDefinition.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockRequest, TEST_TOKEN, mockDefinedWebHook);
+    var result = method.invoke(webhookServiceHandler, mockRequest, principal,
+        WebhookDefinition.of(mockDefinedWebHook));
 
-    assertNotNull(result);
-    assertEquals(mockDefinedwebhookRole, result);
+    assertEquals(Boolean.TRUE, result);
     mockedSessionInfo.verify(() -> SessionInfo.setUserId(TEST_USER_ID));
     mockedSessionInfo.verify(() -> SessionInfo.setProcessType("WS"));
     mockedSessionInfo.verify(() -> SessionInfo.setProcessId("DAL"));
+    // Stateless callers without a session must not get one
+    mockedOBContext.verify(() -> OBContext.setOBContextInSession(any(), any()), never());
   }
 
   /**
    * Tests the checkRoleSecurity method with invalid token claims.
-   * Verifies that the method returns null when the token claims are empty or invalid.
+   * Verifies that a JWT with empty claims does not produce claims and access is denied.
    *
    * @throws Exception
    *     if an error occurs during role security check
@@ -643,29 +769,45 @@ class WebhookServiceHandlerTest {
     when(mockDecodedJWT.getClaim("warehouse")).thenReturn(emptyClaim);
     when(mockDecodedJWT.getClaim("client")).thenReturn(emptyClaim);
 
+    var principal = checkUserSecurity(null, TEST_TOKEN);
+    assertNull(principal.getClaims());
+
     var method = WebhookServiceHandler.class.getDeclaredMethod(CHECK_ROLE_SECURITY,
-        HttpServletRequest.class, String.class, DefinedWebHook.class);
+        HttpServletRequest.class, WebhookPrincipal.class, WebhookDefinition.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockRequest, TEST_TOKEN, mockDefinedWebHook);
+    var result = method.invoke(webhookServiceHandler, mockRequest, principal,
+        WebhookDefinition.of(mockDefinedWebHook));
 
-    assertNull(result);
+    assertEquals(Boolean.FALSE, result);
   }
 
   /**
    * Tests the checkRoleSecurity method when token decoding fails.
-   * Verifies that the method returns null when JWT decoding throws an exception.
+   * Verifies that access is denied when JWT decoding throws an exception.
    */
   @Test
   void testCheckRoleSecurityWithTokenDecodingFailure() throws Exception {
     mockedSecureWebServicesUtils.when(() -> SecureWebServicesUtils.decodeToken(TEST_TOKEN))
         .thenThrow(new RuntimeException("Invalid token"));
 
+    var principal = checkUserSecurity(null, TEST_TOKEN);
+
     var method = WebhookServiceHandler.class.getDeclaredMethod(CHECK_ROLE_SECURITY,
-        HttpServletRequest.class, String.class, DefinedWebHook.class);
+        HttpServletRequest.class, WebhookPrincipal.class, WebhookDefinition.class);
     method.setAccessible(true);
-    var result = method.invoke(webhookServiceHandler, mockRequest, TEST_TOKEN, mockDefinedWebHook);
+    var result = method.invoke(webhookServiceHandler, mockRequest, principal,
+        WebhookDefinition.of(mockDefinedWebHook));
 
-    assertNull(result);
+    assertEquals(Boolean.FALSE, result);
+  }
+
+  /**
+   * Invokes the private checkUserSecurity method.
+   */
+  private WebhookPrincipal checkUserSecurity(String apikey, String token) throws Exception {
+    var method = WebhookServiceHandler.class.getDeclaredMethod("checkUserSecurity", String.class, String.class);
+    method.setAccessible(true);
+    return (WebhookPrincipal) method.invoke(webhookServiceHandler, apikey, token);
   }
 
   /**
@@ -682,8 +824,7 @@ class WebhookServiceHandlerTest {
     when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
     when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
     when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
-    when(mockRequest.getReader()).thenReturn(mockBufferedReader);
-    when(mockBufferedReader.lines()).thenReturn(java.util.stream.Stream.of("invalid json"));
+    when(mockRequest.getReader()).thenReturn(bodyReader("invalid json"));
 
     mockedUtility.when(() -> Utility.messageBD(any(DalConnectionProvider.class),
             eq("smfwhe_cannotCollectData"), eq(LANGUAGE_EN_US)))
@@ -757,6 +898,137 @@ class WebhookServiceHandlerTest {
     verify(mockPrintWriter).print(any(String.class));
   }
 
+  /**
+   * Tests that the OpenAPI document is generated once and revalidated with its ETag.
+   * A second request with a matching If-None-Match header must get a 304 without querying again.
+   */
+  @Test
+  void testHandleDocsIsCachedAndRevalidated() {
+    when(mockRequest.getPathInfo()).thenReturn("/docs");
+    when(mockRequest.getParameter("hooks")).thenReturn(null);
+    when(mockRequest.getParameter("host")).thenReturn("localhost");
+    var mockCriteria = mock(OBCriteria.class);
+    when(mockOBDal.createCriteria(DefinedWebHook.class)).thenReturn(mockCriteria);
+    when(mockCriteria.list()).thenReturn(new ArrayList<>());
+    var etag = new String[1];
+    doAnswer(invocation -> {
+      etag[0] = invocation.getArgument(1);
+      return null;
+    }).when(mockResponse).setHeader(eq("ETag"), any(String.class));
+
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+    when(mockRequest.getHeader("If-None-Match")).thenReturn(etag[0]);
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    assertNotNull(etag[0]);
+    verify(mockCriteria, times(1)).list();
+    verify(mockResponse).setStatus(HttpStatus.SC_NOT_MODIFIED);
+    verify(mockPrintWriter, times(1)).print(any(String.class));
+  }
+
+  /**
+   * Tests that calls are measured and exposed by the metrics path in the Prometheus format.
+   *
+   * @throws Exception
+   *     if an error occurs during webhook execution
+   */
+  @Test
+  void testDoGetWithMetricsPath() throws Exception {
+    setupValidWebhookScenario();
+    when(mockRequest.getParameter(PARAM_NAME)).thenReturn(TEST_WEBHOOK_NAME);
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+    when(mockRequest.getPathInfo()).thenReturn(TEST_WEBHOOK_PATH);
+    when(mockRequest.getParameterMap()).thenReturn(new HashMap<>());
+    when(mockResponse.getStatus()).thenReturn(HttpStatus.SC_OK);
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    var metrics = new StringWriter();
+    var metricsResponse = mock(HttpServletResponse.class);
+    when(metricsResponse.getWriter()).thenReturn(new PrintWriter(metrics));
+    when(mockRequest.getPathInfo()).thenReturn("/_metrics");
+    setMetricsApiKey(TEST_API_KEY);
+    webhookServiceHandler.doGet(mockRequest, metricsResponse);
+
+    verify(metricsResponse).setStatus(HttpStatus.SC_OK);
+    assertTrue(metrics.toString().contains(
+        "webhook_responses_total{webhook=\"" + TEST_WEBHOOK_NAME + "\",token=\"tokenId"
+            + "\",status=\"200\"} 1"));
+    assertTrue(metrics.toString().contains("phase=\"handler\""));
+  }
+
+  /**
+   * Tests that the metrics path is not found while no metrics API key is configured.
+   *
+   * @throws Exception
+   *     if an error occurs writing the response
+   */
+  @Test
+  void testDoGetWithMetricsPathWithoutApiKeyConfigured() throws Exception {
+    when(mockRequest.getPathInfo()).thenReturn("/_metrics");
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn(TEST_API_KEY);
+
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpStatus.SC_NOT_FOUND);
+    verify(mockResponse, never()).getWriter();
+  }
+
+  /**
+   * Tests that the metrics path rejects calls with another API key.
+   *
+   * @throws Exception
+   *     if an error occurs writing the response
+   */
+  @Test
+  void testDoGetWithMetricsPathWithInvalidApiKey() throws Exception {
+    when(mockRequest.getPathInfo()).thenReturn("/_metrics");
+    when(mockRequest.getParameter(PARAM_API_KEY)).thenReturn("invalidApiKey");
+    setMetricsApiKey(TEST_API_KEY);
+
+    webhookServiceHandler.doGet(mockRequest, mockResponse);
+
+    verify(mockResponse).setStatus(HttpStatus.SC_UNAUTHORIZED);
+    verify(mockResponse, never()).getWriter();
+  }
+
+  /**
+   * Configures the API key of the metrics path.
+   */
+  private void setMetricsApiKey(String apikey) {
+    var properties = new Properties();
+    properties.setProperty("webhooks.metrics.apikey", apikey);
+    when(mockOBPropertiesProvider.getOpenbravoProperties()).thenReturn(properties);
+  }
+
+  /**
+   * Builds a servlet output stream writing to the given buffer.
+   */
+  private static ServletOutputStream outputStream(ByteArrayOutputStream body) {
+    return new ServletOutputStream() {
+      @Override
+      public boolean isReady() {
+        return true;
+      }
+
+      @Override
+      public void setWriteListener(WriteListener writeListener) {
+        // Blocking stream
+      }
+
+      @Override
+      public void write(int b) {
+        body.write(b);
+      }
+    };
+  }
+
+  /**
+   * Builds a reader of the given request body.
+   */
+  private static BufferedReader bodyReader(String body) {
+    return new BufferedReader(new StringReader(body));
+  }
+
   /**
    * Helper method to setup a valid webhook scenario without access check complications.
    */
@@ -12,33 +12,36 @@ import static com.etendoerp.webhookevents.WebhookTestConstants.TEST_TABLE_ID;
 import static com.etendoerp.webhookevents.WebhookTestConstants.TEST_TABLE_NAME;
 import static com.etendoerp.webhookevents.WebhookTestConstants.VALUE1;
 import static com.etendoerp.webhookevents.WebhookTestConstants.VALUE2;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.IOException;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
-import javax.net.ssl.HttpsURLConnection;
 
 import org.apache.log4j.Logger;
 import org.codehaus.jettison.json.JSONArray;
@@ -134,6 +137,7 @@ class WebHookUtilTest {
    */
   @BeforeEach
   void setUp() {
+    WebhookMessages.invalidate();
     when(table.getId()).thenReturn(TEST_TABLE_ID);
     when(table.getDBTableName()).thenReturn(TEST_TABLE_NAME);
     when(eventType.getId()).thenReturn(TEST_EVENT_TYPE_ID);
@@ -528,12 +532,13 @@ class WebHookUtilTest {
 
   /**
    * Tests the callWebHook method to ensure it sends events to active webhooks.
-   * Verifies that the method retrieves active webhooks and calls WebHookUtil.sendEvent.
+   * Verifies that the method builds the request of each active webhook and sends it.
    */
   @Test
   void testCallWebHook() {
     try (MockedStatic<OBDal> mockedOBDal = mockStatic(OBDal.class);
-         MockedStatic<WebHookUtil> mockedWebHookUtil = mockStatic(WebHookUtil.class)) {
+         MockedStatic<WebHookUtil> mockedWebHookUtil = mockStatic(WebHookUtil.class);
+         MockedStatic<WebhookHttpClient> mockedClient = mockStatic(WebhookHttpClient.class)) {
 
       mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
 
@@ -545,15 +550,120 @@ class WebHookUtilTest {
       when(webhookCriteria.add(any())).thenReturn(webhookCriteria);
       when(webhookCriteria.list()).thenReturn(List.of(webhook));
 
-      mockedWebHookUtil.when(() -> WebHookUtil.sendEvent(any(Webhook.class),
-          any(BaseOBObject.class), any(Logger.class))).thenAnswer(invocation -> null);
+      var request = new WebhookHttpClient.Request("POST", "http://example.com", Map.of(), "{}");
+      mockedWebHookUtil.when(() -> WebHookUtil.prepareEvent(any(Webhook.class),
+          any(BaseOBObject.class), any(Logger.class))).thenReturn(request);
+      WebhookHttpClient client = mock(WebhookHttpClient.class);
+      mockedClient.when(WebhookHttpClient::getInstance).thenReturn(client);
+      when(client.sendAsync(request)).thenReturn(
+          CompletableFuture.completedFuture(new WebhookHttpClient.Response(200, "")));
 
       mockedWebHookUtil.when(() -> WebHookUtil.callWebHook(any(Events.class),
           any(BaseOBObject.class), any(Logger.class))).thenCallRealMethod();
+      mockedWebHookUtil.when(() -> WebHookUtil.deliverWebHook(any(Events.class),
+          any(BaseOBObject.class), any(Logger.class))).thenCallRealMethod();
 
-      WebHookUtil.callWebHook(events, baseOBObject, logger);
+      assertDoesNotThrow(() -> WebHookUtil.callWebHook(events, baseOBObject, logger));
+      List<WebhookDeliveryResult> results = WebHookUtil.deliverWebHook(events, baseOBObject,
+          logger);
+
+      mockedWebHookUtil.verify(() -> WebHookUtil.prepareEvent(webhook, baseOBObject, logger),
+          times(2));
+      assertEquals(1, results.size());
+      assertTrue(results.get(0).isSuccessful());
+      assertEquals(200, results.get(0).getStatus());
+    }
+  }
+
+  /**
+   * Tests the deliverWebHook method when some webhooks fail.
+   * Verifies that a failing webhook does not prevent the delivery to the rest and that the
+   * outcome of each webhook is returned.
+   */
+  @Test
+  void testDeliverWebHookWithFailingWebhooks() {
+    try (MockedStatic<OBDal> mockedOBDal = mockStatic(OBDal.class);
+         MockedStatic<WebHookUtil> mockedWebHookUtil = mockStatic(WebHookUtil.class);
+         MockedStatic<WebhookHttpClient> mockedClient = mockStatic(WebhookHttpClient.class)) {
+
+      mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+
+      Webhook invalid = mock(Webhook.class);
+      Webhook rejected = mock(Webhook.class);
+      Webhook unreachable = mock(Webhook.class);
+      Webhook delivered = mock(Webhook.class);
+      OBCriteria<Webhook> webhookCriteria = mock(OBCriteria.class);
+      when(obDal.createCriteria(Webhook.class)).thenReturn(webhookCriteria);
+      when(webhookCriteria.add(any())).thenReturn(webhookCriteria);
+      when(webhookCriteria.list()).thenReturn(List.of(invalid, rejected, unreachable, delivered));
+
+      WebhookHttpClient client = mock(WebhookHttpClient.class);
+      mockedClient.when(WebhookHttpClient::getInstance).thenReturn(client);
+      Map<Webhook, CompletableFuture<WebhookHttpClient.Response>> responses = Map.of(
+          rejected, CompletableFuture.completedFuture(new WebhookHttpClient.Response(503, "")),
+          unreachable, CompletableFuture.failedFuture(new IOException("Connection refused")),
+          delivered, CompletableFuture.completedFuture(new WebhookHttpClient.Response(204, "")));
+      for (Webhook hook : List.of(invalid, rejected, unreachable, delivered)) {
+        when(hook.isActive()).thenReturn(true);
+        var request = new WebhookHttpClient.Request("POST", "http://example.com", Map.of(), "");
+        if (hook == invalid) {
+          mockedWebHookUtil.when(() -> WebHookUtil.prepareEvent(hook, baseOBObject, logger))
+              .thenThrow(new OBException("Invalid URL: ftp://example.com"));
+        } else {
+          mockedWebHookUtil.when(() -> WebHookUtil.prepareEvent(hook, baseOBObject, logger))
+              .thenReturn(request);
+          when(client.sendAsync(request)).thenReturn(responses.get(hook));
+        }
+      }
+
+      mockedWebHookUtil.when(() -> WebHookUtil.deliverWebHook(any(Events.class),
+          any(BaseOBObject.class), any(Logger.class))).thenCallRealMethod();
+
+      List<WebhookDeliveryResult> results = WebHookUtil.deliverWebHook(events, baseOBObject,
+          logger);
+
+      assertEquals(4, results.size());
+      assertInstanceOf(OBException.class, results.get(0).getError());
+      assertEquals(503, results.get(1).getStatus());
+      assertFalse(results.get(1).isSuccessful());
+      assertInstanceOf(IOException.class, results.get(2).getError());
+      assertTrue(results.get(3).isSuccessful());
+    }
+  }
+
+  /**
+   * Tests the callWebHook method when some webhooks fail.
+   * Verifies that every webhook is called and a single OBException reports all the failures.
+   */
+  @Test
+  void testCallWebHookWithFailingWebhooks() {
+    try (MockedStatic<WebHookUtil> mockedWebHookUtil = mockStatic(WebHookUtil.class);
+         MockedStatic<WebhookMessages> mockedMessages = mockStatic(WebhookMessages.class,
+             CALLS_REAL_METHODS)) {
+      Webhook rejected = mock(Webhook.class);
+      Webhook delivered = mock(Webhook.class);
+      Webhook unreachable = mock(Webhook.class);
+      when(rejected.getName()).thenReturn("rejected");
+      when(unreachable.getName()).thenReturn("unreachable");
+      when(events.getName()).thenReturn("event");
+      var rejection = new IOException("Server returned HTTP response code: 503");
+      var refused = new IOException("Connection refused");
+      mockedWebHookUtil.when(() -> WebHookUtil.deliverWebHook(events, baseOBObject, logger))
+          .thenReturn(List.of(new WebhookDeliveryResult(rejected, 503, rejection),
+              new WebhookDeliveryResult(delivered, 200, null),
+              new WebhookDeliveryResult(unreachable, 0, refused)));
+      mockedWebHookUtil.when(() -> WebHookUtil.callWebHook(any(Events.class),
+          any(BaseOBObject.class), any(Logger.class))).thenCallRealMethod();
+      mockedMessages.when(() -> WebhookMessages.getMessage("smfwhe_WebhookDeliveryFailed"))
+          .thenReturn("Webhook %s of event %s failed: %s");
 
-      mockedWebHookUtil.verify(() -> WebHookUtil.sendEvent(webhook, baseOBObject, logger));
+      OBException failure = assertThrows(OBException.class,
+          () -> WebHookUtil.callWebHook(events, baseOBObject, logger));
+
+      assertSame(rejection, failure.getCause());
+      assertArrayEquals(new Throwable[] { refused }, failure.getSuppressed());
+      assertTrue(failure.getMessage().contains("Webhook rejected of event event failed"));
+      assertTrue(failure.getMessage().contains("Webhook unreachable of event event failed"));
     }
   }
 
@@ -903,57 +1013,33 @@ class WebHookUtilTest {
   }
 
   /**
-   * Tests the getConnection method with an HTTP URL.
-   * Verifies that the connection is properly established for HTTP URLs and returns an HttpURLConnection instance.
-   *
-   * @throws Exception if any error occurs during reflection or connection setup:
-   *                   - NoSuchMethodException if the getConnection method is not found
-   *                   - IllegalAccessException if the method cannot be accessed
-   *                   - InvocationTargetException if the method throws an exception
-   */
-  @Test
-  void testGetConnectionWithHttpsUrl() throws Exception {
-    String httpsUrl = "https://secure.example.com/api";
-    URL url = mock(URL.class);
-    HttpsURLConnection connection = mock(HttpsURLConnection.class);
-
-    when(url.openConnection()).thenReturn(connection);
-
-    Method getConnectionMethod = WebHookUtil.class.getDeclaredMethod(
-        "getConnection", String.class, URL.class);
-    getConnectionMethod.setAccessible(true);
-
-    HttpURLConnection result = (HttpURLConnection) getConnectionMethod.invoke(
-        null, httpsUrl, url);
-
-    assertNotNull(result);
-    assertEquals(connection, result);
-  }
-
-  /**
-   * Tests the getConnection method with an HTTPS URL.
-   * Verifies that the connection is properly established for HTTPS URLs and returns an HttpsURLConnection instance.
-   *
-   * @throws Exception if any error occurs during reflection or connection setup:
-   *                   - NoSuchMethodException if the getConnection method is not found
-   *                   - IllegalAccessException if the method cannot be accessed
-   *                   - InvocationTargetException if the method throws an exception
+   * Tests the getHeaders method.
+   * Verifies that the header values are computed in the order of the params.
    */
   @Test
-  void testGetConnectionWithInvalidUrl() throws Exception {
-    String invalidUrl = "ftp://example.com/file";
-    URL url = mock(URL.class);
+  void testGetHeaders() {
+    try (MockedStatic<DalUtil> mockedDalUtil = mockStatic(DalUtil.class);
+         MockedStatic<OBContext> mockedOBContext = mockStatic(OBContext.class)) {
 
-    Method getConnectionMethod = WebHookUtil.class.getDeclaredMethod(
-        "getConnection", String.class, URL.class);
-    getConnectionMethod.setAccessible(true);
+      setupOBContextMock(mockedOBContext);
+      UrlPathParam contentType = mock(UrlPathParam.class);
+      when(contentType.getTypeValue()).thenReturn(Constants.TYPE_VALUE_STRING);
+      when(contentType.getName()).thenReturn(CONTENT_TYPE);
+      when(contentType.getValue()).thenReturn("application/json");
+      UrlPathParam authorization = mock(UrlPathParam.class);
+      when(authorization.getTypeValue()).thenReturn(Constants.TYPE_VALUE_PROPERTY);
+      when(authorization.getName()).thenReturn("Authorization");
+      when(authorization.getProperty()).thenReturn("authToken");
+      mockedDalUtil.when(() -> DalUtil.getValueFromPath(baseOBObject, "authToken"))
+          .thenReturn("Bearer abc123");
 
-    Exception exception = assertThrows(InvocationTargetException.class, () ->
-        getConnectionMethod.invoke(null, invalidUrl, url)
-    );
+      Map<String, String> headers = WebHookUtil.getHeaders(List.of(contentType, authorization),
+          logger, baseOBObject);
 
-    assertInstanceOf(OBException.class, exception.getCause());
-    assertTrue(exception.getCause().getMessage().contains("Invalid URL"));
+      assertEquals(List.of(CONTENT_TYPE, "Authorization"), new ArrayList<>(headers.keySet()));
+      assertEquals("application/json", headers.get(CONTENT_TYPE));
+      assertEquals("Bearer abc123", headers.get("Authorization"));
+    }
   }
 
   /**
@@ -0,0 +1,168 @@
+package com.etendoerp.webhookevents.webhook_util;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mockStatic;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.Utility;
+
+import com.etendoerp.webhookevents.exceptions.WebhookCircuitOpenException;
+
+/**
+ * Unit tests for the WebhookCircuitBreaker class.
+ */
+class WebhookCircuitBreakerTest {
+  private static final String DESTINATION = "https://hooks.example.com:443";
+
+  private final AtomicLong now = new AtomicLong(1000);
+  private final WebhookCircuitBreaker breaker = new WebhookCircuitBreaker(true, 10, 4, 50, 5000,
+      2, 500, now::get);
+  private MockedStatic<Utility> mockedUtility;
+  private MockedStatic<OBContext> mockedOBContext;
+
+  /**
+   * Mocks the messages of the deferred deliveries.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedUtility = mockStatic(Utility.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedUtility.when(() -> Utility.messageBD(any(ConnectionProvider.class), anyString(), anyString()))
+        .thenReturn("%s %s");
+    WebhookMessages.invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedUtility.close();
+    mockedOBContext.close();
+  }
+
+  /**
+   * The breaker opens when the failure rate reaches the threshold, and then defers the
+   * deliveries until the open period ends.
+   */
+  @Test
+  void testOpensOnFailureRate() {
+    deliver(false);
+    deliver(true);
+    deliver(false);
+    assertEquals(WebhookCircuitBreaker.State.CLOSED, breaker.getState(DESTINATION));
+
+    deliver(true);
+
+    assertEquals(WebhookCircuitBreaker.State.OPEN, breaker.getState(DESTINATION));
+    var e = assertThrows(WebhookCircuitOpenException.class, () -> breaker.acquire(DESTINATION));
+    assertEquals(6000, e.getRetryAt().getTime());
+    assertDoesNotThrow(() -> breaker.acquire("https://other.example.com:443"));
+  }
+
+  /**
+   * Once the open period ends, a few trial deliveries are let through and close the breaker if
+   * they succeed. Deliveries deferred while the trials run are retried after the short trial
+   * delay, not a whole open period.
+   *
+   * @throws Exception
+   *     if a trial delivery is deferred
+   */
+  @Test
+  void testHalfOpenTrialsCloseTheBreaker() throws Exception {
+    open();
+    now.addAndGet(5000);
+
+    breaker.acquire(DESTINATION);
+    breaker.acquire(DESTINATION);
+    assertEquals(WebhookCircuitBreaker.State.HALF_OPEN, breaker.getState(DESTINATION));
+    var e = assertThrows(WebhookCircuitOpenException.class, () -> breaker.acquire(DESTINATION));
+    assertEquals(now.get() + 500, e.getRetryAt().getTime());
+    breaker.record(DESTINATION, false);
+    breaker.record(DESTINATION, false);
+
+    assertEquals(WebhookCircuitBreaker.State.CLOSED, breaker.getState(DESTINATION));
+  }
+
+  /**
+   * A failed trial delivery opens the breaker again.
+   *
+   * @throws Exception
+   *     if the trial delivery is deferred
+   */
+  @Test
+  void testHalfOpenFailureOpensTheBreaker() throws Exception {
+    open();
+    now.addAndGet(5000);
+
+    breaker.acquire(DESTINATION);
+    breaker.record(DESTINATION, true);
+
+    assertEquals(WebhookCircuitBreaker.State.OPEN, breaker.getState(DESTINATION));
+  }
+
+  /**
+   * A trial delivery released because it was not sent frees its slot without closing or opening
+   * the breaker.
+   *
+   * @throws Exception
+   *     if a trial delivery is deferred
+   */
+  @Test
+  void testReleasedTrialDoesNotCloseTheBreaker() throws Exception {
+    open();
+    now.addAndGet(5000);
+
+    breaker.acquire(DESTINATION);
+    breaker.acquire(DESTINATION);
+    breaker.release(DESTINATION);
+    breaker.record(DESTINATION, false);
+
+    assertEquals(WebhookCircuitBreaker.State.HALF_OPEN, breaker.getState(DESTINATION));
+    breaker.acquire(DESTINATION);
+    breaker.record(DESTINATION, false);
+    assertEquals(WebhookCircuitBreaker.State.CLOSED, breaker.getState(DESTINATION));
+  }
+
+  /**
+   * Destinations are compared by scheme, host and port, and only server side errors count as
+   * failures.
+   */
+  @Test
+  void testDestinationsAndFailures() {
+    assertEquals(DESTINATION,
+        WebhookCircuitBreaker.getDestination("https://Hooks.Example.com/a/b?c=d"));
+    assertEquals("http://hooks.example.com:8080",
+        WebhookCircuitBreaker.getDestination("http://hooks.example.com:8080/a"));
+    assertTrue(WebhookCircuitBreaker.isFailure(503, null));
+    assertTrue(WebhookCircuitBreaker.isFailure(429, null));
+    assertTrue(WebhookCircuitBreaker.isFailure(0, new IOException()));
+    assertFalse(WebhookCircuitBreaker.isFailure(404, null));
+  }
+
+  private void open() {
+    for (int i = 0; i < 4; i++) {
+      deliver(true);
+    }
+    assertEquals(WebhookCircuitBreaker.State.OPEN, breaker.getState(DESTINATION));
+  }
+
+  private void deliver(boolean failure) {
+    assertDoesNotThrow(() -> breaker.acquire(DESTINATION));
+    breaker.record(DESTINATION, failure);
+  }
+}
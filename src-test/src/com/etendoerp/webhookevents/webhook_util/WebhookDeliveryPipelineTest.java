@@ -0,0 +1,154 @@
+package com.etendoerp.webhookevents.webhook_util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.CALLS_REAL_METHODS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.base.exception.OBException;
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.data.Webhook;
+
+/**
+ * Unit tests for the WebhookDeliveryPipeline class.
+ */
+class WebhookDeliveryPipelineTest {
+
+  private MockedStatic<OBDal> mockedOBDal;
+  private MockedStatic<WebHookUtil> mockedWebHookUtil;
+  private MockedStatic<WebhookHttpClient> mockedClient;
+  private OBCriteria<Webhook> criteria;
+  private WebhookHttpClient client;
+  private final Logger logger = mock(Logger.class);
+  private final BaseOBObject bob = mock(BaseOBObject.class);
+
+  /**
+   * Mocks the webhooks of the events, the rendering of the payloads and the HTTP client, and
+   * closes the circuit breakers.
+   */
+  @BeforeEach
+  @SuppressWarnings("unchecked")
+  void setUp() {
+    mockedOBDal = mockStatic(OBDal.class);
+    mockedWebHookUtil = mockStatic(WebHookUtil.class);
+    mockedClient = mockStatic(WebhookHttpClient.class);
+    OBDal obDal = mock(OBDal.class);
+    criteria = mock(OBCriteria.class);
+    client = mock(WebhookHttpClient.class);
+    mockedOBDal.when(OBDal::getInstance).thenReturn(obDal);
+    when(obDal.createCriteria(Webhook.class)).thenReturn(criteria);
+    when(criteria.add(any())).thenReturn(criteria);
+    mockedClient.when(WebhookHttpClient::getInstance).thenReturn(client);
+    WebhookCircuitBreaker.getInstance().reset();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedOBDal.close();
+    mockedWebHookUtil.close();
+    mockedClient.close();
+  }
+
+  /**
+   * Submitting does not wait for the responses, which are collected once they arrive.
+   */
+  @Test
+  void testSubmitDoesNotWaitForResponses() {
+    CompletableFuture<WebhookHttpClient.Response> response = new CompletableFuture<>();
+    Events event = event("created", response);
+    var pipeline = new WebhookDeliveryPipeline(10, logger);
+
+    pipeline.submit("entry", event, bob);
+
+    assertTrue(pipeline.poll().isEmpty());
+    response.complete(new WebhookHttpClient.Response(200, ""));
+    List<WebhookDeliveryPipeline.Delivery> deliveries = pipeline.poll();
+    assertEquals(1, deliveries.size());
+    assertEquals("entry", deliveries.get(0).getQueueEntryId());
+    assertEquals("created", deliveries.get(0).getEventName());
+    assertTrue(deliveries.get(0).isSuccessful());
+  }
+
+  /**
+   * Draining waits for the pending deliveries and reports the failed ones.
+   */
+  @Test
+  void testDrainWaitsForPendingDeliveries() {
+    CompletableFuture<WebhookHttpClient.Response> response = new CompletableFuture<>();
+    Events event = event("updated", response);
+    var pipeline = new WebhookDeliveryPipeline(10, logger);
+    pipeline.submit("entry", event, bob);
+
+    CompletableFuture.runAsync(
+        () -> response.complete(new WebhookHttpClient.Response(500, "")));
+    List<WebhookDeliveryPipeline.Delivery> deliveries = pipeline.drain();
+
+    assertEquals(1, deliveries.size());
+    assertFalse(deliveries.get(0).isSuccessful());
+    assertEquals(500, deliveries.get(0).getResults().get(0).getStatus());
+  }
+
+  /**
+   * A trial delivery that fails before being sent, such as one with an invalid URL, does not
+   * count as a success of the destination, so a half-open breaker does not close.
+   *
+   * @throws Exception
+   *     if a delivery is deferred
+   */
+  @Test
+  void testUnsentTrialDoesNotCloseTheBreaker() throws Exception {
+    AtomicLong now = new AtomicLong(1000);
+    var breaker = new WebhookCircuitBreaker(true, 10, 1, 50, 5000, 1, 500, now::get);
+    String destination = "http://example.com:80";
+    breaker.acquire(destination);
+    breaker.record(destination, true);
+    now.addAndGet(5000);
+    Events event = event("created", null);
+    when(client.sendAsync(any())).thenThrow(new OBException("Invalid URL"));
+
+    try (MockedStatic<WebhookCircuitBreaker> mockedBreaker = mockStatic(
+        WebhookCircuitBreaker.class, CALLS_REAL_METHODS)) {
+      mockedBreaker.when(WebhookCircuitBreaker::getInstance).thenReturn(breaker);
+      var pipeline = new WebhookDeliveryPipeline(10, logger);
+      pipeline.submit("entry", event, bob);
+
+      List<WebhookDeliveryPipeline.Delivery> deliveries = pipeline.drain();
+      assertFalse(deliveries.get(0).isSuccessful());
+    }
+    assertEquals(WebhookCircuitBreaker.State.HALF_OPEN, breaker.getState(destination));
+    breaker.acquire(destination);
+  }
+
+  private Events event(String name, CompletableFuture<WebhookHttpClient.Response> response) {
+    Events event = mock(Events.class);
+    when(event.getName()).thenReturn(name);
+    Webhook hook = mock(Webhook.class);
+    when(hook.isActive()).thenReturn(true);
+    when(criteria.list()).thenReturn(List.of(hook));
+    var request = new WebhookHttpClient.Request("POST", "http://example.com", Map.of(), "{}");
+    mockedWebHookUtil.when(() -> WebHookUtil.prepareEvent(hook, bob, logger)).thenReturn(request);
+    when(client.sendAsync(request)).thenReturn(response);
+    return event;
+  }
+}
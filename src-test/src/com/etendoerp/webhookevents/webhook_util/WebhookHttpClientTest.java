@@ -0,0 +1,173 @@
+package com.etendoerp.webhookevents.webhook_util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpClient;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.openbravo.base.exception.OBException;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Unit tests for the WebhookHttpClient class, sending requests to a local server.
+ */
+class WebhookHttpClientTest {
+
+  private final Set<Integer> clientPorts = ConcurrentHashMap.newKeySet();
+  private HttpServer server;
+  private WebhookHttpClient client;
+  private String baseUrl;
+
+  /**
+   * Starts a local server that echoes the body and a header, and can answer slowly or with errors.
+   *
+   * @throws IOException
+   *     if the server cannot be started
+   */
+  @BeforeEach
+  void setUp() throws IOException {
+    server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+    server.createContext("/echo", exchange -> {
+      clientPorts.add(exchange.getRemoteAddress().getPort());
+      byte[] body = exchange.getRequestBody().readAllBytes();
+      exchange.getResponseHeaders().add("X-Token", exchange.getRequestHeaders().getFirst("X-Token"));
+      respond(exchange, 200, body);
+    });
+    server.createContext("/error", exchange -> respond(exchange, 500, new byte[0]));
+    server.createContext("/slow", exchange -> {
+      try {
+        Thread.sleep(3000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      respond(exchange, 200, new byte[0]);
+    });
+    server.start();
+    baseUrl = "http://localhost:" + server.getAddress().getPort();
+    client = new WebhookHttpClient(HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_1_1)
+        .connectTimeout(Duration.ofSeconds(5))
+        .build(), 1000, 1500);
+  }
+
+  /**
+   * Stops the local server.
+   */
+  @AfterEach
+  void tearDown() {
+    server.stop(0);
+  }
+
+  /**
+   * Consecutive requests to the same host reuse the same connection.
+   *
+   * @throws Exception
+   *     if a request fails
+   */
+  @Test
+  void testRequestsReuseConnection() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      var response = client.send(new WebhookHttpClient.Request("POST", baseUrl + "/echo",
+          Map.of("X-Token", "abc"), "{\"id\":" + i + "}"));
+      assertEquals(200, response.getStatus());
+      assertEquals("{\"id\":" + i + "}", response.getBody());
+    }
+    assertEquals(1, clientPorts.size());
+  }
+
+  /**
+   * Error statuses are returned to the caller, which decides whether they are a failure.
+   *
+   * @throws Exception
+   *     if the request fails
+   */
+  @Test
+  void testErrorStatus() throws Exception {
+    var response = client.send(new WebhookHttpClient.Request("POST", baseUrl + "/error",
+        Map.of("Connection", "close"), ""));
+
+    assertEquals(500, response.getStatus());
+    assertFalse(response.isSuccessful());
+  }
+
+  /**
+   * Slow servers fail with a timeout instead of blocking the delivery.
+   */
+  @Test
+  void testReadTimeout() {
+    var request = new WebhookHttpClient.Request("GET", baseUrl + "/slow", Map.of(), null);
+
+    assertThrows(HttpTimeoutException.class, () -> client.send(request));
+  }
+
+  /**
+   * A request that does not finish within the total timeout is aborted, not only abandoned.
+   */
+  @Test
+  void testTimeoutCancelsExchange() {
+    CompletableFuture<HttpResponse<String>> exchange = new CompletableFuture<>();
+    var timedClient = new WebhookHttpClient(httpClient(exchange), 100, 100);
+    var request = new WebhookHttpClient.Request("GET", baseUrl + "/slow", Map.of(), null);
+
+    assertThrows(HttpTimeoutException.class, () -> timedClient.send(request));
+    assertThrows(CancellationException.class, () -> exchange.get(1, TimeUnit.SECONDS));
+  }
+
+  /**
+   * Cancelling a request sent without blocking aborts its exchange.
+   */
+  @Test
+  void testCancelAbortsExchange() {
+    CompletableFuture<HttpResponse<String>> exchange = new CompletableFuture<>();
+    var cancellableClient = new WebhookHttpClient(httpClient(exchange), 1000, 1500);
+    var request = new WebhookHttpClient.Request("GET", baseUrl + "/slow", Map.of(), null);
+
+    cancellableClient.sendAsync(request).cancel(true);
+
+    assertTrue(exchange.isCancelled());
+  }
+
+  /**
+   * Only http and https URLs are accepted.
+   */
+  @Test
+  void testInvalidUrl() {
+    var request = new WebhookHttpClient.Request("POST", "ftp://example.com/file", Map.of(), "");
+
+    var e = assertThrows(OBException.class, () -> client.send(request));
+    assertTrue(e.getMessage().contains("Invalid URL"));
+  }
+
+  private static HttpClient httpClient(CompletableFuture<HttpResponse<String>> exchange) {
+    HttpClient httpClient = mock(HttpClient.class);
+    doReturn(exchange).when(httpClient).sendAsync(any(), any());
+    return httpClient;
+  }
+
+  private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+    exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+    exchange.getResponseBody().write(body);
+    exchange.close();
+  }
+}
@@ -0,0 +1,80 @@
+package com.etendoerp.webhookevents.webhook_util;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mockStatic;
+import static org.mockito.Mockito.times;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.MockedStatic;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.database.ConnectionProvider;
+import org.openbravo.erpCommon.utility.Utility;
+
+/**
+ * Unit tests for the WebhookMessages class.
+ */
+class WebhookMessagesTest {
+
+  private static final String MESSAGE_KEY = "smfwhe_actionNotFound";
+  private static final String EN_US = "en_US";
+  private static final String ES_ES = "es_ES";
+
+  private MockedStatic<Utility> mockedUtility;
+  private MockedStatic<OBContext> mockedOBContext;
+
+  /**
+   * Sets up the static mocks and starts every test with an empty cache.
+   */
+  @BeforeEach
+  void setUp() {
+    mockedUtility = mockStatic(Utility.class);
+    mockedOBContext = mockStatic(OBContext.class);
+    mockedUtility.when(() -> Utility.messageBD(any(ConnectionProvider.class), eq(MESSAGE_KEY), eq(EN_US)))
+        .thenReturn("Webhook %s not found");
+    mockedUtility.when(() -> Utility.messageBD(any(ConnectionProvider.class), eq(MESSAGE_KEY), eq(ES_ES)))
+        .thenReturn("Webhook %s no encontrado");
+    WebhookMessages.invalidate();
+  }
+
+  /**
+   * Closes the static mocks.
+   */
+  @AfterEach
+  void tearDown() {
+    mockedUtility.close();
+    mockedOBContext.close();
+  }
+
+  /**
+   * A message is read from the database only once per language.
+   */
+  @Test
+  void testMessagesAreCachedByLanguage() {
+    assertEquals("Webhook %s not found", WebhookMessages.getMessage(MESSAGE_KEY, EN_US));
+    assertEquals("Webhook %s not found", WebhookMessages.getMessage(MESSAGE_KEY, EN_US));
+    assertEquals("Webhook %s no encontrado", WebhookMessages.getMessage(MESSAGE_KEY, ES_ES));
+
+    mockedUtility.verify(
+        () -> Utility.messageBD(any(ConnectionProvider.class), eq(MESSAGE_KEY), eq(EN_US)), times(1));
+    mockedUtility.verify(
+        () -> Utility.messageBD(any(ConnectionProvider.class), eq(MESSAGE_KEY), eq(ES_ES)), times(1));
+  }
+
+  /**
+   * Without a context the message is formatted in en_US, and invalidating the cache reads it again.
+   */
+  @Test
+  void testFormatWithoutContextAndInvalidate() {
+    assertEquals("Webhook test not found", WebhookMessages.format(MESSAGE_KEY, "test"));
+
+    WebhookMessages.invalidate();
+    WebhookMessages.format(MESSAGE_KEY, "test");
+
+    mockedUtility.verify(
+        () -> Utility.messageBD(any(ConnectionProvider.class), eq(MESSAGE_KEY), eq(EN_US)), times(2));
+  }
+}
@@ -0,0 +1,49 @@
+package com.etendoerp.webhookevents.webhook_util;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Unit tests for the WebhookRetryPolicy class.
+ */
+class WebhookRetryPolicyTest {
+
+  private final WebhookRetryPolicy policy = new WebhookRetryPolicy(5, 1000, 60000);
+
+  /**
+   * The delay doubles on every attempt, with a jitter of up to half of it.
+   */
+  @Test
+  void testDelayGrowsExponentially() {
+    for (int i = 0; i < 100; i++) {
+      assertBetween(500, 1000, policy.getDelay(1));
+      assertBetween(1000, 2000, policy.getDelay(2));
+      assertBetween(4000, 8000, policy.getDelay(4));
+    }
+  }
+
+  /**
+   * The delay never exceeds the maximum, even after many attempts.
+   */
+  @Test
+  void testDelayIsCapped() {
+    assertBetween(30000, 60000, policy.getDelay(7));
+    assertBetween(30000, 60000, policy.getDelay(Long.MAX_VALUE));
+  }
+
+  /**
+   * Events are retried until the maximum number of attempts fail.
+   */
+  @Test
+  void testMaxAttempts() {
+    assertFalse(policy.isExhausted(4));
+    assertTrue(policy.isExhausted(5));
+  }
+
+  private static void assertBetween(long min, long max, long actual) {
+    assertTrue(actual >= min && actual <= max,
+        "Expected between " + min + " and " + max + " but was " + actual);
+  }
+}
@@ -28,19 +28,14 @@ import org.openbravo.client.kernel.event.EntityNewEvent;
 import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
 import org.openbravo.client.kernel.event.EntityUpdateEvent;
 import org.openbravo.dal.core.DalUtil;
-import org.openbravo.dal.core.OBContext;
-import org.openbravo.database.ConnectionProvider;
-import org.openbravo.erpCommon.utility.Utility;
-import org.openbravo.service.db.DalConnectionProvider;
 
 import com.etendoerp.webhookevents.data.ArgumentsData;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 public class ArgumentsDataHandler extends EntityPersistenceEventObserver {
   private static Entity[] entities = { ModelProvider.getInstance().getEntity(
       ArgumentsData.ENTITY_NAME) };
   protected Logger logger = Logger.getLogger(this.getClass());
-  private static final String LANGUAGE = OBContext.getOBContext().getLanguage().getLanguage();
-  private static final ConnectionProvider conn = new DalConnectionProvider(false);
 
   @Override
   protected Entity[] getObservedEntities() {
@@ -81,8 +76,7 @@ public class ArgumentsDataHandler extends EntityPersistenceEventObserver {
     String message = "";
     for (String s : arg.getValue().split(" ")) {
       if (s.contains(Constants.AT) && DalUtil.getPropertyFromPath(entity, s.split(Constants.AT)[1]) == null) {
-        message = String.format(Utility.messageBD(conn, "smfwhe_ErrorProperty", LANGUAGE),
-            s.split(Constants.AT)[1]);
+        message = WebhookMessages.format("smfwhe_ErrorProperty", s.split(Constants.AT)[1]);
         throw new OBException(message);
       }
     }
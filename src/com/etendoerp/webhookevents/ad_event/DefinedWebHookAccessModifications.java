@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.ad_event;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import javax.enterprise.event.Observes;
+
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.model.Property;
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.client.kernel.event.TransactionCompletedEvent;
+import org.openbravo.model.ad.access.UserRoles;
+
+import com.etendoerp.webhookevents.data.DefinedwebhookAccess;
+import com.etendoerp.webhookevents.data.DefinedwebhookRole;
+import com.etendoerp.webhookevents.data.DefinedwebhookToken;
+import com.etendoerp.webhookevents.services.WebhookAccessIndex;
+import com.etendoerp.webhookevents.services.WebhookAuthCache;
+import com.etendoerp.webhookevents.services.WebhookLimiter;
+
+/**
+ * Observes the tokens, user roles and access granted to the webhooks. Changes in the access rows
+ * rebuild only the {@link WebhookAccessIndex} entry of the affected webhooks, while changes in the
+ * tokens or user roles discard the cached authentication decisions.
+ */
+public class DefinedWebHookAccessModifications extends EntityPersistenceEventObserver {
+  private static Entity[] entities = {
+      ModelProvider.getInstance().getEntity(DefinedwebhookAccess.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DefinedwebhookToken.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(DefinedwebhookRole.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(UserRoles.ENTITY_NAME)
+  };
+  private static final ThreadLocal<Set<String>> pendingWebhooks = ThreadLocal.withInitial(
+      HashSet::new);
+  private static final ThreadLocal<Boolean> pendingAuthInvalidation = ThreadLocal.withInitial(
+      () -> Boolean.FALSE);
+
+  /**
+   * Returns the entities observed by this event observer.
+   *
+   * @return An array of entities observed by this class.
+   */
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  /**
+   * Handles the save event for the observed entities.
+   *
+   * @param event
+   *     The entity new event.
+   */
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event, getWebhookId(event.getTargetInstance()));
+  }
+
+  /**
+   * Handles the update event for the observed entities.
+   *
+   * @param event
+   *     The entity update event.
+   */
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event, getWebhookId(event.getTargetInstance()));
+    Property webhookProperty = getWebhookProperty(event.getTargetInstance());
+    if (webhookProperty != null) {
+      var previousWebhook = (BaseOBObject) event.getPreviousState(webhookProperty);
+      invalidate(event, previousWebhook != null ? (String) previousWebhook.getId() : null);
+    }
+  }
+
+  /**
+   * Handles the delete event for the observed entities.
+   *
+   * @param event
+   *     The entity delete event.
+   */
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate(event, getWebhookId(event.getTargetInstance()));
+  }
+
+  /**
+   * Invalidates the cached access again once the transaction is completed, so values loaded by
+   * concurrent requests before the commit are discarded.
+   *
+   * @param event
+   *     The transaction completed event.
+   */
+  public void onTransactionCompleted(@Observes TransactionCompletedEvent event) {
+    Set<String> webhookIds = pendingWebhooks.get();
+    pendingWebhooks.remove();
+    for (String webhookId : webhookIds) {
+      WebhookAccessIndex.getInstance().invalidate(webhookId);
+    }
+    if (Boolean.TRUE.equals(pendingAuthInvalidation.get())) {
+      pendingAuthInvalidation.remove();
+      WebhookAuthCache.getInstance().invalidate();
+    }
+  }
+
+  private void invalidate(EntityPersistenceEvent event, String webhookId) {
+    var target = event.getTargetInstance();
+    if (target instanceof DefinedwebhookAccess || target instanceof DefinedwebhookRole) {
+      if (webhookId != null) {
+        pendingWebhooks.get().add(webhookId);
+      }
+      WebhookAccessIndex.getInstance().invalidate(webhookId);
+    } else {
+      pendingAuthInvalidation.set(Boolean.TRUE);
+      WebhookAuthCache.getInstance().invalidate();
+      WebhookLimiter.getInstance().invalidate();
+    }
+  }
+
+  private static Property getWebhookProperty(BaseOBObject target) {
+    if (target instanceof DefinedwebhookAccess) {
+      return target.getEntity().getProperty(DefinedwebhookAccess.PROPERTY_SMFWHEDEFINEDWEBHOOK);
+    }
+    if (target instanceof DefinedwebhookRole) {
+      return target.getEntity().getProperty(DefinedwebhookRole.PROPERTY_SMFWHEDEFINEDWEBHOOK);
+    }
+    return null;
+  }
+
+  private static String getWebhookId(BaseOBObject target) {
+    Property webhookProperty = getWebhookProperty(target);
+    if (webhookProperty == null) {
+      return null;
+    }
+    var webHook = (BaseOBObject) target.get(webhookProperty.getName());
+    return webHook != null ? (String) webHook.getId() : null;
+  }
+}
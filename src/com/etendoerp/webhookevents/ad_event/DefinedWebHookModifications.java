@@ -28,23 +28,32 @@ import org.openbravo.client.kernel.event.EntityDeleteEvent;
 import org.openbravo.client.kernel.event.EntityNewEvent;
 import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
 import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.client.kernel.event.TransactionCompletedEvent;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBDal;
-import org.openbravo.erpCommon.utility.OBMessageUtils;
 import org.openbravo.model.ad.system.Client;
 
 import com.etendoerp.webhookevents.data.DefinedWebHook;
 import com.etendoerp.webhookevents.data.DefinedWebhookParam;
+import com.etendoerp.webhookevents.services.WebhookAccessIndex;
+import com.etendoerp.webhookevents.services.WebhookDocsCache;
+import com.etendoerp.webhookevents.services.WebhookHandlerCache;
+import com.etendoerp.webhookevents.services.WebhookLimiter;
+import com.etendoerp.webhookevents.services.WebhookRegistry;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 /**
  * Observes entity persistence events for DefinedWebHook and DefinedWebhookParam entities.
- * This class ensures that certain actions are only performed by the system administrator.
+ * This class ensures that certain actions are only performed by the system administrator and keeps
+ * the {@link WebhookRegistry} in sync with the stored configuration.
  */
 public class DefinedWebHookModifications extends EntityPersistenceEventObserver {
   private static Entity[] entities = {
       ModelProvider.getInstance().getEntity(DefinedWebHook.ENTITY_NAME),
       ModelProvider.getInstance().getEntity(DefinedWebhookParam.ENTITY_NAME)
   };
+  private static final ThreadLocal<Boolean> pendingInvalidation = ThreadLocal.withInitial(
+      () -> Boolean.FALSE);
   protected Logger logger = Logger.getLogger(this.getClass());
 
   /**
@@ -68,6 +77,7 @@ public class DefinedWebHookModifications extends EntityPersistenceEventObserver
       return;
     }
     checkSysAdminRole();
+    invalidateRegistry();
   }
 
   /**
@@ -81,6 +91,7 @@ public class DefinedWebHookModifications extends EntityPersistenceEventObserver
       return;
     }
     checkSysAdminRole();
+    invalidateRegistry();
   }
 
   /**
@@ -94,6 +105,32 @@ public class DefinedWebHookModifications extends EntityPersistenceEventObserver
       return;
     }
     checkSysAdminRole();
+    invalidateRegistry();
+    if (event.getTargetInstance() instanceof DefinedWebHook) {
+      WebhookAccessIndex.getInstance().invalidate(event.getTargetInstance().getId().toString());
+    }
+  }
+
+  /**
+   * Invalidates the registry again once the transaction that modified the webhook configuration is
+   * completed, so definitions loaded by concurrent requests before the commit are discarded.
+   *
+   * @param event
+   *     The transaction completed event.
+   */
+  public void onTransactionCompleted(@Observes TransactionCompletedEvent event) {
+    if (Boolean.TRUE.equals(pendingInvalidation.get())) {
+      pendingInvalidation.remove();
+      WebhookRegistry.getInstance().invalidate();
+    }
+  }
+
+  private void invalidateRegistry() {
+    pendingInvalidation.set(Boolean.TRUE);
+    WebhookRegistry.getInstance().invalidate();
+    WebhookHandlerCache.getInstance().invalidate();
+    WebhookLimiter.getInstance().invalidate();
+    WebhookDocsCache.getInstance().invalidate();
   }
 
   /**
@@ -104,7 +141,7 @@ public class DefinedWebHookModifications extends EntityPersistenceEventObserver
     Client currentClient = OBContext.getOBContext().getCurrentClient();
     var sysClient = OBDal.getInstance().get(Client.class, "0");
     if (!StringUtils.equalsIgnoreCase(currentClient.getId(), sysClient.getId())) {
-      throw new OBException(OBMessageUtils.messageBD("smfwhe_errorSysAdminRole"));
+      throw new OBException(WebhookMessages.getMessage("smfwhe_errorSysAdminRole"));
     }
   }
 }
\ No newline at end of file
@@ -28,13 +28,11 @@ import org.openbravo.client.kernel.event.EntityDeleteEvent;
 import org.openbravo.client.kernel.event.EntityNewEvent;
 import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
 import org.openbravo.client.kernel.event.EntityUpdateEvent;
-import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
-import org.openbravo.erpCommon.utility.Utility;
-import org.openbravo.service.db.DalConnectionProvider;
 
 import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
 
 public class EventsHandler extends EntityPersistenceEventObserver {
   private static Entity[] entities = { ModelProvider.getInstance().getEntity(Events.ENTITY_NAME) };
@@ -56,9 +54,7 @@ public class EventsHandler extends EntityPersistenceEventObserver {
     cEvents.add(Restrictions.eq(Events.PROPERTY_TABLE, events.getTable()));
 
     if (!cEvents.list().isEmpty()) {
-      String message = String.format(Utility.messageBD(new DalConnectionProvider(false),
-          "smfwhe_eventAlreadyExists", OBContext.getOBContext().getLanguage().getLanguage()),
-          events.getIdentifier());
+      String message = WebhookMessages.format("smfwhe_eventAlreadyExists", events.getIdentifier());
       logger.info(message);
       throw new OBException(message);
     }
@@ -74,9 +70,7 @@ public class EventsHandler extends EntityPersistenceEventObserver {
     cEvents.add(Restrictions.eq(Events.PROPERTY_TABLE, events.getTable()));
     cEvents.add(Restrictions.ne(Events.PROPERTY_ID, events.getId()));
     if (!cEvents.list().isEmpty()) {
-      String message = String.format(Utility.messageBD(new DalConnectionProvider(false),
-          "smfwhe_eventAlreadyExists", OBContext.getOBContext().getLanguage().getLanguage()),
-          events.getIdentifier());
+      String message = WebhookMessages.format("smfwhe_eventAlreadyExists", events.getIdentifier());
       logger.info(message);
       throw new OBException(message);
     }
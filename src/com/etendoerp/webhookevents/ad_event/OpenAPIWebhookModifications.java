@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.ad_event;
+
+import javax.enterprise.event.Observes;
+
+import org.openbravo.base.model.Entity;
+import org.openbravo.base.model.ModelProvider;
+import org.openbravo.client.kernel.event.EntityDeleteEvent;
+import org.openbravo.client.kernel.event.EntityNewEvent;
+import org.openbravo.client.kernel.event.EntityPersistenceEventObserver;
+import org.openbravo.client.kernel.event.EntityUpdateEvent;
+import org.openbravo.client.kernel.event.TransactionCompletedEvent;
+
+import com.etendoerp.openapi.data.OpenAPIRequest;
+import com.etendoerp.openapi.data.OpenApiFlow;
+import com.etendoerp.openapi.data.OpenApiFlowPoint;
+import com.etendoerp.webhookevents.data.OpenAPIWebhook;
+import com.etendoerp.webhookevents.openapi.OpenAPIWebhooksIndex;
+
+/**
+ * Observes the OpenAPI flows, their points, requests and webhooks, discarding the
+ * {@link OpenAPIWebhooksIndex} when any of them changes.
+ */
+public class OpenAPIWebhookModifications extends EntityPersistenceEventObserver {
+  private static Entity[] entities = {
+      ModelProvider.getInstance().getEntity(OpenApiFlow.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(OpenApiFlowPoint.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(OpenAPIRequest.ENTITY_NAME),
+      ModelProvider.getInstance().getEntity(OpenAPIWebhook.ENTITY_NAME)
+  };
+  private static final ThreadLocal<Boolean> pendingInvalidation = ThreadLocal.withInitial(
+      () -> Boolean.FALSE);
+
+  /**
+   * Returns the entities observed by this event observer.
+   *
+   * @return An array of entities observed by this class.
+   */
+  @Override
+  protected Entity[] getObservedEntities() {
+    return entities;
+  }
+
+  /**
+   * Handles the save event for the observed entities.
+   *
+   * @param event
+   *     The entity new event.
+   */
+  public void onSave(@Observes EntityNewEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate();
+  }
+
+  /**
+   * Handles the update event for the observed entities.
+   *
+   * @param event
+   *     The entity update event.
+   */
+  public void onUpdate(@Observes EntityUpdateEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate();
+  }
+
+  /**
+   * Handles the delete event for the observed entities.
+   *
+   * @param event
+   *     The entity delete event.
+   */
+  public void onDelete(@Observes EntityDeleteEvent event) {
+    if (!isValidEvent(event)) {
+      return;
+    }
+    invalidate();
+  }
+
+  /**
+   * Invalidates the index again once the transaction is completed, so values loaded by
+   * concurrent requests before the commit are discarded.
+   *
+   * @param event
+   *     The transaction completed event.
+   */
+  public void onTransactionCompleted(@Observes TransactionCompletedEvent event) {
+    if (Boolean.TRUE.equals(pendingInvalidation.get())) {
+      pendingInvalidation.remove();
+      OpenAPIWebhooksIndex.getInstance().invalidate();
+    }
+  }
+
+  private static void invalidate() {
+    pendingInvalidation.set(Boolean.TRUE);
+    OpenAPIWebhooksIndex.getInstance().invalidate();
+  }
+}
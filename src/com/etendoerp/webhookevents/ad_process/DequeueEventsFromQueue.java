@@ -17,30 +17,38 @@
 
 package com.etendoerp.webhookevents.ad_process;
 
-import com.etendoerp.webhookevents.webhook_util.WebHookUtil;
+import java.util.Date;
+import java.util.List;
+
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.apache.log4j.Logger;
 import org.hibernate.ScrollableResults;
+import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.model.ModelProvider;
+import org.openbravo.base.provider.OBProvider;
 import org.openbravo.base.structure.BaseOBObject;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.dal.service.OBQuery;
-import org.openbravo.database.ConnectionProvider;
-import org.openbravo.erpCommon.utility.Utility;
 import org.openbravo.scheduling.ProcessBundle;
 import org.openbravo.scheduling.ProcessLogger;
 import org.openbravo.service.db.DalBaseProcess;
-import org.openbravo.service.db.DalConnectionProvider;
 
 import com.etendoerp.webhookevents.data.Events;
 import com.etendoerp.webhookevents.data.QueueEventHook;
+import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.data.WebhookDeadLetter;
+import com.etendoerp.webhookevents.exceptions.WebhookCircuitOpenException;
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+import com.etendoerp.webhookevents.webhook_util.WebhookDeliveryPipeline;
+import com.etendoerp.webhookevents.webhook_util.WebhookDeliveryResult;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+import com.etendoerp.webhookevents.webhook_util.WebhookRetryPolicy;
 
 public class DequeueEventsFromQueue extends DalBaseProcess {
-  private static final String LANGUAGE = OBContext.getOBContext().getLanguage().getLanguage();
-  private static final ConnectionProvider conn = new DalConnectionProvider(false);
   private static final Logger log = Logger.getLogger(DequeueEventsFromQueue.class);
 
   @Override
@@ -51,22 +59,30 @@ public class DequeueEventsFromQueue extends DalBaseProcess {
     QueueEventHook obj;
     Events event;
     OBContext.setAdminMode();
+    WebhookDeliveryPipeline pipeline = new WebhookDeliveryPipeline(
+        WebhookConfig.getInt("webhooks.delivery.maxInFlight", 64), log);
+    WebhookRetryPolicy retryPolicy = new WebhookRetryPolicy();
     OBCriteria<QueueEventHook> cQueue = OBDal.getInstance().createCriteria(QueueEventHook.class);
+    cQueue.add(Restrictions.or(Restrictions.isNull(QueueEventHook.PROPERTY_NEXTATTEMPT),
+        Restrictions.le(QueueEventHook.PROPERTY_NEXTATTEMPT, new Date())));
     cQueue.setFetchSize(1000);
     try (ScrollableResults scroller = cQueue.scroll()) {
       while (scroller.next()) {
         obj = (QueueEventHook) scroller.get()[0];
         event = obj.getSmfwheEvents();
 
-        handleDequeueEvent(event, obj, logger);
-
-        OBDal.getInstance().remove(obj);
-        i++;
-        if (i % 100 == 0) {
+        if (!handleDequeueEvent(event, obj, logger, pipeline)) {
+          OBDal.getInstance().remove(obj);
+          i++;
+        }
+        i += recordDeliveries(pipeline.poll(), retryPolicy, logger);
+        if (i >= 100) {
           OBDal.getInstance().flush();
           OBDal.getInstance().getSession().clear();
+          i = 0;
         }
       }
+      recordDeliveries(pipeline.drain(), retryPolicy, logger);
     } catch (Exception e) {
       logger.logln("Error getting scrollable results: " + e.getMessage());
       throw new OBException(e);
@@ -77,8 +93,13 @@ public class DequeueEventsFromQueue extends DalBaseProcess {
     logger.logln("Finish dequeue process.");
   }
 
-  private static void handleDequeueEvent(Events event, QueueEventHook obj, ProcessLogger logger)
-      throws Exception {
+  /**
+   * Renders the queued event and hands it to the pipeline, which sends it in the background.
+   *
+   * @return False if the record does not match the event, so there is nothing to send
+   */
+  private static boolean handleDequeueEvent(Events event, QueueEventHook obj,
+      ProcessLogger logger, WebhookDeliveryPipeline pipeline) {
     String whereClause;
     OBQuery<BaseOBObject> qBob;
     whereClause = event.getHQLWhereClause() == null ?
@@ -99,16 +120,115 @@ public class DequeueEventsFromQueue extends DalBaseProcess {
       if(entity == null) {
         throw new OBException("No entity found for id: " + obj.getRecord());
       }
-      WebHookUtil.callWebHook(event, entity,  log);
+      pipeline.submit(obj.getId(), event, entity, obj.getSmfwheWebhook());
       String entityName = entity.getEntityName();
       String identifier = entity.getIdentifier();
       if(StringUtils.isEmpty(entityName) || StringUtils.isEmpty(identifier)) {
         throw new OBException("Entity name or identifier is empty for id: " + obj.getRecord());
       }
-      String message = String.format(
-          Utility.messageBD(conn, "smfwhe_SendCallWebHook", LANGUAGE), event.getName(),
+      String message = WebhookMessages.format("smfwhe_SendCallWebHook", event.getName(),
           entityName + " " + identifier);
       logger.logln(message);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Removes from the queue the events delivered to all their webhooks. Each failed webhook gets
+   * its own queue entry, retried with an exponential backoff until it is delivered or it runs out
+   * of attempts and is moved to the dead letters.
+   *
+   * @return Number of changed queue entries
+   */
+  static int recordDeliveries(List<WebhookDeliveryPipeline.Delivery> deliveries,
+      WebhookRetryPolicy retryPolicy, ProcessLogger logger) {
+    int changes = 0;
+    for (WebhookDeliveryPipeline.Delivery delivery : deliveries) {
+      QueueEventHook entry = OBDal.getInstance()
+          .get(QueueEventHook.class, delivery.getQueueEntryId());
+      if (entry == null) {
+        continue;
+      }
+      for (WebhookDeliveryResult result : delivery.getResults()) {
+        if (!result.isSuccessful()) {
+          String error = WebhookMessages.format("smfwhe_WebhookDeliveryFailed",
+              result.getWebhook().getName(), delivery.getEventName(),
+              result.getError().getMessage());
+          if (result.getError() instanceof WebhookCircuitOpenException) {
+            log.debug(error);
+          } else {
+            log.error(error, result.getError());
+          }
+          logger.logln(error);
+          scheduleRetry(entry, result, retryPolicy, logger);
+          changes++;
+        }
+      }
+      // Entries of a single webhook that failed were rescheduled, the rest are done
+      if (delivery.isSuccessful() || entry.getSmfwheWebhook() == null) {
+        OBDal.getInstance().remove(entry);
+      }
+      changes++;
+    }
+    return changes;
+  }
+
+  /**
+   * Schedules the next attempt of a failed webhook. Deliveries deferred by an open circuit
+   * breaker are not attempts, so they are scheduled for when the breaker allows them again.
+   */
+  private static void scheduleRetry(QueueEventHook entry, WebhookDeliveryResult result,
+      WebhookRetryPolicy retryPolicy, ProcessLogger logger) {
+    Webhook webhook = result.getWebhook();
+    boolean deferred = result.getError() instanceof WebhookCircuitOpenException;
+    long attempts = (entry.getSmfwheWebhook() != null ? entry.getAttempts() : 0)
+        + (deferred ? 0 : 1);
+    Long status = result.getStatus() > 0 ? (long) result.getStatus() : null;
+    String error = StringUtils.left(ExceptionUtils.getMessage(result.getError()), 2000);
+
+    if (!deferred && retryPolicy.isExhausted(attempts)) {
+      WebhookDeadLetter deadLetter = OBProvider.getInstance().get(WebhookDeadLetter.class);
+      deadLetter.setOrganization(entry.getOrganization());
+      deadLetter.setTable(entry.getTable());
+      deadLetter.setRecord(entry.getRecord());
+      deadLetter.setSmfwheEvents(entry.getSmfwheEvents());
+      deadLetter.setSmfwheWebhook(webhook);
+      deadLetter.setAttempts(attempts);
+      deadLetter.setLastStatus(status);
+      deadLetter.setLastError(error);
+      OBDal.getInstance().save(deadLetter);
+      if (entry.getSmfwheWebhook() != null) {
+        OBDal.getInstance().remove(entry);
+      }
+      logger.logln(WebhookMessages.format("smfwhe_WebhookDeadLetter", webhook.getName(),
+          entry.getSmfwheEvents().getName(), attempts));
+      return;
+    }
+
+    QueueEventHook retry = entry;
+    if (entry.getSmfwheWebhook() == null) {
+      retry = OBProvider.getInstance().get(QueueEventHook.class);
+      retry.setOrganization(entry.getOrganization());
+      retry.setCreationDate(new Date());
+      retry.setUpdated(new Date());
+      retry.setTable(entry.getTable());
+      retry.setRecord(entry.getRecord());
+      retry.setSmfwheEvents(entry.getSmfwheEvents());
+      retry.setSmfwheWebhook(webhook);
+    }
+    Date nextAttempt = deferred
+        ? ((WebhookCircuitOpenException) result.getError()).getRetryAt()
+        : retryPolicy.getNextAttempt(attempts);
+    retry.setAttempts(attempts);
+    retry.setNextAttempt(nextAttempt);
+    // A deferral keeps the error of the last attempt
+    if (!deferred || retry != entry) {
+      retry.setLastStatus(status);
+      retry.setLastError(error);
     }
+    OBDal.getInstance().save(retry);
+    logger.logln(WebhookMessages.format("smfwhe_WebhookDeliveryRetry", webhook.getName(),
+        entry.getSmfwheEvents().getName(), nextAttempt.toInstant()));
   }
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.ad_process;
+
+import java.util.Date;
+
+import org.hibernate.ScrollableResults;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.scheduling.ProcessBundle;
+import org.openbravo.scheduling.ProcessLogger;
+import org.openbravo.service.db.DalBaseProcess;
+
+import com.etendoerp.webhookevents.data.QueueEventHook;
+import com.etendoerp.webhookevents.data.WebhookDeadLetter;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Queues again the active dead letters, each one for the webhook that failed and with its
+ * attempts reset, so the next run of {@link DequeueEventsFromQueue} sends them again. Dead
+ * letters that must not be sent again can be deactivated before running it in the Webhook Dead
+ * Letters window, which re-drives the selected ones with {@link RedriveDeadLettersAction}.
+ */
+public class RedriveDeadLetters extends DalBaseProcess {
+
+  @Override
+  protected void doExecute(ProcessBundle bundle) throws Exception {
+    ProcessLogger logger = bundle.getLogger();
+    int count = 0;
+    OBContext.setAdminMode();
+    try {
+      OBCriteria<WebhookDeadLetter> cDeadLetter = OBDal.getInstance()
+          .createCriteria(WebhookDeadLetter.class);
+      cDeadLetter.setFetchSize(1000);
+      try (ScrollableResults scroller = cDeadLetter.scroll()) {
+        while (scroller.next()) {
+          redrive((WebhookDeadLetter) scroller.get()[0]);
+          count++;
+          if (count % 100 == 0) {
+            OBDal.getInstance().flush();
+            OBDal.getInstance().getSession().clear();
+          }
+        }
+      }
+      OBDal.getInstance().flush();
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    logger.logln(WebhookMessages.format("smfwhe_DeadLettersRedriven", count));
+  }
+
+  /**
+   * Queues a dead letter again for the webhook that failed, with its attempts reset, and removes
+   * it from the dead letters. The changes are not flushed.
+   *
+   * @param deadLetter
+   *     Dead letter to send again
+   */
+  static void redrive(WebhookDeadLetter deadLetter) {
+    QueueEventHook entry = OBProvider.getInstance().get(QueueEventHook.class);
+    entry.setOrganization(deadLetter.getOrganization());
+    entry.setCreationDate(new Date());
+    entry.setUpdated(new Date());
+    entry.setTable(deadLetter.getTable());
+    entry.setRecord(deadLetter.getRecord());
+    entry.setSmfwheEvents(deadLetter.getSmfwheEvents());
+    entry.setSmfwheWebhook(deadLetter.getSmfwheWebhook());
+    entry.setAttempts(0L);
+    OBDal.getInstance().save(entry);
+    OBDal.getInstance().remove(deadLetter);
+  }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.ad_process;
+
+import org.apache.commons.lang3.mutable.MutableBoolean;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.WebhookDeadLetter;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+import com.smf.jobs.Action;
+import com.smf.jobs.ActionResult;
+import com.smf.jobs.Data;
+import com.smf.jobs.Result;
+
+/**
+ * Re-drive button of the Webhook Dead Letters window. Queues again the selected dead letters with
+ * their attempts reset, as {@link RedriveDeadLetters} does with all the active ones.
+ */
+public class RedriveDeadLettersAction extends Action {
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  protected Data preRun(JSONObject jsonContent) {
+    jsonContent.remove("_entityName");
+    Data tmp = null;
+    try {
+      tmp = new Data(jsonContent, getInputClass());
+    } catch (JSONException e) {
+      log.error(e.getMessage());
+    }
+    return tmp;
+  }
+
+  @Override
+  protected ActionResult action(JSONObject parameters, MutableBoolean isStopped) {
+    var result = new ActionResult();
+    int count = 0;
+    OBContext.setAdminMode(true);
+    try {
+      for (WebhookDeadLetter deadLetter : getInputContents(getInputClass())) {
+        RedriveDeadLetters.redrive(deadLetter);
+        count++;
+      }
+      OBDal.getInstance().flush();
+      result.setType(Result.Type.SUCCESS);
+      result.setMessage(WebhookMessages.format("smfwhe_DeadLettersRedriven", count));
+    } catch (Exception e) {
+      log.error(e.getMessage(), e);
+      OBDal.getInstance().rollbackAndClose();
+      result.setType(Result.Type.ERROR);
+      result.setMessage(e.getMessage());
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    return result;
+  }
+
+  @Override
+  protected Class<WebhookDeadLetter> getInputClass() {
+    return WebhookDeadLetter.class;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.exceptions;
+
+import java.util.Date;
+
+/**
+ * Exception throwed in case of a delivery deferred because the circuit breaker of its destination
+ * is open
+ */
+public class WebhookCircuitOpenException extends Exception {
+  private final long retryAt;
+
+  public WebhookCircuitOpenException(String message, long retryAt) {
+    super(message);
+    this.retryAt = retryAt;
+  }
+
+  /**
+   * @return Date after which the destination accepts deliveries again
+   */
+  public Date getRetryAt() {
+    return new Date(retryAt);
+  }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.exceptions;
+
+/**
+ * Exception throwed in case of a call rejected by the concurrency or rate limits of a webhook
+ */
+public class WebhookRateLimitException extends Exception {
+  private final long retryAfter;
+
+  public WebhookRateLimitException(String message, long retryAfter) {
+    super(message);
+    this.retryAfter = retryAfter;
+  }
+
+  /**
+   * @return Seconds the caller should wait before retrying
+   */
+  public long getRetryAfter() {
+    return retryAfter;
+  }
+}
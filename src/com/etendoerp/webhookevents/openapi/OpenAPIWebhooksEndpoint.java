@@ -3,22 +3,15 @@ package com.etendoerp.webhookevents.openapi;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
 
-import javax.enterprise.context.ApplicationScoped;
+import javax.enterprise.context.RequestScoped;
 
 import org.apache.commons.lang3.StringUtils;
 import org.codehaus.jettison.json.JSONObject;
-import org.openbravo.dal.core.OBContext;
-import org.openbravo.dal.service.OBDal;
 
-import com.etendoerp.openapi.data.OpenAPIRequest;
-import com.etendoerp.openapi.data.OpenApiFlow;
-import com.etendoerp.openapi.data.OpenApiFlowPoint;
 import com.etendoerp.openapi.model.OpenAPIEndpoint;
-import com.etendoerp.webhookevents.data.DefinedWebHook;
-import com.etendoerp.webhookevents.data.DefinedWebhookParam;
-import com.etendoerp.webhookevents.data.OpenAPIWebhook;
+import com.etendoerp.webhookevents.services.WebhookDefinition;
+import com.etendoerp.webhookevents.services.WebhookParamType;
 
 import io.swagger.v3.oas.models.OpenAPI;
 import io.swagger.v3.oas.models.Operation;
@@ -32,10 +25,14 @@ import io.swagger.v3.oas.models.responses.ApiResponse;
 import io.swagger.v3.oas.models.responses.ApiResponses;
 import io.swagger.v3.oas.models.tags.Tag;
 
-@ApplicationScoped
 /**
  * Class that implements the OpenAPIEndpoint interface to handle OpenAPI webhook endpoints.
+ * <p>
+ * The bean is request scoped, so the tag validated by {@link #isValid(String)} is never shared
+ * between concurrent requests. Flows and webhooks are read from the shared
+ * {@link OpenAPIWebhooksIndex}.
  */
+@RequestScoped
 public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
 
   public static final String OBJECT = "object";
@@ -45,37 +42,10 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
   public static final String GET = "GET";
   public static final String POST = "POST";
 
-  /**
-   * Retrieves a list of OpenApiFlow entities from the database.
-   *
-   * @return a list of OpenApiFlow entities
-   */
-  private List<OpenApiFlow> getFlows() {
-    return OBDal.getInstance().createCriteria(OpenApiFlow.class).list();
-  }
-
-  /**
-   * Retrieves a list of tags from the available flows.
-   * <p>
-   * This method filters the flows to include only those that have at least one
-   * endpoint with non-empty webhook lists. It then maps the filtered flows to their names
-   * to the list.
-   *
-   * @return a list of tag names
-   */
-  private List<String> getTags() {
-    List<String> listFlows = getFlows().stream()
-        .filter(flow -> flow.getETAPIOpenApiFlowPointList().stream()
-            .anyMatch(point -> !point.getEtapiOpenapiReq().getSmfwheOpenapiWebhkList().isEmpty()))
-        .map(OpenApiFlow::getName)
-        .collect(Collectors.toList());
-    return listFlows;
-  }
-
   /**
    * Validates if the provided tag is valid.
    * <p>
-   * This method checks if the provided tag is null or exists in the list of tags.
+   * This method checks if the provided tag is null or is the name of a flow with webhooks.
    * If the tag is valid, it sets the requestedTag to the provided tag.
    *
    * @param tag
@@ -84,19 +54,16 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
    */
   @Override
   public boolean isValid(String tag) {
-    try {
-      OBContext.setAdminMode();
-      if (tag == null) {
-        return true;
-      }
-      if (getTags().contains(tag)) {
-        requestedTag = tag;
-        return true;
-      }
-      return false;
-    } finally {
-      OBContext.restorePreviousMode();
+    requestedTag = null;
+    if (tag == null) {
+      return true;
+    }
+    boolean valid = OpenAPIWebhooksIndex.getInstance().getFlows().stream()
+        .anyMatch(flow -> flow.hasWebhooks() && StringUtils.equals(flow.getName(), tag));
+    if (valid) {
+      requestedTag = tag;
     }
+    return valid;
   }
 
   /**
@@ -110,41 +77,17 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
    */
   @Override
   public void add(OpenAPI openAPI) {
-    try {
-      OBContext.setAdminMode();
-      List<OpenApiFlow> flows = getFlows();
+    for (OpenAPIWebhooksIndex.Flow flow : OpenAPIWebhooksIndex.getInstance().getFlows()) {
       // If the tag is present , add only the endpoints of that tag
-      if (requestedTag != null) {
-        flows = flows.stream()
-            .filter(flow -> StringUtils.equalsIgnoreCase(flow.getName(), requestedTag))
-            .collect(Collectors.toList());
+      if (requestedTag != null && !StringUtils.equalsIgnoreCase(flow.getName(), requestedTag)) {
+        continue;
+      }
+      if (flow.hasActiveRequests()) {
+        addTagsIncrementally(openAPI, new Tag().name(flow.getName()).description(flow.getDescription()));
+      }
+      for (OpenAPIWebhooksIndex.Endpoint endpoint : flow.getEndpoints()) {
+        addDefinition(openAPI, flow.getName(), endpoint.getDescription(), endpoint.getWebHook());
       }
-      flows.forEach(flow -> {
-        var endpoints = flow.getETAPIOpenApiFlowPointList().stream().filter(OpenApiFlowPoint::isActive).collect(
-            Collectors.toList());
-        for (OpenApiFlowPoint endpoint : endpoints) {
-          OpenAPIRequest etapiOpenapiReq = endpoint.getEtapiOpenapiReq();
-          if (etapiOpenapiReq == null || !etapiOpenapiReq.isActive()) {
-            continue;
-          }
-          Tag newTag = new Tag().name(flow.getName()).description(flow.getDescription());
-          addTagsIncrementally(openAPI, newTag);
-
-          List<OpenAPIWebhook> webhookOpenApiList = etapiOpenapiReq.getSmfwheOpenapiWebhkList().stream()
-              .filter(OpenAPIWebhook::isActive).collect(Collectors.toList());
-          if (webhookOpenApiList.isEmpty()) {
-            continue;
-          }
-          // At this point, the list should have only one element
-          DefinedWebHook webHook = webhookOpenApiList.get(0).getWebHook();
-          if (webHook == null || !webHook.isActive()) {
-            continue;
-          }
-          addDefinition(openAPI, flow.getName(), etapiOpenapiReq, webHook);
-        }
-      });
-    } finally {
-      OBContext.restorePreviousMode();
     }
   }
 
@@ -192,18 +135,18 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
    *     the OpenAPI object to add the definition to
    * @param tag
    *     the tag associated with the endpoint
-   * @param request
-   *     the OpenAPIRequest object containing the request details
+   * @param description
+   *     the description of the request documenting the webhook
    * @param webHook
-   *     the DefinedWebHook object containing the webhook details
+   *     the definition of the webhook
    */
-  private void addDefinition(OpenAPI openAPI, String tag, OpenAPIRequest request, DefinedWebHook webHook) {
+  private void addDefinition(OpenAPI openAPI, String tag, String description, WebhookDefinition webHook) {
 
     // Form init
     Schema<?> formInitResponseSchema;
     Schema<?> formInitRequestSchema;
 
-    List<DefinedWebhookParam> webhooksParameterList = webHook.getSmfwheDefinedwebhookParamList();
+    List<WebhookDefinition.Param> webhooksParameterList = webHook.getParams();
     formInitRequestSchema = defineFormInitRequestSchema(webhooksParameterList);
     formInitResponseSchema = new Schema<>();
 
@@ -211,7 +154,7 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
 
     createEndpoint(openAPI,
         tag,
-        request.getPostDescription(),
+        description,
         formInitResponseSchema,
         formInitRequestSchema,
         method,
@@ -237,7 +180,7 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
    * @param httpMethod
    *     the HTTP method for the endpoint (GET or POST)
    * @param webHook
-   *     the DefinedWebHook object containing the webhook details
+   *     the definition of the webhook
    */
   private void createEndpoint(OpenAPI openAPI,
       String tag,
@@ -245,7 +188,7 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
       Schema<?> responseSchema,
       Schema<?> requestBodySchema,
       String httpMethod,
-      DefinedWebHook webHook) {
+      WebhookDefinition webHook) {
 
     String actionValue = webHook.getName();
     String summary = webHook.getDescription();
@@ -349,17 +292,21 @@ public class OpenAPIWebhooksEndpoint implements OpenAPIEndpoint {
    * This method creates a schema for the request body based on the provided parameters.
    *
    * @param params
-   *     the list of DefinedWebhookParam objects
+   *     the params of the webhook
    * @return the created request schema
    */
-  private Schema<?> defineFormInitRequestSchema(List<DefinedWebhookParam> params) {
+  private Schema<?> defineFormInitRequestSchema(List<WebhookDefinition.Param> params) {
     Schema<Object> schema = new Schema<>();
     schema.type(OBJECT);
     List<String> required = new ArrayList<>();
-    for (DefinedWebhookParam parameter : params) {
+    for (WebhookDefinition.Param parameter : params) {
       String name = parameter.getName();
       Schema parameterSchema = new Schema<>();
-      parameterSchema.type(STRING);
+      parameterSchema.type(parameter.getType().getSchemaType());
+      parameterSchema.format(parameter.getType().getSchemaFormat());
+      if (parameter.getType() == WebhookParamType.ARRAY) {
+        parameterSchema.items(new Schema<>());
+      }
       parameterSchema.description(parameter.getDescription());
       schema.addProperties(name, parameterSchema);
       if (parameter.isRequired()) {
@@ -0,0 +1,200 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.openapi;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.openapi.data.OpenAPIRequest;
+import com.etendoerp.openapi.data.OpenApiFlow;
+import com.etendoerp.openapi.data.OpenApiFlowPoint;
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.OpenAPIWebhook;
+import com.etendoerp.webhookevents.services.WebhookDefinition;
+import com.etendoerp.webhookevents.services.WebhookRegistry;
+
+/**
+ * Immutable index of the OpenAPI flows and the webhooks documented in each of them.
+ * <p>
+ * The index is built once by walking the flows, their points, requests and webhooks, and it is
+ * shared by every OpenAPI request until it becomes stale. It is stale when the webhook
+ * configuration version of the {@link WebhookRegistry} changes or when {@link #invalidate()} is
+ * called after a change in the flows, points, requests or their webhooks.
+ */
+public class OpenAPIWebhooksIndex {
+  private static final OpenAPIWebhooksIndex INSTANCE = new OpenAPIWebhooksIndex();
+
+  private final AtomicLong generation = new AtomicLong();
+  private volatile Snapshot snapshot;
+
+  private OpenAPIWebhooksIndex() {
+  }
+
+  public static OpenAPIWebhooksIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return The flows of the current index, loading it if it is stale
+   */
+  public List<Flow> getFlows() {
+    long version = WebhookRegistry.getInstance().getVersion();
+    long currentGeneration = generation.get();
+    Snapshot current = snapshot;
+    if (current != null && current.version == version && current.generation == currentGeneration) {
+      return current.flows;
+    }
+    current = new Snapshot(version, currentGeneration, load());
+    snapshot = current;
+    return current.flows;
+  }
+
+  /**
+   * Discards the current index. Next lookups will build it again.
+   */
+  public void invalidate() {
+    generation.incrementAndGet();
+    snapshot = null;
+  }
+
+  private static List<Flow> load() {
+    try {
+      OBContext.setAdminMode();
+      List<Flow> flows = new ArrayList<>();
+      for (OpenApiFlow flow : OBDal.getInstance().createCriteria(OpenApiFlow.class).list()) {
+        flows.add(new Flow(flow));
+      }
+      return Collections.unmodifiableList(flows);
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
+  private static class Snapshot {
+    private final long version;
+    private final long generation;
+    private final List<Flow> flows;
+
+    private Snapshot(long version, long generation, List<Flow> flows) {
+      this.version = version;
+      this.generation = generation;
+      this.flows = flows;
+    }
+  }
+
+  /**
+   * Snapshot of an {@link OpenApiFlow} with its documented webhooks
+   */
+  public static class Flow {
+    private final String name;
+    private final String description;
+    private final boolean withWebhooks;
+    private final boolean withActiveRequests;
+    private final List<Endpoint> endpoints;
+
+    private Flow(OpenApiFlow flow) {
+      this.name = flow.getName();
+      this.description = flow.getDescription();
+      boolean anyWebhook = false;
+      boolean anyActiveRequest = false;
+      List<Endpoint> endpointList = new ArrayList<>();
+      for (OpenApiFlowPoint point : flow.getETAPIOpenApiFlowPointList()) {
+        OpenAPIRequest request = point.getEtapiOpenapiReq();
+        if (request == null) {
+          continue;
+        }
+        List<OpenAPIWebhook> webhooks = request.getSmfwheOpenapiWebhkList();
+        anyWebhook = anyWebhook || !webhooks.isEmpty();
+        if (!point.isActive() || !request.isActive()) {
+          continue;
+        }
+        anyActiveRequest = true;
+        // Only one webhook is expected for each request
+        OpenAPIWebhook webhook = webhooks.stream()
+            .filter(OpenAPIWebhook::isActive)
+            .findFirst()
+            .orElse(null);
+        DefinedWebHook webHook = webhook != null ? webhook.getWebHook() : null;
+        if (webHook != null && webHook.isActive()) {
+          endpointList.add(new Endpoint(request.getPostDescription(), WebhookDefinition.of(webHook)));
+        }
+      }
+      this.withWebhooks = anyWebhook;
+      this.withActiveRequests = anyActiveRequest;
+      this.endpoints = Collections.unmodifiableList(endpointList);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    /**
+     * @return true if any request of the flow has webhooks, so the flow can be requested as a tag
+     */
+    public boolean hasWebhooks() {
+      return withWebhooks;
+    }
+
+    /**
+     * @return true if the flow has any active point with an active request
+     */
+    public boolean hasActiveRequests() {
+      return withActiveRequests;
+    }
+
+    /**
+     * @return Active webhooks documented in the flow
+     */
+    public List<Endpoint> getEndpoints() {
+      return endpoints;
+    }
+  }
+
+  /**
+   * Pair of an {@link OpenAPIRequest} and the webhook it documents
+   */
+  public static class Endpoint {
+    private final String description;
+    private final WebhookDefinition webHook;
+
+    private Endpoint(String description, WebhookDefinition webHook) {
+      this.description = description;
+      this.webHook = webHook;
+    }
+
+    /**
+     * @return Description of the request
+     */
+    public String getDescription() {
+      return description;
+    }
+
+    public WebhookDefinition getWebHook() {
+      return webHook;
+    }
+  }
+}
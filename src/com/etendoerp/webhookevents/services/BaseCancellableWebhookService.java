@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Map;
+
+/**
+ * Webhooks that can stop early when their call is cancelled must extend this class. Calls are
+ * cancelled when they exceed the execution timeout of the webhook; long running handlers should
+ * check the given cancellation between units of work and stop as soon as it is cancelled.
+ * <p>
+ * Changes made by a cancelled call are always rolled back.
+ */
+public abstract class BaseCancellableWebhookService extends BaseWebhookService {
+
+  /**
+   * Executes the webhook
+   *
+   * @param parameter
+   *     Params of the call
+   * @param responseVars
+   *     Response of the call
+   * @param cancellation
+   *     Cancellation signal of the call
+   */
+  public abstract void get(Map<String, String> parameter, Map<String, String> responseVars,
+      WebhookCancellation cancellation);
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    try (var cancellation = WebhookCancellation.start(0)) {
+      get(parameter, responseVars, cancellation);
+    }
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+/**
+ * Webhooks returning large results must extend this class. The response is written to a JSON
+ * generator backed by the response stream, so it is sent while it is produced instead of being
+ * built in memory.
+ * <p>
+ * The JSON written by {@link #stream(Map, JsonGenerator)} is the whole response body. When the
+ * webhook is not called directly, for example as an asynchronous job or as an item of a batch, the
+ * JSON is buffered and returned under the {@code result} response variable.
+ */
+public abstract class BaseStreamingWebhookService extends BaseWebhookService {
+  static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  /**
+   * Writes the response of the webhook
+   *
+   * @param parameter
+   *     Params of the call
+   * @param generator
+   *     Generator of the response body. It must be left with a complete JSON value.
+   * @throws IOException
+   *     If the response cannot be written
+   */
+  public abstract void stream(Map<String, String> parameter, JsonGenerator generator)
+      throws IOException;
+
+  @Override
+  public void get(Map<String, String> parameter, Map<String, String> responseVars) {
+    StringWriter writer = new StringWriter();
+    try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+      stream(parameter, generator);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    responseVars.put("result", writer.toString());
+  }
+}
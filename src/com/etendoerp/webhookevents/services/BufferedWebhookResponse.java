@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Response that keeps the status, headers and body in memory instead of sending them, so they can
+ * be stored and replayed by the {@link WebhookIdempotencyCache}, or sent only by the winner of a
+ * {@link WebhookResponseGuard}. Nothing written to it reaches the wrapped response.
+ */
+class BufferedWebhookResponse extends HttpServletResponseWrapper {
+  private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+  private final Map<String, String> headers = new LinkedHashMap<>();
+  private int status = SC_OK;
+  private PrintWriter writer;
+  private ServletOutputStream outputStream;
+
+  BufferedWebhookResponse(HttpServletResponse response) {
+    super(response);
+  }
+
+  @Override
+  public void setStatus(int sc) {
+    this.status = sc;
+  }
+
+  @Override
+  public int getStatus() {
+    return status;
+  }
+
+  @Override
+  public void setHeader(String name, String value) {
+    headers.put(name, value);
+  }
+
+  @Override
+  public void addHeader(String name, String value) {
+    headers.put(name, value);
+  }
+
+  @Override
+  public void setIntHeader(String name, int value) {
+    setHeader(name, String.valueOf(value));
+  }
+
+  @Override
+  public void addIntHeader(String name, int value) {
+    setHeader(name, String.valueOf(value));
+  }
+
+  @Override
+  public boolean containsHeader(String name) {
+    return headers.containsKey(name);
+  }
+
+  @Override
+  public String getHeader(String name) {
+    return headers.get(name);
+  }
+
+  @Override
+  public void setContentType(String type) {
+    setHeader("Content-Type", type);
+  }
+
+  @Override
+  public String getContentType() {
+    return headers.get("Content-Type");
+  }
+
+  @Override
+  public void setCharacterEncoding(String charset) {
+    // The body is kept as bytes and the writer always encodes in UTF-8
+  }
+
+  @Override
+  public void setContentLength(int len) {
+    // The length is known once the whole body is buffered
+  }
+
+  @Override
+  public void setContentLengthLong(long len) {
+    // The length is known once the whole body is buffered
+  }
+
+  @Override
+  public void sendError(int sc) {
+    sendError(sc, null);
+  }
+
+  @Override
+  public void sendError(int sc, String msg) {
+    resetBuffer();
+    this.status = sc;
+  }
+
+  @Override
+  public void flushBuffer() {
+    if (writer != null) {
+      writer.flush();
+    }
+  }
+
+  @Override
+  public PrintWriter getWriter() {
+    if (writer == null) {
+      writer = new PrintWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8));
+    }
+    return writer;
+  }
+
+  @Override
+  public ServletOutputStream getOutputStream() {
+    if (outputStream == null) {
+      outputStream = new ServletOutputStream() {
+        @Override
+        public boolean isReady() {
+          return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+          // Writes never block, there is nothing to notify
+        }
+
+        @Override
+        public void write(int b) {
+          body.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+          body.write(b, off, len);
+        }
+      };
+    }
+    return outputStream;
+  }
+
+  @Override
+  public boolean isCommitted() {
+    return false;
+  }
+
+  @Override
+  public void reset() {
+    resetBuffer();
+    headers.clear();
+    status = SC_OK;
+  }
+
+  @Override
+  public void resetBuffer() {
+    if (writer != null) {
+      writer.flush();
+    }
+    body.reset();
+  }
+
+  /**
+   * @return The buffered response
+   */
+  WebhookIdempotencyCache.StoredResponse toStoredResponse() {
+    if (writer != null) {
+      writer.flush();
+    }
+    return new WebhookIdempotencyCache.StoredResponse(status, headers, body.toByteArray());
+  }
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.DefinedwebhookAccess;
+import com.etendoerp.webhookevents.data.DefinedwebhookRole;
+
+/**
+ * Process wide index of the tokens and roles granted access to each webhook.
+ * <p>
+ * Token and role identifiers are interned into small integer ordinals that never change while the
+ * application is running, so they can be resolved once per caller and cached together with the
+ * {@link WebhookPrincipal}. Each webhook keeps a pair of bit sets with the granted ordinals,
+ * making the authorization of a call a single bit lookup.
+ * <p>
+ * Entries are loaded lazily per webhook and are never modified once published. When the access
+ * rows of a webhook change, {@link #invalidate(String)} drops only the entry of that webhook, which
+ * is rebuilt on its next call.
+ */
+public class WebhookAccessIndex {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookAccessIndex INSTANCE = new WebhookAccessIndex();
+
+  /**
+   * Ordinal of an identifier that cannot be granted any access
+   */
+  public static final int NONE = -1;
+
+  private final Map<String, Integer> tokenOrdinals = new ConcurrentHashMap<>();
+  private final Map<String, Integer> roleOrdinals = new ConcurrentHashMap<>();
+  private final AtomicInteger nextTokenOrdinal = new AtomicInteger();
+  private final AtomicInteger nextRoleOrdinal = new AtomicInteger();
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong version = new AtomicLong();
+
+  private WebhookAccessIndex() {
+  }
+
+  public static WebhookAccessIndex getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param tokenId
+   *     Identifier of a DefinedwebhookToken
+   * @return Ordinal interned for the token, or {@link #NONE} if there is no token
+   */
+  public int getTokenOrdinal(String tokenId) {
+    return intern(tokenOrdinals, nextTokenOrdinal, tokenId);
+  }
+
+  /**
+   * @param roleId
+   *     Identifier of a Role
+   * @return Ordinal interned for the role, or {@link #NONE} if there is no role
+   */
+  public int getRoleOrdinal(String roleId) {
+    return intern(roleOrdinals, nextRoleOrdinal, roleId);
+  }
+
+  /**
+   * Checks if a token has been granted access to a webhook.
+   *
+   * @param webhookId
+   *     Webhook identifier
+   * @param tokenOrdinal
+   *     Ordinal returned by {@link #getTokenOrdinal(String)}
+   * @return true if the token can call the webhook
+   */
+  public boolean isTokenAllowed(String webhookId, int tokenOrdinal) {
+    return tokenOrdinal != NONE && getEntry(webhookId).tokens.get(tokenOrdinal);
+  }
+
+  /**
+   * Checks if a role has been granted access to a webhook.
+   *
+   * @param webhookId
+   *     Webhook identifier
+   * @param roleOrdinal
+   *     Ordinal returned by {@link #getRoleOrdinal(String)}
+   * @return true if the role can call the webhook
+   */
+  public boolean isRoleAllowed(String webhookId, int roleOrdinal) {
+    return roleOrdinal != NONE && getEntry(webhookId).roles.get(roleOrdinal);
+  }
+
+  /**
+   * Discards the access granted to a webhook. It will be loaded again on the next call.
+   *
+   * @param webhookId
+   *     Webhook identifier
+   */
+  public void invalidate(String webhookId) {
+    version.incrementAndGet();
+    if (webhookId != null) {
+      entries.remove(webhookId);
+    }
+  }
+
+  /**
+   * Discards the access granted to every webhook. Interned ordinals are kept.
+   */
+  public void invalidate() {
+    version.incrementAndGet();
+    entries.clear();
+  }
+
+  private Entry getEntry(String webhookId) {
+    Entry entry = entries.get(webhookId);
+    if (entry != null) {
+      return entry;
+    }
+    long loadedVersion = version.get();
+    entry = load(webhookId);
+    Entry published = entries.putIfAbsent(webhookId, entry);
+    if (published != null) {
+      return published;
+    }
+    if (version.get() != loadedVersion) {
+      // The access rows changed while loading: do not keep a possibly stale entry
+      entries.remove(webhookId, entry);
+    }
+    return entry;
+  }
+
+  private Entry load(String webhookId) {
+    BitSet tokens = new BitSet();
+    BitSet roles = new BitSet();
+    try {
+      OBContext.setAdminMode();
+      var webHook = OBDal.getInstance().get(DefinedWebHook.class, webhookId);
+      if (webHook != null) {
+        for (DefinedwebhookAccess access : webHook.getSmfwheDefinedwebhookAccessList()) {
+          if (access.getSmfwheDefinedwebhookToken() != null) {
+            tokens.set(getTokenOrdinal(access.getSmfwheDefinedwebhookToken().getId()));
+          }
+        }
+        for (DefinedwebhookRole roleAccess : webHook.getSmfwheDefinedwebhookRoleList()) {
+          if (roleAccess.getRole() != null) {
+            roles.set(getRoleOrdinal(roleAccess.getRole().getId()));
+          }
+        }
+      }
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    log.debug("Loaded access of webhook {}: {} tokens, {} roles", webhookId,
+        tokens.cardinality(), roles.cardinality());
+    return new Entry(tokens, roles);
+  }
+
+  private static int intern(Map<String, Integer> ordinals, AtomicInteger next, String id) {
+    if (id == null) {
+      return NONE;
+    }
+    return ordinals.computeIfAbsent(id, k -> next.getAndIncrement());
+  }
+
+  private static class Entry {
+    private final BitSet tokens;
+    private final BitSet roles;
+
+    private Entry(BitSet tokens, BitSet roles) {
+      this.tokens = tokens;
+      this.roles = roles;
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Bounded cache of resolved {@link WebhookPrincipal}, keyed by a hash of the credentials so raw API
+ * keys and tokens are never kept in memory.
+ * <p>
+ * Entries expire after {@code webhooks.auth.cache.ttl} seconds (300 by default) or when the JWT
+ * expires, whatever happens first. Principals identified only by a JWT are kept until the JWT
+ * expires. At most {@code webhooks.auth.cache.size} entries (10000 by
+ * default) are kept. Any change in tokens, roles or access rows must call {@link #invalidate()}.
+ */
+public class WebhookAuthCache {
+  private static final WebhookAuthCache INSTANCE = new WebhookAuthCache();
+
+  private final Map<String, WebhookPrincipal> principals = new ConcurrentHashMap<>();
+  private final long ttl;
+  private final int maxSize;
+
+  private WebhookAuthCache() {
+    ttl = TimeUnit.SECONDS.toMillis(WebhookConfig.getLong("webhooks.auth.cache.ttl", 300));
+    maxSize = WebhookConfig.getInt("webhooks.auth.cache.size", 10000);
+  }
+
+  public static WebhookAuthCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Builds the cache key of the given credentials. A JWT is identified by its signature, which is
+   * unique for each header and payload, so the whole token does not need to be hashed.
+   *
+   * @param apikey
+   *     API key received in the request
+   * @param token
+   *     JWT received in the request
+   * @return Hash of the credentials or null if the request has no credentials
+   */
+  public static String key(String apikey, String token) {
+    if (StringUtils.isEmpty(apikey) && StringUtils.isEmpty(token)) {
+      return null;
+    }
+    String signature = token != null ? token.substring(token.lastIndexOf('.') + 1) : "";
+    return DigestUtils.sha256Hex(StringUtils.defaultString(apikey) + "\n" + signature);
+  }
+
+  /**
+   * @param key
+   *     Key built with {@link #key(String, String)}
+   * @return The cached principal or null if it is not cached or it has expired
+   */
+  public WebhookPrincipal get(String key) {
+    if (key == null) {
+      return null;
+    }
+    WebhookPrincipal principal = principals.get(key);
+    if (principal != null && principal.isExpired(System.currentTimeMillis())) {
+      principals.remove(key, principal);
+      return null;
+    }
+    return principal;
+  }
+
+  /**
+   * Caches a principal. Principals that do not identify any caller are not cached, so random
+   * credentials cannot fill the cache.
+   *
+   * @param key
+   *     Key built with {@link #key(String, String)}
+   * @param principal
+   *     Principal to cache
+   */
+  public void put(String key, WebhookPrincipal principal) {
+    if (key == null || principal == null || principal.isEmpty() || maxSize <= 0) {
+      return;
+    }
+    if (principals.size() >= maxSize) {
+      evict();
+    }
+    principals.put(key, principal);
+  }
+
+  /**
+   * @return Expiration time for an entry cached now
+   */
+  long expiration() {
+    return System.currentTimeMillis() + ttl;
+  }
+
+  /**
+   * Discards every cached principal.
+   */
+  public void invalidate() {
+    principals.clear();
+  }
+
+  private void evict() {
+    long now = System.currentTimeMillis();
+    principals.values().removeIf(p -> p.isExpired(now));
+    // Still full: drop an arbitrary tenth of the entries, they will be resolved again if needed
+    Iterator<String> keys = principals.keySet().iterator();
+    int toRemove = principals.size() - maxSize + Math.max(1, maxSize / 10);
+    while (toRemove > 0 && keys.hasNext()) {
+      keys.next();
+      keys.remove();
+      toRemove--;
+    }
+  }
+}
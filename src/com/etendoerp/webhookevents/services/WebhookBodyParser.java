@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.util.Set;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+/**
+ * Streaming reader of webhook request bodies.
+ * <p>
+ * The body is parsed token by token and only the members declared as webhook params are kept, as
+ * the same string that {@link JSONObject#getString(String)} would return. Any other member is
+ * skipped without being materialized, and the body is rejected as soon as it exceeds the allowed
+ * size.
+ */
+public class WebhookBodyParser {
+  private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+  private WebhookBodyParser() {
+  }
+
+  /**
+   * Parses a JSON object keeping only the given members.
+   *
+   * @param reader
+   *     Reader of the body
+   * @param names
+   *     Names of the members to keep
+   * @param maxSize
+   *     Maximum number of characters that can be read, or a negative value for no limit
+   * @return Object with the requested members found in the body
+   * @throws BodyTooLargeException
+   *     If the body is bigger than the allowed size
+   * @throws IOException
+   *     If the body cannot be read or it is not a JSON object
+   * @throws JSONException
+   *     Triggered in case of cannot generate a valid JSON
+   */
+  public static JSONObject parse(Reader reader, Set<String> names, long maxSize)
+      throws IOException, JSONException {
+    JSONObject body = new JSONObject();
+    try (JsonParser parser = JSON_FACTORY.createParser(limit(reader, maxSize))) {
+      if (parser.nextToken() != JsonToken.START_OBJECT) {
+        throw new IOException("The body is not a JSON object");
+      }
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        String name = parser.getCurrentName();
+        JsonToken token = parser.nextToken();
+        if (names.contains(name)) {
+          body.put(name, readValue(parser, token));
+        } else {
+          parser.skipChildren();
+        }
+      }
+    }
+    return body;
+  }
+
+  /**
+   * Wraps a reader so it fails once more than the given number of characters are read
+   *
+   * @param reader
+   *     Reader to wrap
+   * @param maxSize
+   *     Maximum number of characters, or a negative value for no limit
+   * @return The limited reader
+   */
+  public static Reader limit(Reader reader, long maxSize) {
+    return maxSize < 0 ? reader : new LimitedReader(reader, maxSize);
+  }
+
+  private static String readValue(JsonParser parser, JsonToken token) throws IOException {
+    if (token == JsonToken.START_OBJECT || token == JsonToken.START_ARRAY) {
+      StringWriter writer = new StringWriter();
+      try (JsonGenerator generator = JSON_FACTORY.createGenerator(writer)) {
+        generator.copyCurrentStructure(parser);
+      }
+      return writer.toString();
+    }
+    return token == JsonToken.VALUE_NULL ? JSONObject.NULL.toString() : parser.getText();
+  }
+
+  /**
+   * Thrown when the body is bigger than the allowed size
+   */
+  public static class BodyTooLargeException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    BodyTooLargeException(long maxSize) {
+      super("Body exceeds " + maxSize + " characters");
+    }
+  }
+
+  private static class LimitedReader extends FilterReader {
+    private final long maxSize;
+    private long count;
+
+    private LimitedReader(Reader in, long maxSize) {
+      super(in);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      int c = super.read();
+      if (c != -1) {
+        count(1);
+      }
+      return c;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) throws IOException {
+      int read = super.read(buffer, offset, length);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      long skipped = super.skip(n);
+      count(skipped);
+      return skipped;
+    }
+
+    private void count(long read) throws BodyTooLargeException {
+      count += read;
+      if (count > maxSize) {
+        throw new BodyTooLargeException(maxSize);
+      }
+    }
+  }
+}
@@ -0,0 +1,207 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.hibernate.Session;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.exceptions.WebhookTimeoutException;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Cancellation signal of a webhook call bounded by the execution timeout of the webhook.
+ * <p>
+ * The call runs in the thread that received it, so it keeps its context and DAL session. When the
+ * timeout is exceeded a watchdog thread flags the call as cancelled, interrupts the thread and
+ * cancels the query being executed in its DAL session, which releases handlers blocked on a
+ * database lock. Handlers extending {@link BaseCancellableWebhookService} can also check the signal
+ * to stop on their own.
+ * <p>
+ * A handler blocked in I/O that ignores interrupts keeps its thread until it returns. The caller of
+ * a single webhook does not wait for it: the call is guarded by the {@link WebhookExecutor}, which
+ * answers with the timeout response shortly after the deadline and rolls back the changes of the
+ * handler. Streamed responses and batch items are answered once the handler returns.
+ */
+public class WebhookCancellation implements AutoCloseable {
+  private static final Logger log = LogManager.getLogger();
+  private static final ScheduledThreadPoolExecutor WATCHDOG = createWatchdog();
+
+  private enum State {
+    RUNNING, CANCELLED, DONE
+  }
+
+  private final Thread thread;
+  private final Session session;
+  private final long timeout;
+  private ScheduledFuture<?> future;
+  private State state = State.RUNNING;
+
+  private WebhookCancellation(long timeout) {
+    this.thread = Thread.currentThread();
+    this.timeout = timeout;
+    this.session = timeout > 0 ? OBDal.getInstance().getSession() : null;
+  }
+
+  /**
+   * Starts measuring a call executed by the current thread. The cancellation must be closed once
+   * the call is finished.
+   *
+   * @param timeout
+   *     Milliseconds the call can run, 0 for no limit
+   * @return The cancellation signal of the call
+   */
+  static WebhookCancellation start(long timeout) {
+    WebhookCancellation cancellation = new WebhookCancellation(timeout);
+    if (timeout > 0) {
+      cancellation.future = WATCHDOG.schedule(cancellation::cancel, timeout,
+          TimeUnit.MILLISECONDS);
+    }
+    return cancellation;
+  }
+
+  /**
+   * Runs a task in the watchdog thread shared by the timeouts of the webhook calls.
+   *
+   * @param task
+   *     Task to run, it must be short
+   * @param delay
+   *     Milliseconds to wait before running it
+   * @return The scheduled task, to cancel it if it is no longer needed
+   */
+  static ScheduledFuture<?> schedule(Runnable task, long delay) {
+    return WATCHDOG.schedule(task, delay, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Executes the handler of a webhook within its execution timeout. Changes of a cancelled call are
+   * rolled back.
+   *
+   * @param webHook
+   *     Called webhook
+   * @param action
+   *     Handler of the webhook
+   * @param requestParams
+   *     Params of the call
+   * @param responseVars
+   *     Response of the call
+   * @throws WebhookTimeoutException
+   *     If the call exceeded the execution timeout
+   */
+  static void invoke(WebhookDefinition webHook, BaseWebhookService action,
+      Map<String, String> requestParams, Map<String, String> responseVars)
+      throws WebhookTimeoutException {
+    try (var cancellation = start(webHook.getExecutionTimeout())) {
+      try {
+        if (action instanceof BaseCancellableWebhookService) {
+          ((BaseCancellableWebhookService) action).get(requestParams, responseVars, cancellation);
+        } else {
+          action.get(requestParams, responseVars);
+        }
+      } catch (RuntimeException e) {
+        cancellation.checkTimeout(webHook, e);
+        throw e;
+      }
+      cancellation.checkTimeout(webHook, null);
+    }
+  }
+
+  /**
+   * @return true if the call has exceeded its execution timeout
+   */
+  public synchronized boolean isCancelled() {
+    return state == State.CANCELLED;
+  }
+
+  /**
+   * Stops a cancelled call.
+   *
+   * @throws CancellationException
+   *     If the call has exceeded its execution timeout
+   */
+  public void throwIfCancelled() {
+    if (isCancelled()) {
+      throw new CancellationException();
+    }
+  }
+
+  /**
+   * Rolls back the changes of a cancelled call and reports its timeout.
+   *
+   * @param webHook
+   *     Called webhook
+   * @param cause
+   *     Failure of the call, if any
+   * @throws WebhookTimeoutException
+   *     If the call has exceeded its execution timeout
+   */
+  void checkTimeout(WebhookDefinition webHook, Throwable cause) throws WebhookTimeoutException {
+    if (!isCancelled()) {
+      return;
+    }
+    OBDal.getInstance().rollbackAndClose();
+    throw new WebhookTimeoutException(
+        WebhookMessages.format("smfwhe_executionTimeout", webHook.getName(), timeout), cause);
+  }
+
+  private synchronized void cancel() {
+    if (state != State.RUNNING) {
+      return;
+    }
+    state = State.CANCELLED;
+    thread.interrupt();
+    if (session != null) {
+      try {
+        session.cancelQuery();
+      } catch (RuntimeException e) {
+        log.debug("Cannot cancel the query of a cancelled webhook call", e);
+      }
+    }
+  }
+
+  /**
+   * Stops the watchdog of the call and clears the interruption it could have caused.
+   */
+  @Override
+  public synchronized void close() {
+    if (future != null) {
+      future.cancel(false);
+    }
+    if (state == State.CANCELLED && Thread.currentThread() == thread) {
+      Thread.interrupted();
+    }
+    state = State.DONE;
+  }
+
+  private static ScheduledThreadPoolExecutor createWatchdog() {
+    ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+      Thread thread = new Thread(runnable, "webhook-timeout");
+      thread.setDaemon(true);
+      return thread;
+    });
+    executor.setRemoveOnCancelPolicy(true);
+    return executor;
+  }
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.DefinedWebhookParam;
+import com.etendoerp.webhookevents.exceptions.WebhookParamException;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+
+/**
+ * Immutable snapshot of a {@link DefinedWebHook} and the configuration needed to serve a call,
+ * detached from any DAL session so it can be shared between requests.
+ */
+public class WebhookDefinition {
+  private final String id;
+  private final String name;
+  private final String description;
+  private final String javaClass;
+  private final boolean allowGroupAccess;
+  private final boolean async;
+  private final boolean readOnly;
+  private final int maxConcurrent;
+  private final int maxRate;
+  private final long queueTimeout;
+  private final long executionTimeout;
+  private final List<Param> params;
+  private final Set<String> paramNames;
+
+  private WebhookDefinition(DefinedWebHook webHook) {
+    this.id = webHook.getId();
+    this.name = webHook.getName();
+    this.description = webHook.getDescription();
+    this.javaClass = webHook.getJavaClass();
+    this.allowGroupAccess = BooleanUtils.isTrue(webHook.isAllowGroupAccess());
+    this.async = BooleanUtils.isTrue(webHook.isAsync());
+    this.readOnly = BooleanUtils.isTrue(webHook.isReadOnly());
+    this.maxConcurrent = toInt(webHook.getMaxConcurrent());
+    this.maxRate = toInt(webHook.getMaxRate());
+    this.queueTimeout = webHook.getQueueTimeout() != null ? webHook.getQueueTimeout() : 0;
+    this.executionTimeout = webHook.getExecutionTimeout() != null
+        ? Math.max(0, webHook.getExecutionTimeout()) : 0;
+    List<Param> paramList = new ArrayList<>();
+    Set<String> names = new HashSet<>();
+    for (DefinedWebhookParam param : webHook.getSmfwheDefinedwebhookParamList()) {
+      paramList.add(new Param(param));
+      names.add(param.getName());
+    }
+    this.params = Collections.unmodifiableList(paramList);
+    this.paramNames = Collections.unmodifiableSet(names);
+  }
+
+  /**
+   * Builds the snapshot of the given webhook. Params are resolved eagerly, so this
+   * must be called inside an active DAL session.
+   *
+   * @param webHook
+   *     Webhook to take the snapshot from
+   * @return Detached definition of the webhook
+   */
+  public static WebhookDefinition of(DefinedWebHook webHook) {
+    return new WebhookDefinition(webHook);
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public String getJavaClass() {
+    return javaClass;
+  }
+
+  public boolean isAllowGroupAccess() {
+    return allowGroupAccess;
+  }
+
+  /**
+   * @return true if calls must be executed in background by the {@link WebhookJobManager}
+   */
+  public boolean isAsync() {
+    return async;
+  }
+
+  /**
+   * @return true if the handler only reads data, so its calls can skip flushing the DAL session
+   */
+  public boolean isReadOnly() {
+    return readOnly;
+  }
+
+  /**
+   * @return Maximum number of concurrent calls, 0 if there is no limit
+   */
+  public int getMaxConcurrent() {
+    return maxConcurrent;
+  }
+
+  /**
+   * @return Maximum number of calls per second, 0 if there is no limit
+   */
+  public int getMaxRate() {
+    return maxRate;
+  }
+
+  /**
+   * @return Milliseconds a call waits for a free slot, 0 to reject it right away
+   */
+  public long getQueueTimeout() {
+    return queueTimeout;
+  }
+
+  /**
+   * @return Milliseconds a call can run before it is cancelled, 0 if there is no limit
+   */
+  public long getExecutionTimeout() {
+    return executionTimeout;
+  }
+
+  static int toInt(Long value) {
+    return value != null ? (int) Math.min(value, Integer.MAX_VALUE) : 0;
+  }
+
+  public List<Param> getParams() {
+    return params;
+  }
+
+  /**
+   * @return Names of the declared params, the only members read from the request body
+   */
+  public Set<String> getParamNames() {
+    return paramNames;
+  }
+
+  /**
+   * Validates the received params and decodes each of them to the type of the param.
+   *
+   * @param body
+   *     Received params
+   * @return The declared params that were received, with their typed values
+   * @throws WebhookParamException
+   *     If a required param is missing or a value is not valid for the type of its param
+   */
+  public WebhookParams decode(JSONObject body) throws JSONException, WebhookParamException {
+    WebhookParams requestParams = new WebhookParams();
+    for (Param param : params) {
+      String val = body.has(param.name) ? body.getString(param.name) : null;
+      if (param.required && StringUtils.isEmpty(val)) {
+        throw new WebhookParamException(
+            WebhookMessages.format("smfwhe_missingParameter", param.name));
+      }
+      if (val == null) {
+        continue;
+      }
+      if (val.isEmpty() || param.type == WebhookParamType.STRING) {
+        requestParams.put(param.name, val);
+        continue;
+      }
+      try {
+        requestParams.put(param.name, val, param.type.decode(val));
+      } catch (JSONException | RuntimeException e) {
+        throw new WebhookParamException(
+            WebhookMessages.format("smfwhe_invalidParamType", param.name, param.type.getValue()));
+      }
+    }
+    return requestParams;
+  }
+
+  /**
+   * Immutable snapshot of a {@link DefinedWebhookParam}
+   */
+  public static class Param {
+    private final String name;
+    private final boolean required;
+    private final String description;
+    private final WebhookParamType type;
+
+    private Param(DefinedWebhookParam param) {
+      this.name = param.getName();
+      this.required = BooleanUtils.isTrue(param.isRequired());
+      this.description = param.getDescription();
+      this.type = WebhookParamType.of(param.getParamType());
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isRequired() {
+      return required;
+    }
+
+    public String getDescription() {
+      return description;
+    }
+
+    public WebhookParamType getType() {
+      return type;
+    }
+  }
+}
@@ -0,0 +1,227 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Cache of the generated OpenAPI documents, keyed by the requested webhooks and host.
+ * <p>
+ * Each document is tagged with the {@link WebhookRegistry} configuration version it was generated
+ * from, so any change in the webhooks or their parameters makes it stale. Changes also
+ * {@link #invalidate() discard} the stale documents, so they do not take memory until the cache is
+ * full. At most {@code webhooks.docs.cache.size} documents (50 by default) are kept.
+ */
+public class WebhookDocsCache {
+  private static final WebhookDocsCache INSTANCE = new WebhookDocsCache();
+  private static final String GZIP = "gzip";
+  private static final String X_GZIP = "x-gzip";
+
+  private final Map<String, Document> documents = new ConcurrentHashMap<>();
+  private final int maxSize;
+
+  private WebhookDocsCache() {
+    maxSize = WebhookConfig.getInt("webhooks.docs.cache.size", 50);
+  }
+
+  public static WebhookDocsCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Builds the cache key of a document. The order and repetitions of the requested webhooks do not
+   * change the generated document, so they are not part of the key.
+   *
+   * @param hooks
+   *     Names of the requested webhooks, empty to document all of them
+   * @param host
+   *     Host the document is generated for
+   * @return The cache key
+   */
+  public static String key(Collection<String> hooks, String host) {
+    return String.join(",", new TreeSet<>(hooks)) + "\n" + StringUtils.defaultString(host);
+  }
+
+  /**
+   * Checks whether a client accepts the gzip variant. Codings with a quality value of 0 are refused,
+   * so {@code gzip;q=0} gets the plain document. The wildcard only applies when gzip is not listed.
+   *
+   * @param acceptEncoding
+   *     Value of the Accept-Encoding header
+   * @return true if the gzip variant can be sent
+   */
+  public static boolean acceptsGzip(String acceptEncoding) {
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return false;
+    }
+    Boolean wildcard = null;
+    for (String entry : acceptEncoding.split(",")) {
+      String[] parts = entry.split(";");
+      String coding = parts[0].trim();
+      boolean accepted = getQuality(parts) > 0;
+      if (GZIP.equalsIgnoreCase(coding) || X_GZIP.equalsIgnoreCase(coding)) {
+        return accepted;
+      }
+      if ("*".equals(coding)) {
+        wildcard = accepted;
+      }
+    }
+    return Boolean.TRUE.equals(wildcard);
+  }
+
+  private static double getQuality(String[] parts) {
+    for (int i = 1; i < parts.length; i++) {
+      String param = parts[i].trim();
+      if (StringUtils.startsWithIgnoreCase(param, "q=")) {
+        try {
+          return Double.parseDouble(param.substring(2).trim());
+        } catch (NumberFormatException e) {
+          return 0;
+        }
+      }
+    }
+    return 1;
+  }
+
+  /**
+   * @param key
+   *     Key built with {@link #key(Collection, String)}
+   * @param version
+   *     Current configuration version
+   * @return The cached document or null if it is not cached or it belongs to another version
+   */
+  public Document get(String key, long version) {
+    Document document = documents.get(key);
+    return document != null && document.version == version ? document : null;
+  }
+
+  /**
+   * Caches a document.
+   *
+   * @param key
+   *     Key built with {@link #key(Collection, String)}
+   * @param document
+   *     Document to cache
+   */
+  public void put(String key, Document document) {
+    if (maxSize <= 0) {
+      return;
+    }
+    if (documents.size() >= maxSize) {
+      documents.values().removeIf(d -> d.version != document.version);
+      if (documents.size() >= maxSize) {
+        documents.clear();
+      }
+    }
+    documents.put(key, document);
+  }
+
+  /**
+   * Discards every cached document.
+   */
+  public void invalidate() {
+    documents.clear();
+  }
+
+  /**
+   * Generated OpenAPI document with its precompressed variant and entity tags
+   */
+  public static class Document {
+    private static final String GZIP_SUFFIX = "-gzip\"";
+
+    private final long version;
+    private final String json;
+    private final byte[] gzip;
+    private final String etag;
+
+    /**
+     * @param version
+     *     Configuration version the document was generated from
+     * @param json
+     *     OpenAPI document
+     */
+    public Document(long version, String json) {
+      this.version = version;
+      this.json = json;
+      byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+      this.gzip = compress(bytes);
+      this.etag = "\"" + DigestUtils.sha256Hex(bytes) + "\"";
+    }
+
+    public String getJson() {
+      return json;
+    }
+
+    public byte[] getGzip() {
+      return gzip;
+    }
+
+    /**
+     * @param compressed
+     *     true for the gzip variant
+     * @return Entity tag of the variant
+     */
+    public String getETag(boolean compressed) {
+      return compressed ? StringUtils.removeEnd(etag, "\"") + GZIP_SUFFIX : etag;
+    }
+
+    /**
+     * Checks the If-None-Match header of a request. Both variants of the document are considered
+     * equivalent, since they only differ in their content encoding.
+     *
+     * @param ifNoneMatch
+     *     Value of the If-None-Match header
+     * @return true if the client already has this version of the document
+     */
+    public boolean matches(String ifNoneMatch) {
+      if (StringUtils.isBlank(ifNoneMatch)) {
+        return false;
+      }
+      for (String tag : ifNoneMatch.split(",")) {
+        String value = StringUtils.removeStart(tag.trim(), "W/");
+        if ("*".equals(value) || etag.equals(value) || getETag(true).equals(value)) {
+          return true;
+        }
+      }
+      return false;
+    }
+
+    private static byte[] compress(byte[] bytes) {
+      var compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      try (var gzipStream = new GZIPOutputStream(compressed)) {
+        gzipStream.write(bytes);
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+      return compressed.toByteArray();
+    }
+  }
+}
@@ -0,0 +1,321 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+import org.openbravo.database.SessionInfo;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Executes webhook calls on virtual threads, so slow handlers blocked on I/O do not hold a thread
+ * of the servlet container.
+ * <p>
+ * It is enabled with the {@code webhooks.virtualThreads} property and needs a JVM with virtual
+ * threads (Java 21 or later); otherwise calls run in the container thread as usual. Calls are
+ * only dispatched when the request supports asynchronous processing.
+ * <p>
+ * The OBContext and the SessionInfo of the caller are copied to the virtual thread, which opens its
+ * own DAL session: it is committed when the call finishes, as the request filter does for calls
+ * executed in the container thread, and rolled back if the call fails unexpectedly.
+ * <p>
+ * Dispatched requests are answered with a 504 if the call is still running when its asynchronous
+ * timeout expires: the execution timeout of the webhook plus a margin of five seconds, or
+ * {@code webhooks.virtualThreads.asyncTimeout} milliseconds (300000 by default) for webhooks
+ * without execution timeout. The call writes into a {@link WebhookResponseGuard}, so a handler
+ * that ignores the interruption of its thread keeps running without touching the response already
+ * sent, and its changes are rolled back instead of committed.
+ * <p>
+ * Calls with an execution timeout that are not dispatched are guarded the same way by
+ * {@link #execute(HttpServletResponse, long, Task, TimeoutHandler, IntConsumer)}: they run in the
+ * container thread and the watchdog of {@link WebhookCancellation} answers at the deadline.
+ */
+public class WebhookExecutor {
+  private static final Logger log = LogManager.getLogger();
+  private static final long TIMEOUT_MARGIN = TimeUnit.SECONDS.toMillis(5);
+  private static final WebhookExecutor INSTANCE = new WebhookExecutor(
+      WebhookConfig.getBoolean("webhooks.virtualThreads", false) ? createVirtualExecutor() : null,
+      WebhookConfig.getLong("webhooks.virtualThreads.asyncTimeout", 300000));
+
+  private final Executor executor;
+  private final long asyncTimeout;
+  private final long timeoutMargin;
+
+  /**
+   * Call executed by the dispatcher
+   */
+  @FunctionalInterface
+  public interface Task {
+    /**
+     * @param response
+     *     Response the call must write into
+     */
+    void run(HttpServletResponse response) throws Exception;
+  }
+
+  /**
+   * Answers a call that exceeded its asynchronous timeout
+   */
+  @FunctionalInterface
+  public interface TimeoutHandler {
+    void onTimeout(HttpServletResponse response, long timeout);
+  }
+
+  WebhookExecutor(Executor executor, long asyncTimeout) {
+    this(executor, asyncTimeout, TIMEOUT_MARGIN);
+  }
+
+  WebhookExecutor(Executor executor, long asyncTimeout, long timeoutMargin) {
+    this.executor = executor;
+    this.asyncTimeout = asyncTimeout;
+    this.timeoutMargin = timeoutMargin;
+  }
+
+  public static WebhookExecutor getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param request
+   *     Http request object
+   * @return true if the call of the request can be executed on a virtual thread
+   */
+  public boolean isDispatchable(HttpServletRequest request) {
+    return executor != null && request.isAsyncSupported();
+  }
+
+  /**
+   * Puts the request in asynchronous mode and executes the task on a virtual thread with the
+   * context of the current thread. The task writes the whole response, errors included, into a
+   * buffer that is sent once it finishes. If the task is still running when the asynchronous
+   * timeout expires, the request is answered by the timeout handler instead, and the changes of the
+   * task are rolled back once it returns.
+   *
+   * @param request
+   *     Http request object, it must be dispatchable
+   * @param executionTimeout
+   *     Execution timeout of the called webhook in milliseconds, 0 if it has none
+   * @param task
+   *     Call to execute
+   * @param timeoutHandler
+   *     Writes the response of a call that exceeded the timeout
+   * @param onComplete
+   *     Receives the status sent to the client, once
+   */
+  public void dispatch(HttpServletRequest request, long executionTimeout, Task task,
+      TimeoutHandler timeoutHandler, IntConsumer onComplete) {
+    OBContext context = OBContext.getOBContext();
+    String sessionId = SessionInfo.getSessionId();
+    String userId = SessionInfo.getUserId();
+    String processType = SessionInfo.getProcessType();
+    String processId = SessionInfo.getProcessId();
+    AsyncContext asyncContext = request.startAsync();
+    var guard = new WebhookResponseGuard((HttpServletResponse) asyncContext.getResponse());
+    AtomicReference<Thread> worker = new AtomicReference<>();
+    long timeout = getAsyncTimeout(executionTimeout);
+    if (timeout > 0) {
+      asyncContext.setTimeout(timeout);
+    }
+    asyncContext.addListener(
+        new TimeoutListener(guard, worker, timeout, timeoutHandler, onComplete));
+    executor.execute(() -> {
+      boolean committed = false;
+      worker.set(Thread.currentThread());
+      HttpServletResponse buffer = guard.getBuffer();
+      try {
+        OBContext.setOBContext(context);
+        SessionInfo.setSessionId(sessionId);
+        SessionInfo.setUserId(userId);
+        SessionInfo.setProcessType(processType);
+        SessionInfo.setProcessId(processId);
+        OBContext.setAdminMode();
+        try {
+          task.run(buffer);
+          if (guard.claim()) {
+            OBDal.getInstance().commitAndClose();
+            committed = true;
+          }
+        } finally {
+          OBContext.restorePreviousMode();
+        }
+      } catch (Exception e) {
+        log.error("Error executing webhook call in a virtual thread", e);
+        buffer.reset();
+        buffer.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      } finally {
+        worker.set(null);
+        if (!committed) {
+          OBDal.getInstance().rollbackAndClose();
+        }
+        OBContext.setOBContext((OBContext) null);
+        SessionInfo.init();
+        if (guard.claim()) {
+          complete(asyncContext, guard, onComplete);
+        }
+      }
+    });
+  }
+
+  /**
+   * Executes the task in the current thread. The task writes the whole response, errors included,
+   * into a buffer that is sent once it finishes. If the task is still running when the timeout of
+   * the call expires, the watchdog thread answers the client with the timeout handler, so the
+   * client gets it even if the handler ignores its cancellation, and the changes of the task are
+   * rolled back once it returns.
+   *
+   * @param response
+   *     Http response object
+   * @param executionTimeout
+   *     Execution timeout of the called webhook in milliseconds, it must be positive
+   * @param task
+   *     Call to execute
+   * @param timeoutHandler
+   *     Writes the response of a call that exceeded the timeout
+   * @param onComplete
+   *     Receives the status sent to the client, once
+   * @throws Exception
+   *     If the task fails or the response cannot be written
+   */
+  public void execute(HttpServletResponse response, long executionTimeout, Task task,
+      TimeoutHandler timeoutHandler, IntConsumer onComplete) throws Exception {
+    var guard = new WebhookResponseGuard(response);
+    long timeout = executionTimeout + timeoutMargin;
+    ScheduledFuture<?> watchdog = WebhookCancellation.schedule(() -> {
+      if (guard.timeout(timeoutHandler, timeout)) {
+        onComplete.accept(guard.getStatus());
+      }
+    }, timeout);
+    try {
+      task.run(guard.getBuffer());
+    } finally {
+      watchdog.cancel(false);
+      if (guard.claim()) {
+        guard.send();
+        onComplete.accept(guard.getStatus());
+      } else {
+        OBDal.getInstance().rollbackAndClose();
+      }
+    }
+  }
+
+  private static void complete(AsyncContext asyncContext, WebhookResponseGuard guard,
+      IntConsumer onComplete) {
+    try {
+      guard.send();
+      onComplete.accept(guard.getStatus());
+    } catch (IOException | RuntimeException e) {
+      log.error("Error sending the response of a webhook call", e);
+    } finally {
+      asyncContext.complete();
+    }
+  }
+
+  /**
+   * @param executionTimeout
+   *     Execution timeout of the called webhook in milliseconds, 0 if it has none
+   * @return Milliseconds a dispatched call can run, 0 to keep the default of the container
+   */
+  long getAsyncTimeout(long executionTimeout) {
+    return executionTimeout > 0 ? executionTimeout + timeoutMargin : Math.max(0, asyncTimeout);
+  }
+
+  private static Executor createVirtualExecutor() {
+    try {
+      // Looked up by reflection so the module still runs on JVMs without virtual threads
+      return (Executor) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+    } catch (ReflectiveOperationException e) {
+      log.warn("Virtual threads are not supported by this JVM, webhooks run in container threads");
+      return null;
+    }
+  }
+
+  /**
+   * Answers the calls that exceed the asynchronous timeout, unless they already finished
+   */
+  private static class TimeoutListener implements AsyncListener {
+    private final WebhookResponseGuard guard;
+    private final AtomicReference<Thread> worker;
+    private final long timeout;
+    private final TimeoutHandler timeoutHandler;
+    private final IntConsumer onComplete;
+
+    TimeoutListener(WebhookResponseGuard guard, AtomicReference<Thread> worker, long timeout,
+        TimeoutHandler timeoutHandler, IntConsumer onComplete) {
+      this.guard = guard;
+      this.worker = worker;
+      this.timeout = timeout;
+      this.timeoutHandler = timeoutHandler;
+      this.onComplete = onComplete;
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      if (!guard.timeout(timeoutHandler, timeout)) {
+        // The call is sending its response and completes the request, which must not be answered
+        // by the container in the meantime
+        try {
+          guard.awaitSent(TIMEOUT_MARGIN);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        return;
+      }
+      Thread thread = worker.get();
+      if (thread != null) {
+        thread.interrupt();
+      }
+      try {
+        onComplete.accept(guard.getStatus());
+      } finally {
+        event.getAsyncContext().complete();
+      }
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      // Nothing to release
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      // Errors are written by the task
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+      // Not restarted
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Singleton;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.util.OBClassLoader;
+import org.openbravo.base.weld.WeldUtils;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Cache of the {@link BaseWebhookService} handlers keyed by Java class name.
+ * <p>
+ * Classes are loaded only once. Application scoped and singleton handlers are also instantiated
+ * only once, while any other handler is still requested to Weld on every call so its scope is
+ * honored. Classes that cannot be loaded are remembered for {@code webhooks.handler.negative.ttl}
+ * seconds (30 by default), so a misconfigured webhook does not hit the class loader on every call.
+ */
+public class WebhookHandlerCache {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookHandlerCache INSTANCE = new WebhookHandlerCache();
+
+  private final Map<String, Resolution> resolutions = new ConcurrentHashMap<>();
+  private final long negativeTtl;
+
+  private WebhookHandlerCache() {
+    negativeTtl = TimeUnit.SECONDS.toMillis(
+        WebhookConfig.getLong("webhooks.handler.negative.ttl", 30));
+  }
+
+  public static WebhookHandlerCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the handler of the given class.
+   *
+   * @param javaClass
+   *     Java class name of the handler
+   * @return Handler instance
+   * @throws ClassNotFoundException
+   *     If the class cannot be loaded, now or in a recent lookup
+   */
+  public BaseWebhookService get(String javaClass) throws ClassNotFoundException {
+    return resolve(javaClass).get();
+  }
+
+  /**
+   * Loads the class of a handler without instantiating non application scoped handlers.
+   *
+   * @param javaClass
+   *     Java class name of the handler
+   * @throws ClassNotFoundException
+   *     If the class cannot be loaded
+   */
+  public void warmUp(String javaClass) throws ClassNotFoundException {
+    resolve(javaClass);
+  }
+
+  /**
+   * Discards every resolved handler.
+   */
+  public void invalidate() {
+    resolutions.clear();
+  }
+
+  private Supplier<BaseWebhookService> resolve(String javaClass) throws ClassNotFoundException {
+    Resolution resolution = resolutions.get(javaClass);
+    if (resolution == null || resolution.isExpired(System.currentTimeMillis())) {
+      resolution = load(javaClass);
+      resolutions.put(javaClass, resolution);
+    }
+    if (resolution.error != null) {
+      throw new ClassNotFoundException(resolution.error);
+    }
+    return resolution.supplier;
+  }
+
+  private Resolution load(String javaClass) {
+    try {
+      @SuppressWarnings("unchecked") final var handlerClass = (Class<BaseWebhookService>) OBClassLoader
+          .getInstance()
+          .loadClass(javaClass);
+      if (handlerClass.isAnnotationPresent(ApplicationScoped.class)
+          || handlerClass.isAnnotationPresent(Singleton.class)) {
+        BaseWebhookService handler = WeldUtils.getInstanceFromStaticBeanManager(handlerClass);
+        return new Resolution(() -> handler, null, Long.MAX_VALUE);
+      }
+      return new Resolution(() -> WeldUtils.getInstanceFromStaticBeanManager(handlerClass), null,
+          Long.MAX_VALUE);
+    } catch (ClassNotFoundException | NoClassDefFoundError e) {
+      log.warn("Cannot load webhook handler {}", javaClass);
+      return new Resolution(null, e.getMessage(), System.currentTimeMillis() + negativeTtl);
+    }
+  }
+
+  private static class Resolution {
+    private final Supplier<BaseWebhookService> supplier;
+    private final String error;
+    private final long expiresAt;
+
+    private Resolution(Supplier<BaseWebhookService> supplier, String error, long expiresAt) {
+      this.supplier = supplier;
+      this.error = error;
+      this.expiresAt = expiresAt;
+    }
+
+    private boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
+}
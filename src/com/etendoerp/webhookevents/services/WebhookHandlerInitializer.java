@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import javax.enterprise.context.ApplicationScoped;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.client.kernel.ApplicationInitializer;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Resolves the definition and the handler class of every active webhook on startup, so the first
+ * calls after a deploy do not pay for it. It can be disabled with
+ * {@code webhooks.warmup.enabled=false}.
+ */
+@ApplicationScoped
+public class WebhookHandlerInitializer implements ApplicationInitializer {
+  private static final Logger log = LogManager.getLogger();
+
+  @Override
+  public void initialize() {
+    if (!WebhookConfig.getBoolean("webhooks.warmup.enabled", true)) {
+      return;
+    }
+    int resolved = 0;
+    try {
+      OBContext.setAdminMode();
+      var webhooks = OBDal.getInstance()
+          .createCriteria(DefinedWebHook.class)
+          .setFilterOnReadableClients(false)
+          .setFilterOnReadableOrganization(false)
+          .list();
+      for (DefinedWebHook webhook : webhooks) {
+        if (warmUp(webhook)) {
+          resolved++;
+        }
+      }
+    } catch (Exception e) {
+      log.warn("Webhooks warm up could not be completed", e);
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+    log.info("Webhooks warm up resolved {} handlers", resolved);
+  }
+
+  private static boolean warmUp(DefinedWebHook webhook) {
+    WebhookRegistry.getInstance().get(webhook.getName());
+    if (StringUtils.isEmpty(webhook.getJavaClass())) {
+      return false;
+    }
+    try {
+      WebhookHandlerCache.getInstance().warmUp(webhook.getJavaClass());
+      return true;
+    } catch (ClassNotFoundException e) {
+      log.warn("Webhook {} uses the unknown handler {}", webhook.getName(),
+          webhook.getJavaClass());
+      return false;
+    }
+  }
+}
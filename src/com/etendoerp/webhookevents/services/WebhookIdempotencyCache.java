@@ -0,0 +1,366 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+import org.hibernate.criterion.Restrictions;
+import org.openbravo.base.provider.OBProvider;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.data.WebhookIdempotency;
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Stores the responses of webhook calls made with an {@code Idempotency-Key} header, so retries of
+ * the same call are answered with the first response instead of executing the handler again.
+ * <p>
+ * Responses are kept in memory for {@code webhooks.idempotency.ttl} seconds (one day by default),
+ * up to {@code webhooks.idempotency.cache.size} entries (10000 by default). Duplicates received
+ * while the first call is still running wait up to {@code webhooks.idempotency.wait} seconds (30
+ * by default) for its response. Only final responses are stored: successful ones and the client
+ * errors that a retry would get again (400, 404, 410, 413 and 422). Any other response, such as a
+ * 429 of the rate limiter, a 409 or a server error, is handed to the waiting duplicates but is not
+ * stored, so later retries execute the handler again.
+ * <p>
+ * The transaction of the call is committed before its response is stored, so a duplicate never
+ * gets the response of a call whose changes were rolled back. When
+ * {@code webhooks.idempotency.store.db} is enabled, successful responses are also saved in the
+ * SMFWHE_IDEMPOTENCY table in that transaction. This keeps the keys across restarts and nodes, and
+ * a duplicate running at the same time in another node fails on the unique key, rolling back its
+ * changes.
+ */
+public class WebhookIdempotencyCache {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookIdempotencyCache INSTANCE = new WebhookIdempotencyCache();
+  private static final long PURGE_INTERVAL = TimeUnit.HOURS.toMillis(1);
+  private static final int SC_UNPROCESSABLE_ENTITY = 422;
+  private static final Set<Integer> FINAL_CLIENT_ERRORS = Set.of(
+      HttpServletResponse.SC_BAD_REQUEST, HttpServletResponse.SC_NOT_FOUND,
+      HttpServletResponse.SC_GONE, HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE,
+      SC_UNPROCESSABLE_ENTITY);
+
+  private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+  private final AtomicLong lastPurge = new AtomicLong();
+  private final long ttl;
+  private final long wait;
+  private final int maxSize;
+  private final boolean dbStore;
+
+  private WebhookIdempotencyCache() {
+    ttl = TimeUnit.SECONDS.toMillis(WebhookConfig.getLong("webhooks.idempotency.ttl", 86400));
+    wait = TimeUnit.SECONDS.toMillis(WebhookConfig.getLong("webhooks.idempotency.wait", 30));
+    maxSize = WebhookConfig.getInt("webhooks.idempotency.cache.size", 10000);
+    dbStore = WebhookConfig.getBoolean("webhooks.idempotency.store.db", false);
+  }
+
+  public static WebhookIdempotencyCache getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Builds the key of a call. Keys are scoped to the caller and the webhook, so different callers
+   * can use the same idempotency keys.
+   *
+   * @param principal
+   *     Caller of the webhook
+   * @param webHook
+   *     Called webhook
+   * @param idempotencyKey
+   *     Value of the Idempotency-Key header
+   * @return Hash identifying the call
+   */
+  public static String key(WebhookPrincipal principal, WebhookDefinition webHook,
+      String idempotencyKey) {
+    String caller = principal.getTokenId() != null ? "T" + principal.getTokenId()
+        : "U" + principal.getUserId();
+    return DigestUtils.sha256Hex(caller + "\n" + webHook.getId() + "\n" + idempotencyKey);
+  }
+
+  /**
+   * Registers a call. Only the first call with a key owns it and must execute the handler and
+   * {@link #complete(Call, StoredResponse)} it. The rest get the response of the owner.
+   *
+   * @param key
+   *     Key built with {@link #key(WebhookPrincipal, WebhookDefinition, String)}
+   * @param webhookId
+   *     Called webhook
+   * @return The registered call
+   */
+  public Call begin(String key, String webhookId) {
+    long now = System.currentTimeMillis();
+    while (true) {
+      Entry created = new Entry();
+      Entry existing = entries.putIfAbsent(key, created);
+      if (existing == null) {
+        StoredResponse stored = dbStore ? load(key) : null;
+        if (stored != null) {
+          created.completed(stored, now + ttl);
+          return new Call(key, webhookId, created, false);
+        }
+        if (entries.size() > maxSize) {
+          evict(now);
+        }
+        return new Call(key, webhookId, created, true);
+      }
+      if (!existing.isExpired(now)) {
+        return new Call(key, webhookId, existing, false);
+      }
+      entries.remove(key, existing);
+    }
+  }
+
+  /**
+   * Publishes the response of an owned call to the duplicates waiting for it. Final responses are
+   * stored once the transaction of the call is committed; if the commit fails the key is released
+   * and the exception is thrown.
+   *
+   * @param call
+   *     Call returned by {@link #begin(String, String)}
+   * @param response
+   *     Response of the call, or null if the call did not finish properly
+   */
+  public void complete(Call call, StoredResponse response) {
+    if (!call.isOwner()) {
+      return;
+    }
+    if (response == null || !isFinal(response.getStatus())) {
+      release(call, response);
+      return;
+    }
+    try {
+      if (dbStore && response.getStatus() < HttpServletResponse.SC_MULTIPLE_CHOICES) {
+        store(call, response);
+      }
+      OBDal.getInstance().commitAndClose();
+    } catch (RuntimeException e) {
+      release(call, null);
+      throw e;
+    }
+    call.entry.completed(response, System.currentTimeMillis() + ttl);
+  }
+
+  /**
+   * @param status
+   *     Status code of a response
+   * @return true if a retry of the call would get the same response
+   */
+  static boolean isFinal(int status) {
+    return (status >= HttpServletResponse.SC_OK && status < HttpServletResponse.SC_MULTIPLE_CHOICES)
+        || FINAL_CLIENT_ERRORS.contains(status);
+  }
+
+  /**
+   * Hands the response to the waiting duplicates without storing it, so the next call with the key
+   * executes the handler again
+   */
+  private void release(Call call, StoredResponse response) {
+    entries.remove(call.key, call.entry);
+    call.entry.future.complete(response);
+  }
+
+  /**
+   * Discards every response kept in memory. Stored responses are not removed.
+   */
+  public void invalidate() {
+    entries.clear();
+  }
+
+  private StoredResponse load(String key) {
+    try {
+      OBCriteria<WebhookIdempotency> criteria = OBDal.getInstance()
+          .createCriteria(WebhookIdempotency.class);
+      criteria.add(Restrictions.eq(WebhookIdempotency.PROPERTY_KEYHASH, key));
+      criteria.add(Restrictions.gt(WebhookIdempotency.PROPERTY_EXPIRES, new Date()));
+      criteria.setFilterOnReadableClients(false);
+      criteria.setFilterOnReadableOrganization(false);
+      criteria.setMaxResults(1);
+      WebhookIdempotency stored = criteria.uniqueResult();
+      if (stored == null) {
+        return null;
+      }
+      Map<String, String> headers = new LinkedHashMap<>();
+      if (stored.getHeaders() != null) {
+        JSONObject json = new JSONObject(stored.getHeaders());
+        for (Iterator<?> it = json.keys(); it.hasNext(); ) {
+          String name = (String) it.next();
+          headers.put(name, json.getString(name));
+        }
+      }
+      String body = stored.getResponse() != null ? stored.getResponse() : "";
+      return new StoredResponse(stored.getStatusCode().intValue(), headers,
+          body.getBytes(StandardCharsets.UTF_8));
+    } catch (JSONException e) {
+      log.warn("Invalid stored response for idempotency key {}", key, e);
+      return null;
+    }
+  }
+
+  private void store(Call call, StoredResponse response) {
+    WebhookIdempotency stored = OBProvider.getInstance().get(WebhookIdempotency.class);
+    stored.setSmfwheDefinedwebhook(
+        OBDal.getInstance().getProxy(DefinedWebHook.class, call.webhookId));
+    stored.setKeyHash(call.key);
+    stored.setStatusCode((long) response.getStatus());
+    stored.setHeaders(new JSONObject(response.getHeaders()).toString());
+    stored.setResponse(new String(response.getBody(), StandardCharsets.UTF_8));
+    stored.setExpires(new Date(System.currentTimeMillis() + ttl));
+    OBDal.getInstance().save(stored);
+
+    long now = System.currentTimeMillis();
+    long last = lastPurge.get();
+    if (now - last > PURGE_INTERVAL && lastPurge.compareAndSet(last, now)) {
+      int purged = OBDal.getInstance().getSession()
+          .createQuery("delete from " + WebhookIdempotency.ENTITY_NAME + " where "
+              + WebhookIdempotency.PROPERTY_EXPIRES + " < :now")
+          .setParameter("now", new Date(now))
+          .executeUpdate();
+      log.debug("Purged {} expired idempotency keys", purged);
+    }
+  }
+
+  private void evict(long now) {
+    entries.values().removeIf(e -> e.isExpired(now));
+    // Still full: drop an arbitrary tenth of the completed entries
+    Iterator<Entry> values = entries.values().iterator();
+    int toRemove = entries.size() - maxSize + Math.max(1, maxSize / 10);
+    while (toRemove > 0 && values.hasNext()) {
+      if (values.next().future.isDone()) {
+        values.remove();
+        toRemove--;
+      }
+    }
+  }
+
+  /**
+   * Response of a call, either running or completed
+   */
+  private static class Entry {
+    private final CompletableFuture<StoredResponse> future = new CompletableFuture<>();
+    private volatile long expiresAt = Long.MAX_VALUE;
+
+    void completed(StoredResponse response, long expiresAt) {
+      this.expiresAt = expiresAt;
+      future.complete(response);
+    }
+
+    boolean isExpired(long now) {
+      return now >= expiresAt;
+    }
+  }
+
+  /**
+   * A call registered with {@link #begin(String, String)}
+   */
+  public class Call {
+    private final String key;
+    private final String webhookId;
+    private final Entry entry;
+    private final boolean owner;
+
+    private Call(String key, String webhookId, Entry entry, boolean owner) {
+      this.key = key;
+      this.webhookId = webhookId;
+      this.entry = entry;
+      this.owner = owner;
+    }
+
+    /**
+     * @return true if this call must execute the handler
+     */
+    public boolean isOwner() {
+      return owner;
+    }
+
+    /**
+     * Waits for the response of the call that owns the key
+     *
+     * @return The response, or null if the owner failed or did not finish in time
+     */
+    public StoredResponse await() throws InterruptedException {
+      try {
+        return entry.future.get(wait, TimeUnit.MILLISECONDS);
+      } catch (ExecutionException | TimeoutException e) {
+        return null;
+      }
+    }
+  }
+
+  /**
+   * Status, headers and body of a response
+   */
+  public static class StoredResponse {
+    private final int status;
+    private final Map<String, String> headers;
+    private final byte[] body;
+
+    StoredResponse(int status, Map<String, String> headers, byte[] body) {
+      this.status = status;
+      this.headers = Collections.unmodifiableMap(new LinkedHashMap<>(headers));
+      this.body = body;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public byte[] getBody() {
+      return body.clone();
+    }
+
+    /**
+     * Sends the response to the client
+     *
+     * @param response
+     *     Http response object
+     */
+    void writeTo(HttpServletResponse response) throws IOException {
+      response.setStatus(status);
+      for (var header : headers.entrySet()) {
+        response.setHeader(header.getKey(), header.getValue());
+      }
+      response.getOutputStream().write(body);
+    }
+  }
+}
@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Execution of an asynchronous webhook call. Status changes are published through volatile fields,
+ * so a job can be polled from any thread while it runs.
+ */
+public class WebhookJob {
+
+  /**
+   * Lifecycle of a job
+   */
+  public enum Status {
+    QUEUED, RUNNING, DONE, ERROR
+  }
+
+  private final String id;
+  private final String webhookName;
+  private final String ownerId;
+  private final long created;
+  private volatile Status status = Status.QUEUED;
+  private volatile Map<String, String> responseVars = Collections.emptyMap();
+  private volatile String error;
+  private volatile long finished;
+
+  WebhookJob(String id, String webhookName, String ownerId) {
+    this.id = id;
+    this.webhookName = webhookName;
+    this.ownerId = ownerId;
+    this.created = System.currentTimeMillis();
+  }
+
+  public String getId() {
+    return id;
+  }
+
+  public String getWebhookName() {
+    return webhookName;
+  }
+
+  /**
+   * @return Identifier of the user that called the webhook. Only this user can poll the job.
+   */
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  public Status getStatus() {
+    return status;
+  }
+
+  public Map<String, String> getResponseVars() {
+    return responseVars;
+  }
+
+  public String getError() {
+    return error;
+  }
+
+  /**
+   * @return Time the job finished, or 0 if it is still queued or running
+   */
+  public long getFinished() {
+    return finished;
+  }
+
+  void running() {
+    status = Status.RUNNING;
+  }
+
+  void done(Map<String, String> result) {
+    responseVars = Collections.unmodifiableMap(new HashMap<>(result));
+    finished = System.currentTimeMillis();
+    status = Status.DONE;
+  }
+
+  void failed(String message) {
+    error = message;
+    finished = System.currentTimeMillis();
+    status = Status.ERROR;
+  }
+
+  /**
+   * Builds the JSON representation returned when the job is polled
+   *
+   * @return JSON with the job status and, once finished, its result or error
+   * @throws JSONException
+   *     Triggered in case of cannot generate a valid JSON
+   */
+  public JSONObject toJSON() throws JSONException {
+    JSONObject json = new JSONObject();
+    json.put("id", id);
+    json.put("webhook", webhookName);
+    json.put("status", status.name());
+    json.put("created", created);
+    if (status == Status.DONE) {
+      json.put("finished", finished);
+      json.put("result", new JSONObject(responseVars));
+    } else if (status == Status.ERROR) {
+      json.put("finished", finished);
+      json.put("message", error);
+    }
+    return json;
+  }
+}
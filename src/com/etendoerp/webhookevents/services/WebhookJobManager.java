@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Runs asynchronous webhooks on a bounded pool and keeps track of their jobs.
+ * <p>
+ * The pool uses {@code webhooks.async.threads} threads (4 by default) and queues up to
+ * {@code webhooks.async.queue} calls (100 by default); further calls are rejected. Finished jobs
+ * can be polled for {@code webhooks.async.retention} seconds (3600 by default), expired jobs are
+ * purged whenever a job is submitted or polled. A job keeps the concurrency permit of its call
+ * until it finishes.
+ * <p>
+ * Each job runs in its own DAL session with the context of the caller. The transaction is
+ * committed when the handler finishes and rolled back if it fails or exceeds the execution timeout
+ * of the webhook.
+ */
+public class WebhookJobManager {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookJobManager INSTANCE = new WebhookJobManager();
+
+  private final Map<String, WebhookJob> jobs = new ConcurrentHashMap<>();
+  private final ThreadPoolExecutor executor;
+  private final long retention;
+
+  private WebhookJobManager() {
+    int threads = Math.max(1, WebhookConfig.getInt("webhooks.async.threads", 4));
+    int queue = Math.max(1, WebhookConfig.getInt("webhooks.async.queue", 100));
+    retention = TimeUnit.SECONDS.toMillis(WebhookConfig.getLong("webhooks.async.retention", 3600));
+    executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+        new ArrayBlockingQueue<>(queue), new JobThreadFactory());
+    executor.allowCoreThreadTimeOut(true);
+  }
+
+  public static WebhookJobManager getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Queues the execution of a webhook handler with the context of the current caller.
+   *
+   * @param webHook
+   *     Called webhook
+   * @param handler
+   *     Handler of the webhook
+   * @param requestParams
+   *     Parameters of the call
+   * @param permit
+   *     Permit of the call, it is transferred to the job and released when the job finishes or
+   *     is rejected
+   * @return The queued job
+   * @throws RejectedExecutionException
+   *     If there are too many jobs waiting to be executed
+   */
+  public WebhookJob submit(WebhookDefinition webHook, BaseWebhookService handler,
+      Map<String, String> requestParams, WebhookLimiter.Permit permit) {
+    purge();
+    OBContext context = OBContext.getOBContext();
+    String userId = context.getUser().getId();
+    String roleId = context.getRole().getId();
+    String clientId = context.getCurrentClient().getId();
+    String orgId = context.getCurrentOrganization().getId();
+
+    WebhookJob job = new WebhookJob(UUID.randomUUID().toString(), webHook.getName(), userId);
+    jobs.put(job.getId(), job);
+    var jobPermit = permit.transfer();
+    try {
+      executor.execute(() -> {
+        try (jobPermit) {
+          run(job, webHook, handler, requestParams, userId, roleId, clientId, orgId);
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      jobs.remove(job.getId());
+      jobPermit.close();
+      throw e;
+    }
+    return job;
+  }
+
+  /**
+   * @param id
+   *     Job identifier
+   * @return The job or null if it does not exist or it has already been purged
+   */
+  public WebhookJob get(String id) {
+    purge();
+    return id == null ? null : jobs.get(id);
+  }
+
+  private static void run(WebhookJob job, WebhookDefinition webHook, BaseWebhookService handler,
+      Map<String, String> requestParams, String userId, String roleId, String clientId,
+      String orgId) {
+    job.running();
+    boolean committed = false;
+    try {
+      OBContext.setOBContext(userId, roleId, clientId, orgId);
+      OBContext.setAdminMode();
+      try {
+        Map<String, String> responseVars = new HashMap<>();
+        try (var session = WebhookReadOnlySession.open(webHook)) {
+          WebhookCancellation.invoke(webHook, handler, requestParams, responseVars);
+        }
+        OBDal.getInstance().commitAndClose();
+        committed = true;
+        job.done(responseVars);
+      } finally {
+        OBContext.restorePreviousMode();
+      }
+    } catch (Exception e) {
+      log.error("Error running webhook {} in background", job.getWebhookName(), e);
+      job.failed(e.getMessage());
+    } finally {
+      if (!committed) {
+        OBDal.getInstance().rollbackAndClose();
+      }
+      OBContext.setOBContext((OBContext) null);
+    }
+  }
+
+  private void purge() {
+    long limit = System.currentTimeMillis() - retention;
+    jobs.values().removeIf(job -> job.getFinished() != 0 && job.getFinished() < limit);
+  }
+
+  private static class JobThreadFactory implements ThreadFactory {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "webhook-job-" + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,327 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Enforces the concurrency and rate limits of the webhooks and the tokens used to call them.
+ * <p>
+ * Concurrent calls take a permit of a semaphore. When the webhook limit is reached the call is
+ * parked up to the queue timeout of the webhook until a running call releases its permit, or is
+ * rejected right away if there is no timeout. Token limits never wait. When the limits of a
+ * webhook or a token change, the permits of its semaphore are adjusted, so the calls running at
+ * that moment still count against the new limit.
+ * <p>
+ * Rates are enforced with a token bucket holding up to one second of calls. The bucket is stored as
+ * the theoretical arrival time of the next call, so taking a token is a single compare and set.
+ * A call rejected by any of its limits gives back the tokens it took, so rejected callers do not
+ * consume the rate of the rest.
+ */
+public class WebhookLimiter {
+  private static final WebhookLimiter INSTANCE = new WebhookLimiter();
+  private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+  private final Map<String, Limit> webhookLimits = new ConcurrentHashMap<>();
+  private final Map<String, Limit> tokenLimits = new ConcurrentHashMap<>();
+
+  private WebhookLimiter() {
+  }
+
+  public static WebhookLimiter getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Takes a slot to execute a call. The returned permit must be closed once the call is finished,
+   * or {@link Permit#transfer() transferred} to the thread that finishes it.
+   *
+   * @param webHook
+   *     Called webhook
+   * @param principal
+   *     Caller of the webhook
+   * @return The permit of the call, check {@link Permit#isGranted()} before executing it
+   */
+  public Permit acquire(WebhookDefinition webHook, WebhookPrincipal principal) {
+    Limit webhookLimit = getLimit(webhookLimits, webHook.getId(), webHook.getMaxConcurrent(),
+        webHook.getMaxRate());
+    Limit tokenLimit = principal != null && principal.getTokenId() != null
+        ? getLimit(tokenLimits, principal.getTokenId(), principal.getTokenMaxConcurrent(),
+        principal.getTokenMaxRate())
+        : null;
+    if (webhookLimit == null && tokenLimit == null) {
+      return Permit.UNLIMITED;
+    }
+    long now = System.nanoTime();
+    long wait = webhookLimit != null ? webhookLimit.takeRate(now) : 0;
+    if (wait > 0) {
+      return Permit.rejected(wait);
+    }
+    wait = tokenLimit != null ? tokenLimit.takeRate(now) : 0;
+    if (wait > 0) {
+      giveBackRate(webhookLimit, null);
+      return Permit.rejected(wait);
+    }
+    if (tokenLimit != null && !tokenLimit.enter()) {
+      giveBackRate(webhookLimit, tokenLimit);
+      return Permit.rejected(SECOND);
+    }
+    if (webhookLimit != null && !webhookLimit.enter(webHook.getQueueTimeout())) {
+      if (tokenLimit != null) {
+        tokenLimit.exit();
+      }
+      giveBackRate(webhookLimit, tokenLimit);
+      return Permit.rejected(SECOND);
+    }
+    return new Permit(webhookLimit, tokenLimit, 0);
+  }
+
+  private static void giveBackRate(Limit webhookLimit, Limit tokenLimit) {
+    if (webhookLimit != null) {
+      webhookLimit.giveBackRate();
+    }
+    if (tokenLimit != null) {
+      tokenLimit.giveBackRate();
+    }
+  }
+
+  /**
+   * Returns the limit of the given key, updating it when its configuration changed. Limits are
+   * never replaced, so the permits of the running calls are released in the same limit.
+   */
+  private static Limit getLimit(Map<String, Limit> limits, String key, int maxConcurrent,
+      int maxRate) {
+    Limit limit = limits.get(key);
+    if (limit == null) {
+      if (maxConcurrent <= 0 && maxRate <= 0) {
+        return null;
+      }
+      limit = limits.computeIfAbsent(key, k -> new Limit(maxConcurrent, maxRate));
+    }
+    if (!limit.matches(maxConcurrent, maxRate)) {
+      limit.configure(maxConcurrent, maxRate);
+    }
+    return limit;
+  }
+
+  /**
+   * Discards the counters of the webhooks and tokens without running calls, so deleted webhooks and
+   * tokens do not keep them. Counters with running calls are kept, those calls still count against
+   * the limits, which are reconfigured on the next call.
+   */
+  public void invalidate() {
+    webhookLimits.values().removeIf(Limit::isIdle);
+    tokenLimits.values().removeIf(Limit::isIdle);
+  }
+
+  /**
+   * Concurrency semaphore and token bucket of a webhook or a token
+   */
+  private static class Limit {
+    // Permits of a limit without concurrency limit, so it can be changed like any other
+    private static final int UNLIMITED = Integer.MAX_VALUE / 2;
+
+    private final Slots slots = new Slots(UNLIMITED);
+    private final AtomicLong nextArrival = new AtomicLong(Long.MIN_VALUE);
+    private volatile int maxConcurrent;
+    private volatile int maxRate;
+    private volatile long interval;
+    private volatile long burst;
+
+    Limit(int maxConcurrent, int maxRate) {
+      configure(maxConcurrent, maxRate);
+    }
+
+    boolean matches(int maxConcurrent, int maxRate) {
+      return this.maxConcurrent == maxConcurrent && this.maxRate == maxRate;
+    }
+
+    /**
+     * Applies a new configuration. The semaphore gets the difference of permits, so it can be
+     * left with negative permits until enough running calls finish.
+     */
+    synchronized void configure(int maxConcurrent, int maxRate) {
+      int permits = toPermits(maxConcurrent) - toPermits(this.maxConcurrent);
+      if (permits > 0) {
+        slots.release(permits);
+      } else if (permits < 0) {
+        slots.reducePermits(-permits);
+      }
+      this.maxConcurrent = maxConcurrent;
+      this.maxRate = maxRate;
+      this.interval = maxRate > 0 ? Math.max(1, SECOND / maxRate) : 0;
+      this.burst = SECOND - interval;
+    }
+
+    /**
+     * @return true if no call holds a slot of the limit
+     */
+    synchronized boolean isIdle() {
+      return slots.availablePermits() >= toPermits(maxConcurrent);
+    }
+
+    private static int toPermits(int maxConcurrent) {
+      return maxConcurrent > 0 ? Math.min(maxConcurrent, UNLIMITED) : UNLIMITED;
+    }
+
+    /**
+     * Takes a token from the bucket
+     *
+     * @return 0 if the token was taken, otherwise the nanoseconds until a token is available
+     */
+    long takeRate(long now) {
+      long step = interval;
+      if (step <= 0) {
+        return 0;
+      }
+      long allowance = burst;
+      while (true) {
+        long current = nextArrival.get();
+        long arrival = current == Long.MIN_VALUE || current - now < 0 ? now : current;
+        long wait = arrival - now - allowance;
+        if (wait > 0) {
+          return wait;
+        }
+        if (nextArrival.compareAndSet(current, arrival + step)) {
+          return 0;
+        }
+      }
+    }
+
+    /**
+     * Returns the token taken by a call that was rejected afterwards
+     */
+    void giveBackRate() {
+      long step = interval;
+      if (step > 0) {
+        nextArrival.addAndGet(-step);
+      }
+    }
+
+    boolean enter() {
+      return slots.tryAcquire();
+    }
+
+    /**
+     * Takes a concurrency slot, waiting for a free one up to the given milliseconds
+     */
+    boolean enter(long queueTimeout) {
+      if (slots.tryAcquire()) {
+        return true;
+      }
+      if (queueTimeout <= 0) {
+        return false;
+      }
+      try {
+        return slots.tryAcquire(queueTimeout, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return false;
+      }
+    }
+
+    void exit() {
+      slots.release();
+    }
+  }
+
+  /**
+   * Semaphore whose permits can be reduced when a limit is lowered
+   */
+  private static class Slots extends Semaphore {
+    Slots(int permits) {
+      super(permits);
+    }
+
+    @Override
+    protected void reducePermits(int reduction) {
+      super.reducePermits(reduction);
+    }
+  }
+
+  /**
+   * Slot taken to execute a call
+   */
+  public static class Permit implements AutoCloseable {
+    static final Permit UNLIMITED = new Permit(null, null, 0);
+
+    private final Limit webhookLimit;
+    private final Limit tokenLimit;
+    private final long retryAfter;
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Permit(Limit webhookLimit, Limit tokenLimit, long retryAfter) {
+      this.webhookLimit = webhookLimit;
+      this.tokenLimit = tokenLimit;
+      this.retryAfter = retryAfter;
+    }
+
+    private static Permit rejected(long wait) {
+      return new Permit(null, null, Math.max(1, (wait + SECOND - 1) / SECOND));
+    }
+
+    /**
+     * @return true if the call can be executed
+     */
+    public boolean isGranted() {
+      return retryAfter == 0;
+    }
+
+    /**
+     * @return Seconds the caller should wait before retrying a rejected call
+     */
+    public long getRetryAfter() {
+      return retryAfter;
+    }
+
+    /**
+     * Hands the slots of the permit over to a new permit, for calls that finish in another thread.
+     * Closing this permit afterwards does nothing, the slots are released when the returned permit
+     * is closed.
+     *
+     * @return The permit that now holds the slots
+     */
+    public Permit transfer() {
+      if (!released.compareAndSet(false, true)) {
+        return new Permit(null, null, retryAfter);
+      }
+      return new Permit(webhookLimit, tokenLimit, retryAfter);
+    }
+
+    /**
+     * Releases the slots of the permit. Only the first call has effect.
+     */
+    @Override
+    public void close() {
+      if (!released.compareAndSet(false, true)) {
+        return;
+      }
+      if (webhookLimit != null) {
+        webhookLimit.exit();
+      }
+      if (tokenLimit != null) {
+        tokenLimit.exit();
+      }
+    }
+  }
+}
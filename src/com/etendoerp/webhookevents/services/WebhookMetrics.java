@@ -0,0 +1,344 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Lock-free metrics of the webhook calls, kept per webhook and token: number of calls, calls by
+ * HTTP status and latency histograms of each phase of the call. They are exposed in the
+ * Prometheus text format by {@link #write(Writer)}.
+ * <p>
+ * Calls whose webhook does not exist are counted under the {@code _unknown} webhook, and once
+ * {@code webhooks.metrics.maxSeries} series (1000 by default) exist, new tokens are counted under
+ * the {@code _other} token, so the number of series stays bounded.
+ */
+public class WebhookMetrics {
+  static final String UNKNOWN_WEBHOOK = "_unknown";
+  static final String OTHER_TOKEN = "_other";
+  private static final double[] QUANTILES = { 0.5, 0.9, 0.99, 0.999 };
+  private static final WebhookMetrics INSTANCE = new WebhookMetrics();
+
+  private final Map<SeriesKey, Series> series = new ConcurrentHashMap<>();
+  private final int maxSeries;
+
+  /**
+   * Phases of a call
+   */
+  public enum Phase {
+    /** Authentication, authorization and concurrency and rate limits */
+    AUTH("auth"),
+    /** Reading and decoding the params */
+    PARAMS("params"),
+    /** Execution of the handler */
+    HANDLER("handler"),
+    /** Writing the response */
+    SERIALIZATION("serialization");
+
+    private final String label;
+
+    Phase(String label) {
+      this.label = label;
+    }
+  }
+
+  private WebhookMetrics() {
+    maxSeries = WebhookConfig.getInt("webhooks.metrics.maxSeries", 1000);
+  }
+
+  public static WebhookMetrics getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return A timer started now, to measure the phases of a call
+   */
+  public Timer start() {
+    return new Timer();
+  }
+
+  /**
+   * Records a finished call.
+   *
+   * @param webhook
+   *     Name of the called webhook, or null if it does not exist
+   * @param tokenId
+   *     Token used by the caller, or null if the caller used a JWT
+   * @param status
+   *     HTTP status of the response
+   * @param timer
+   *     Timer started when the call was received
+   */
+  public void record(String webhook, String tokenId, int status, Timer timer) {
+    long total = System.nanoTime() - timer.started;
+    var key = new SeriesKey(webhook != null ? webhook : UNKNOWN_WEBHOOK,
+        StringUtils.defaultString(tokenId));
+    Series current = series.get(key);
+    if (current == null) {
+      if (series.size() >= maxSeries) {
+        key = new SeriesKey(key.webhook, OTHER_TOKEN);
+      }
+      current = series.computeIfAbsent(key, k -> new Series());
+    }
+    current.count.increment();
+    current.statuses.computeIfAbsent(status, s -> new LongAdder()).increment();
+    for (Phase phase : Phase.values()) {
+      long duration = timer.durations[phase.ordinal()];
+      if (duration > 0) {
+        current.phases[phase.ordinal()].record(duration);
+      }
+    }
+    current.total.record(total);
+  }
+
+  /**
+   * Writes every metric in the Prometheus text exposition format.
+   *
+   * @param writer
+   *     Writer of the response
+   * @throws IOException
+   *     If the metrics cannot be written
+   */
+  public void write(Writer writer) throws IOException {
+    Map<SeriesKey, Series> sorted = new TreeMap<>(series);
+    writer.write("# HELP webhook_requests_total Webhook calls\n");
+    writer.write("# TYPE webhook_requests_total counter\n");
+    for (var entry : sorted.entrySet()) {
+      writer.write("webhook_requests_total" + labels(entry.getKey(), null) + " "
+          + entry.getValue().count.sum() + "\n");
+    }
+    writer.write("# HELP webhook_responses_total Webhook calls by HTTP status\n");
+    writer.write("# TYPE webhook_responses_total counter\n");
+    for (var entry : sorted.entrySet()) {
+      for (var status : new TreeMap<>(entry.getValue().statuses).entrySet()) {
+        writer.write("webhook_responses_total"
+            + labels(entry.getKey(), "status=\"" + status.getKey() + "\"") + " "
+            + status.getValue().sum() + "\n");
+      }
+    }
+    writer.write("# HELP webhook_latency_seconds Latency of the webhook calls by phase\n");
+    writer.write("# TYPE webhook_latency_seconds summary\n");
+    for (var entry : sorted.entrySet()) {
+      Series current = entry.getValue();
+      for (Phase phase : Phase.values()) {
+        writeSummary(writer, entry.getKey(), phase.label, current.phases[phase.ordinal()]);
+      }
+      writeSummary(writer, entry.getKey(), "total", current.total);
+    }
+  }
+
+  /**
+   * Discards every metric.
+   */
+  public void reset() {
+    series.clear();
+  }
+
+  private static void writeSummary(Writer writer, SeriesKey key, String phase,
+      Histogram histogram) throws IOException {
+    long count = histogram.getCount();
+    if (count == 0) {
+      return;
+    }
+    String phaseLabel = "phase=\"" + phase + "\"";
+    for (double quantile : QUANTILES) {
+      writer.write("webhook_latency_seconds"
+          + labels(key, phaseLabel + ",quantile=\"" + quantile + "\"") + " "
+          + seconds(histogram.getQuantile(quantile)) + "\n");
+    }
+    writer.write("webhook_latency_seconds_sum" + labels(key, phaseLabel) + " "
+        + seconds(histogram.getSum()) + "\n");
+    writer.write("webhook_latency_seconds_count" + labels(key, phaseLabel) + " " + count + "\n");
+  }
+
+  private static String labels(SeriesKey key, String extra) {
+    return "{webhook=\"" + escape(key.webhook) + "\",token=\"" + escape(key.token) + "\""
+        + (extra != null ? "," + extra : "") + "}";
+  }
+
+  private static String escape(String value) {
+    return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+  }
+
+  private static double seconds(long micros) {
+    return micros / (double) TimeUnit.SECONDS.toMicros(1);
+  }
+
+  /**
+   * Measures the phases of a call. A timer belongs to a single call, so it is not thread safe.
+   */
+  public static class Timer {
+    private final long started = System.nanoTime();
+    private final long[] durations = new long[Phase.values().length];
+    private long last = started;
+
+    /**
+     * Adds the time elapsed since the previous mark to the given phase.
+     *
+     * @param phase
+     *     Phase that has just finished
+     */
+    public void mark(Phase phase) {
+      long now = System.nanoTime();
+      durations[phase.ordinal()] += now - last;
+      last = now;
+    }
+  }
+
+  /**
+   * Lock-free log-linear histogram of durations with a precision of 12.5%. Values are kept in
+   * microseconds: the first 16 buckets hold exact values and every power of two above is split in
+   * 8 buckets.
+   */
+  static class Histogram {
+    private static final int LINEAR = 16;
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MIN_EXPONENT = 4;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+
+    /**
+     * @param nanos
+     *     Duration to record, in nanoseconds
+     */
+    void record(long nanos) {
+      long micros = TimeUnit.NANOSECONDS.toMicros(Math.max(0, nanos));
+      counts.incrementAndGet(index(micros));
+      count.increment();
+      sum.add(micros);
+    }
+
+    long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * @return Sum of the recorded durations, in microseconds
+     */
+    long getSum() {
+      return sum.sum();
+    }
+
+    /**
+     * @param quantile
+     *     Quantile between 0 and 1
+     * @return Upper bound of the bucket holding the quantile, in microseconds
+     */
+    long getQuantile(double quantile) {
+      long[] snapshot = new long[BUCKETS];
+      long total = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        snapshot[i] = counts.get(i);
+        total += snapshot[i];
+      }
+      long rank = Math.max(1, (long) Math.ceil(quantile * total));
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+        if (seen >= rank) {
+          return upperBound(i);
+        }
+      }
+      return upperBound(BUCKETS - 1);
+    }
+
+    static int index(long micros) {
+      if (micros < LINEAR) {
+        return (int) micros;
+      }
+      int exponent = Math.min(63 - Long.numberOfLeadingZeros(micros), MAX_EXPONENT);
+      int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      if (exponent == MAX_EXPONENT && micros >= 1L << (MAX_EXPONENT + 1)) {
+        subBucket = SUB_BUCKETS - 1;
+      }
+      return LINEAR + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+    }
+
+    static long upperBound(int index) {
+      if (index < LINEAR) {
+        return index;
+      }
+      int exponent = MIN_EXPONENT + (index - LINEAR) / SUB_BUCKETS;
+      int subBucket = (index - LINEAR) % SUB_BUCKETS;
+      return (1L << exponent) + ((subBucket + 1L) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+  }
+
+  private static class Series {
+    private final LongAdder count = new LongAdder();
+    private final Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+    private final Histogram[] phases = new Histogram[Phase.values().length];
+    private final Histogram total = new Histogram();
+
+    private Series() {
+      for (int i = 0; i < phases.length; i++) {
+        phases[i] = new Histogram();
+      }
+    }
+  }
+
+  private static class SeriesKey implements Comparable<SeriesKey> {
+    private final String webhook;
+    private final String token;
+
+    private SeriesKey(String webhook, String token) {
+      this.webhook = webhook;
+      this.token = token;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof SeriesKey)) {
+        return false;
+      }
+      SeriesKey other = (SeriesKey) o;
+      return webhook.equals(other.webhook) && token.equals(other.token);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(webhook, token);
+    }
+
+    @Override
+    public int compareTo(SeriesKey other) {
+      int result = webhook.compareTo(other.webhook);
+      return result != 0 ? result : token.compareTo(other.token);
+    }
+  }
+}
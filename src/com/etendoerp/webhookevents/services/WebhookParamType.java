@@ -0,0 +1,139 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+import org.apache.commons.lang3.StringUtils;
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Types of the webhook params. Each type validates the received text and decodes it to its typed
+ * value, and knows how the param is described in the OpenAPI schema.
+ */
+public enum WebhookParamType {
+  STRING("string", "string", null) {
+    @Override
+    Object decode(String value) {
+      return value;
+    }
+  },
+  NUMBER("number", "number", null) {
+    @Override
+    Object decode(String value) {
+      return new BigDecimal(value.trim());
+    }
+  },
+  INTEGER("integer", "integer", "int64") {
+    @Override
+    Object decode(String value) {
+      return new BigDecimal(value.trim()).longValueExact();
+    }
+  },
+  BOOLEAN("boolean", "boolean", null) {
+    @Override
+    Object decode(String value) {
+      if (StringUtils.equalsIgnoreCase(value.trim(), "true")) {
+        return Boolean.TRUE;
+      }
+      if (StringUtils.equalsIgnoreCase(value.trim(), "false")) {
+        return Boolean.FALSE;
+      }
+      throw new IllegalArgumentException(value);
+    }
+  },
+  DATE("date", "string", "date") {
+    @Override
+    Object decode(String value) {
+      return LocalDate.parse(value.trim());
+    }
+  },
+  ARRAY("array", "array", null) {
+    @Override
+    Object decode(String value) throws JSONException {
+      return new JSONArray(value);
+    }
+  },
+  OBJECT("object", "object", null) {
+    @Override
+    Object decode(String value) throws JSONException {
+      return new JSONObject(value);
+    }
+  };
+
+  private final String value;
+  private final String schemaType;
+  private final String schemaFormat;
+
+  WebhookParamType(String value, String schemaType, String schemaFormat) {
+    this.value = value;
+    this.schemaType = schemaType;
+    this.schemaFormat = schemaFormat;
+  }
+
+  /**
+   * Decodes the text received for a param.
+   *
+   * @param value
+   *     Received text, never null
+   * @return The typed value
+   * @throws JSONException
+   *     If an array or object is not valid JSON
+   * @throws RuntimeException
+   *     If the text is not a valid value of the type
+   */
+  abstract Object decode(String value) throws JSONException;
+
+  /**
+   * @return Value stored in the param type column
+   */
+  public String getValue() {
+    return value;
+  }
+
+  /**
+   * @return Type of the param in the OpenAPI schema
+   */
+  public String getSchemaType() {
+    return schemaType;
+  }
+
+  /**
+   * @return Format of the param in the OpenAPI schema, or null if the type has no format
+   */
+  public String getSchemaFormat() {
+    return schemaFormat;
+  }
+
+  /**
+   * @param value
+   *     Value stored in the param type column
+   * @return The matching type, {@link #STRING} if the value is empty or unknown
+   */
+  public static WebhookParamType of(String value) {
+    for (WebhookParamType type : values()) {
+      if (StringUtils.equalsIgnoreCase(type.value, value)) {
+        return type;
+      }
+    }
+    return STRING;
+  }
+}
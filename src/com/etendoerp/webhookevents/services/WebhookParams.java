@@ -0,0 +1,295 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jettison.json.JSONArray;
+import org.codehaus.jettison.json.JSONException;
+import org.codehaus.jettison.json.JSONObject;
+
+/**
+ * Params of a webhook call. It is still the map of received texts handlers get as parameter, and it
+ * also keeps the values decoded to the type of each param, so handlers do not need to parse them
+ * again:
+ *
+ * <pre>
+ * LocalDate from = WebhookParams.of(parameter).getDate("from");
+ * </pre>
+ *
+ * Any change of the texts through the map, its entries or its views discards the typed value of the
+ * changed param.
+ */
+public class WebhookParams extends AbstractMap<String, String> {
+  private final Map<String, String> texts = new HashMap<>();
+  private final Map<String, Object> values = new HashMap<>();
+
+  /**
+   * Returns the typed view of the given params. Params that were not decoded by the webhook
+   * definition are converted on every call.
+   *
+   * @param parameter
+   *     Params received by a handler
+   * @return The typed params
+   */
+  public static WebhookParams of(Map<String, String> parameter) {
+    if (parameter instanceof WebhookParams) {
+      return (WebhookParams) parameter;
+    }
+    WebhookParams params = new WebhookParams();
+    if (parameter != null) {
+      params.texts.putAll(parameter);
+    }
+    return params;
+  }
+
+  @Override
+  public int size() {
+    return texts.size();
+  }
+
+  @Override
+  public boolean containsKey(Object name) {
+    return texts.containsKey(name);
+  }
+
+  @Override
+  public String get(Object name) {
+    return texts.get(name);
+  }
+
+  @Override
+  public String put(String name, String text) {
+    values.remove(name);
+    return texts.put(name, text);
+  }
+
+  @Override
+  public String remove(Object name) {
+    values.remove(name);
+    return texts.remove(name);
+  }
+
+  @Override
+  public void clear() {
+    values.clear();
+    texts.clear();
+  }
+
+  @Override
+  public Set<Entry<String, String>> entrySet() {
+    return new EntrySet();
+  }
+
+  /**
+   * Adds a param with its received text and its typed value.
+   *
+   * @param name
+   *     Param name
+   * @param text
+   *     Received text
+   * @param value
+   *     Decoded value
+   */
+  void put(String name, String text, Object value) {
+    texts.put(name, text);
+    values.put(name, value);
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The typed value of the param, its text if it was not decoded, or null if it was not
+   *     received
+   */
+  public Object getValue(String name) {
+    Object value = values.get(name);
+    return value != null ? value : get(name);
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of a number param, or null if it was not received
+   */
+  public BigDecimal getBigDecimal(String name) {
+    Object value = getValue(name);
+    if (value == null || value instanceof BigDecimal) {
+      return (BigDecimal) value;
+    }
+    return new BigDecimal(value.toString().trim());
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of an integer param, or null if it was not received
+   */
+  public Long getLong(String name) {
+    Object value = getValue(name);
+    if (value == null || value instanceof Long) {
+      return (Long) value;
+    }
+    return getBigDecimal(name).longValueExact();
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of a boolean param, or null if it was not received
+   */
+  public Boolean getBoolean(String name) {
+    Object value = getValue(name);
+    if (value == null || value instanceof Boolean) {
+      return (Boolean) value;
+    }
+    return Boolean.valueOf(value.toString().trim());
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of a date param, or null if it was not received
+   */
+  public LocalDate getDate(String name) {
+    Object value = getValue(name);
+    if (value == null || value instanceof LocalDate) {
+      return (LocalDate) value;
+    }
+    return LocalDate.parse(value.toString().trim());
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of an array param, or null if it was not received
+   * @throws JSONException
+   *     If the param was not decoded and it is not a valid array
+   */
+  public JSONArray getJSONArray(String name) throws JSONException {
+    Object value = getValue(name);
+    if (value == null || value instanceof JSONArray) {
+      return (JSONArray) value;
+    }
+    return new JSONArray(value.toString());
+  }
+
+  /**
+   * @param name
+   *     Param name
+   * @return The value of an object param, or null if it was not received
+   * @throws JSONException
+   *     If the param was not decoded and it is not a valid object
+   */
+  public JSONObject getJSONObject(String name) throws JSONException {
+    Object value = getValue(name);
+    if (value == null || value instanceof JSONObject) {
+      return (JSONObject) value;
+    }
+    return new JSONObject(value.toString());
+  }
+
+  /**
+   * Entries of the texts, removing or replacing them discards their typed values
+   */
+  private class EntrySet extends AbstractSet<Entry<String, String>> {
+    @Override
+    public Iterator<Entry<String, String>> iterator() {
+      Iterator<Entry<String, String>> iterator = texts.entrySet().iterator();
+      return new Iterator<>() {
+        private Entry<String, String> current;
+
+        @Override
+        public boolean hasNext() {
+          return iterator.hasNext();
+        }
+
+        @Override
+        public Entry<String, String> next() {
+          current = iterator.next();
+          return new ParamEntry(current);
+        }
+
+        @Override
+        public void remove() {
+          iterator.remove();
+          values.remove(current.getKey());
+        }
+      };
+    }
+
+    @Override
+    public int size() {
+      return texts.size();
+    }
+
+    @Override
+    public void clear() {
+      WebhookParams.this.clear();
+    }
+  }
+
+  /**
+   * Entry of a text, replacing its text discards its typed value
+   */
+  private class ParamEntry implements Entry<String, String> {
+    private final Entry<String, String> entry;
+
+    ParamEntry(Entry<String, String> entry) {
+      this.entry = entry;
+    }
+
+    @Override
+    public String getKey() {
+      return entry.getKey();
+    }
+
+    @Override
+    public String getValue() {
+      return entry.getValue();
+    }
+
+    @Override
+    public String setValue(String text) {
+      values.remove(entry.getKey());
+      return entry.setValue(text);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return entry.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+      return entry.hashCode();
+    }
+
+    @Override
+    public String toString() {
+      return entry.toString();
+    }
+  }
+}
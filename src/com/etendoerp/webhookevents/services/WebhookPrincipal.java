@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import org.openbravo.model.ad.access.UserRoles;
+
+import com.etendoerp.webhookevents.data.DefinedwebhookToken;
+
+/**
+ * Immutable result of authenticating an API key or a JWT. It holds only identifiers, so it can be
+ * cached and shared between requests.
+ */
+public class WebhookPrincipal {
+  private final String tokenId;
+  private final String tokenUserId;
+  private final String tokenRoleId;
+  private final String tokenClientId;
+  private final String tokenOrgId;
+  private final int tokenOrdinal;
+  private final int tokenMaxConcurrent;
+  private final int tokenMaxRate;
+  private final Claims claims;
+  private final long expiresAt;
+
+  WebhookPrincipal(DefinedwebhookToken token, Claims claims, long expiresAt) {
+    if (token != null) {
+      UserRoles userRole = token.getUserRole();
+      this.tokenId = token.getId();
+      this.tokenUserId = userRole.getUserContact().getId();
+      this.tokenRoleId = userRole.getRole().getId();
+      this.tokenClientId = userRole.getClient().getId();
+      this.tokenOrgId = userRole.getOrganization().getId();
+      this.tokenMaxConcurrent = WebhookDefinition.toInt(token.getMaxConcurrent());
+      this.tokenMaxRate = WebhookDefinition.toInt(token.getMaxRate());
+    } else {
+      this.tokenId = null;
+      this.tokenUserId = null;
+      this.tokenRoleId = null;
+      this.tokenClientId = null;
+      this.tokenOrgId = null;
+      this.tokenMaxConcurrent = 0;
+      this.tokenMaxRate = 0;
+    }
+    this.tokenOrdinal = WebhookAccessIndex.getInstance().getTokenOrdinal(tokenId);
+    this.claims = claims;
+    this.expiresAt = expiresAt;
+  }
+
+  /**
+   * @return true if neither the API key nor the JWT identify a caller
+   */
+  boolean isEmpty() {
+    return tokenId == null && claims == null;
+  }
+
+  boolean isExpired(long now) {
+    return now >= expiresAt;
+  }
+
+  public String getTokenId() {
+    return tokenId;
+  }
+
+  public String getTokenUserId() {
+    return tokenUserId;
+  }
+
+  public String getTokenRoleId() {
+    return tokenRoleId;
+  }
+
+  public String getTokenClientId() {
+    return tokenClientId;
+  }
+
+  public String getTokenOrgId() {
+    return tokenOrgId;
+  }
+
+  /**
+   * @return Maximum number of concurrent calls made with the token, 0 if there is no limit
+   */
+  public int getTokenMaxConcurrent() {
+    return tokenMaxConcurrent;
+  }
+
+  /**
+   * @return Maximum number of calls per second made with the token, 0 if there is no limit
+   */
+  public int getTokenMaxRate() {
+    return tokenMaxRate;
+  }
+
+  /**
+   * @return User identified by the API key or, if there is none, by the JWT
+   */
+  public String getUserId() {
+    if (tokenUserId != null) {
+      return tokenUserId;
+    }
+    return claims != null ? claims.getUserId() : null;
+  }
+
+  /**
+   * @return Ordinal of the token in the {@link WebhookAccessIndex}
+   */
+  public int getTokenOrdinal() {
+    return tokenOrdinal;
+  }
+
+  /**
+   * @return Claims of the JWT used to authenticate, or null if there is no complete JWT
+   */
+  public Claims getClaims() {
+    return claims;
+  }
+
+  /**
+   * Identity claims of a verified JWT
+   */
+  public static class Claims {
+    private final String userId;
+    private final String roleId;
+    private final String orgId;
+    private final String warehouseId;
+    private final String clientId;
+    private final int roleOrdinal;
+
+    Claims(String userId, String roleId, String orgId, String warehouseId, String clientId) {
+      this.userId = userId;
+      this.roleId = roleId;
+      this.orgId = orgId;
+      this.warehouseId = warehouseId;
+      this.clientId = clientId;
+      this.roleOrdinal = WebhookAccessIndex.getInstance().getRoleOrdinal(roleId);
+    }
+
+    public String getUserId() {
+      return userId;
+    }
+
+    public String getRoleId() {
+      return roleId;
+    }
+
+    public String getOrgId() {
+      return orgId;
+    }
+
+    public String getWarehouseId() {
+      return warehouseId;
+    }
+
+    public String getClientId() {
+      return clientId;
+    }
+
+    /**
+     * @return Ordinal of the role in the {@link WebhookAccessIndex}
+     */
+    public int getRoleOrdinal() {
+      return roleOrdinal;
+    }
+  }
+}
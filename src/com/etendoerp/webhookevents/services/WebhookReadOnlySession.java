@@ -0,0 +1,99 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * DAL session of a call to a read-only webhook. While it is open the session is never flushed and
+ * the entities it loads are read-only, so Hibernate keeps no snapshots of them and skips dirty
+ * checking. Changes made by the handler are discarded.
+ * <p>
+ * Read-only handlers can run their queries through {@link #getDal()}, which returns the read
+ * replica pool when {@code webhooks.readOnly.replica} is enabled and the default DAL otherwise.
+ */
+public class WebhookReadOnlySession implements AutoCloseable {
+  private static final ThreadLocal<Boolean> READ_ONLY = new ThreadLocal<>();
+  private static final boolean REPLICA = WebhookConfig.getBoolean("webhooks.readOnly.replica",
+      false);
+
+  private final Session session;
+  private final FlushMode flushMode;
+  private final boolean defaultReadOnly;
+
+  private WebhookReadOnlySession(Session session) {
+    this.session = session;
+    this.flushMode = session != null ? session.getHibernateFlushMode() : null;
+    this.defaultReadOnly = session != null && session.isDefaultReadOnly();
+  }
+
+  /**
+   * Prepares the DAL session of the current thread for a call to the given webhook. The session
+   * must be closed once the call is finished.
+   *
+   * @param webHook
+   *     Called webhook
+   * @return The session of the call, which does nothing if the webhook is not read-only
+   */
+  static WebhookReadOnlySession open(WebhookDefinition webHook) {
+    if (!webHook.isReadOnly()) {
+      return new WebhookReadOnlySession(null);
+    }
+    Session session = OBDal.getInstance().getSession();
+    // Pending changes of previous calls sharing the session, like atomic batch items, are kept
+    if (session.isDirty()) {
+      session.flush();
+    }
+    WebhookReadOnlySession readOnlySession = new WebhookReadOnlySession(session);
+    session.setHibernateFlushMode(FlushMode.MANUAL);
+    session.setDefaultReadOnly(true);
+    READ_ONLY.set(Boolean.TRUE);
+    return readOnlySession;
+  }
+
+  /**
+   * @return The DAL to query from a read-only webhook: the read replica when it is enabled and the
+   *     current call is read-only, the default DAL otherwise
+   */
+  public static OBDal getDal() {
+    if (REPLICA && Boolean.TRUE.equals(READ_ONLY.get())) {
+      return OBDal.getReadOnlyInstance();
+    }
+    return OBDal.getInstance();
+  }
+
+  /**
+   * Discards the changes of the call and restores the previous mode of the session.
+   */
+  @Override
+  public void close() {
+    if (session == null) {
+      return;
+    }
+    READ_ONLY.remove();
+    if (session.isOpen()) {
+      session.clear();
+      session.setDefaultReadOnly(defaultReadOnly);
+      session.setHibernateFlushMode(flushMode);
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.DefinedWebHook;
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+
+/**
+ * Process wide registry of {@link WebhookDefinition} snapshots keyed by webhook name.
+ * <p>
+ * The registry holds an immutable map that is replaced atomically: lookups never lock and never
+ * touch the database once a webhook has been resolved. Every change in the webhook configuration
+ * must call {@link #invalidate()}, which discards the current snapshot and bumps the configuration
+ * version. Definitions loaded while an invalidation happens are not published, so a stale read
+ * can never overwrite a newer configuration.
+ * <p>
+ * Names without a webhook are remembered for {@code webhooks.registry.negative.ttl} seconds (10 by
+ * default), so repeated calls to an unknown webhook do not query the database every time. Up to
+ * {@code webhooks.registry.negative.size} names (1000 by default) are kept, and they are also
+ * discarded on invalidation, so a webhook created in this node is found right away.
+ */
+public class WebhookRegistry {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookRegistry INSTANCE = new WebhookRegistry();
+
+  private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(0L,
+      Collections.emptyMap()));
+  private final Map<String, Miss> misses = new ConcurrentHashMap<>();
+  private final long negativeTtl;
+  private final int negativeMaxSize;
+
+  private WebhookRegistry() {
+    negativeTtl = TimeUnit.SECONDS.toMillis(
+        WebhookConfig.getLong("webhooks.registry.negative.ttl", 10));
+    negativeMaxSize = WebhookConfig.getInt("webhooks.registry.negative.size", 1000);
+  }
+
+  public static WebhookRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the definition of the webhook with the given name, loading it from the database only
+   * if it is not part of the current snapshot and it was not recently found missing.
+   *
+   * @param name
+   *     Webhook name
+   * @return The webhook definition or null if there is no webhook with that name
+   */
+  public WebhookDefinition get(String name) {
+    Snapshot current = snapshot.get();
+    WebhookDefinition definition = current.definitions.get(name);
+    if (definition != null) {
+      return definition;
+    }
+    if (isMissing(current.version, name)) {
+      return null;
+    }
+    definition = load(name);
+    if (definition != null) {
+      publish(current.version, name, definition);
+    } else {
+      remember(current.version, name);
+    }
+    return definition;
+  }
+
+  /**
+   * Discards every cached definition and unknown name. Next lookups will be resolved against the
+   * database.
+   */
+  public void invalidate() {
+    Snapshot previous = snapshot.getAndUpdate(s -> new Snapshot(s.version + 1,
+        Collections.emptyMap()));
+    misses.clear();
+    log.debug("Webhook registry invalidated, configuration version {}", previous.version + 1);
+  }
+
+  /**
+   * Version of the webhook configuration. It changes every time the registry is invalidated, so it
+   * can be used as part of the key of any value derived from the webhook configuration.
+   *
+   * @return Current configuration version
+   */
+  public long getVersion() {
+    return snapshot.get().version;
+  }
+
+  private void publish(long loadedVersion, String name, WebhookDefinition definition) {
+    snapshot.updateAndGet(s -> {
+      if (s.version != loadedVersion) {
+        return s;
+      }
+      Map<String, WebhookDefinition> definitions = new HashMap<>(s.definitions);
+      definitions.put(name, definition);
+      return new Snapshot(s.version, Collections.unmodifiableMap(definitions));
+    });
+  }
+
+  private boolean isMissing(long version, String name) {
+    if (name == null) {
+      return false;
+    }
+    Miss miss = misses.get(name);
+    return miss != null && miss.version == version
+        && System.currentTimeMillis() < miss.expiresAt;
+  }
+
+  private void remember(long loadedVersion, String name) {
+    if (name == null || negativeTtl <= 0 || negativeMaxSize <= 0) {
+      return;
+    }
+    if (misses.size() >= negativeMaxSize) {
+      long now = System.currentTimeMillis();
+      misses.values().removeIf(miss -> now >= miss.expiresAt);
+      if (misses.size() >= negativeMaxSize) {
+        misses.clear();
+      }
+    }
+    misses.put(name, new Miss(loadedVersion, System.currentTimeMillis() + negativeTtl));
+  }
+
+  private static WebhookDefinition load(String name) {
+    try {
+      OBContext.setAdminMode();
+      var criteria = OBDal.getInstance().createQuery(DefinedWebHook.class, "name = :name");
+      criteria.setNamedParameter("name", name);
+      var webHook = criteria.setMaxResult(1).uniqueResult();
+      return webHook == null ? null : WebhookDefinition.of(webHook);
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
+  /**
+   * Name found missing in a configuration version, until it expires
+   */
+  private static class Miss {
+    private final long version;
+    private final long expiresAt;
+
+    private Miss(long version, long expiresAt) {
+      this.version = version;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  private static class Snapshot {
+    private final long version;
+    private final Map<String, WebhookDefinition> definitions;
+
+    private Snapshot(long version, Map<String, WebhookDefinition> definitions) {
+      this.version = version;
+      this.definitions = definitions;
+    }
+  }
+}
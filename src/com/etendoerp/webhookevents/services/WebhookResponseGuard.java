@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.services;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * Response of a webhook call bounded by a timeout. The call writes into a buffer and either the call
+ * or the timeout answers the client, whichever comes first:
+ * <ul>
+ * <li>The call must {@link #claim()} the response before committing its changes, and
+ * {@link #send()} the buffer once they are committed.</li>
+ * <li>The timeout {@link #timeout(WebhookExecutor.TimeoutHandler, long) answers} with its own
+ * response if the call has not claimed it. The call then gets false from {@link #claim()} and must
+ * roll back its changes, its buffer is discarded.</li>
+ * </ul>
+ * The response of the client is only written by the winner, so a call that ignores its timeout
+ * never touches it.
+ */
+final class WebhookResponseGuard {
+  private static final Logger log = LogManager.getLogger();
+
+  private enum State {
+    RUNNING, CLAIMED, TIMED_OUT
+  }
+
+  private final HttpServletResponse response;
+  private final Buffer buffer;
+  private final CountDownLatch sent = new CountDownLatch(1);
+  private State state = State.RUNNING;
+  private volatile int status;
+
+  WebhookResponseGuard(HttpServletResponse response) {
+    this.response = response;
+    this.buffer = new Buffer(response);
+  }
+
+  /**
+   * @param response
+   *     Response given to a call
+   * @return The guard of the response, or null if it is not guarded
+   */
+  static WebhookResponseGuard of(HttpServletResponse response) {
+    return response instanceof Buffer ? ((Buffer) response).getGuard() : null;
+  }
+
+  /**
+   * @return The response the call writes into
+   */
+  HttpServletResponse getBuffer() {
+    return buffer;
+  }
+
+  /**
+   * Takes the response for the call. It can be called again by the call that already took it.
+   *
+   * @return true if the call answers the client, false if the timeout already did
+   */
+  synchronized boolean claim() {
+    if (state == State.RUNNING) {
+      state = State.CLAIMED;
+    }
+    return state == State.CLAIMED;
+  }
+
+  /**
+   * Sends the buffered response of a call that claimed it.
+   *
+   * @throws IOException
+   *     If the response cannot be written
+   */
+  void send() throws IOException {
+    try {
+      status = buffer.getStatus();
+      write(buffer, response);
+    } finally {
+      sent.countDown();
+    }
+  }
+
+  /**
+   * Answers the client with the response of the timeout handler, unless the call already claimed
+   * the response. The answer is flushed, so the client gets it while the call keeps running.
+   *
+   * @param timeoutHandler
+   *     Writes the response of the timed out call
+   * @param timeout
+   *     Milliseconds the call could run
+   * @return true if the timeout answered the client
+   */
+  boolean timeout(WebhookExecutor.TimeoutHandler timeoutHandler, long timeout) {
+    synchronized (this) {
+      if (state != State.RUNNING) {
+        return false;
+      }
+      state = State.TIMED_OUT;
+      try {
+        var timedOut = new BufferedWebhookResponse(response);
+        timeoutHandler.onTimeout(timedOut, timeout);
+        status = timedOut.getStatus();
+        write(timedOut, response);
+        response.flushBuffer();
+      } catch (IOException | RuntimeException e) {
+        log.error("Error answering a webhook call that exceeded its timeout", e);
+      } finally {
+        sent.countDown();
+      }
+      return true;
+    }
+  }
+
+  /**
+   * Waits until the winner has answered the client.
+   *
+   * @param timeout
+   *     Maximum milliseconds to wait
+   * @return true if the client was answered within the timeout
+   * @throws InterruptedException
+   *     If the thread is interrupted while waiting
+   */
+  boolean awaitSent(long timeout) throws InterruptedException {
+    return sent.await(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @return Status sent to the client, 0 if it has not been answered yet
+   */
+  int getStatus() {
+    return status;
+  }
+
+  private static void write(BufferedWebhookResponse source, HttpServletResponse target)
+      throws IOException {
+    var stored = source.toStoredResponse();
+    target.setContentLength(stored.getBody().length);
+    stored.writeTo(target);
+  }
+
+  /**
+   * Buffer of the call, it knows its guard so nested wrappers can find it
+   */
+  private class Buffer extends BufferedWebhookResponse {
+    Buffer(HttpServletResponse response) {
+      super(response);
+    }
+
+    WebhookResponseGuard getGuard() {
+      return WebhookResponseGuard.this;
+    }
+  }
+}
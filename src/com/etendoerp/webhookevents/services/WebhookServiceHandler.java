@@ -20,15 +20,20 @@ package com.etendoerp.webhookevents.services;
 import com.auth0.jwt.interfaces.DecodedJWT;
 import com.etendoerp.webhookevents.data.DefinedWebHook;
 import com.etendoerp.webhookevents.data.DefinedWebhookParam;
-import com.etendoerp.webhookevents.data.DefinedwebhookRole;
 import com.etendoerp.webhookevents.data.DefinedwebhookToken;
 import com.etendoerp.webhookevents.exceptions.WebhookAuthException;
 import com.etendoerp.webhookevents.exceptions.WebhookNotfoundException;
 import com.etendoerp.webhookevents.exceptions.WebhookParamException;
+import com.etendoerp.webhookevents.exceptions.WebhookPayloadTooLargeException;
+import com.etendoerp.webhookevents.exceptions.WebhookRateLimitException;
+import com.etendoerp.webhookevents.exceptions.WebhookTimeoutException;
 import com.etendoerp.webhookevents.webhook_util.OpenAPISpecUtils;
+import com.etendoerp.webhookevents.webhook_util.WebhookConfig;
+import com.etendoerp.webhookevents.webhook_util.WebhookMessages;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.smf.securewebservices.utils.SecureWebServicesUtils;
 
-import org.apache.commons.lang3.BooleanUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpStatus;
 import org.apache.logging.log4j.LogManager;
@@ -40,28 +45,28 @@ import org.hibernate.criterion.Restrictions;
 import org.openbravo.base.HttpBaseServlet;
 import org.openbravo.base.exception.OBException;
 import org.openbravo.base.session.OBPropertiesProvider;
-import org.openbravo.base.util.OBClassLoader;
-import org.openbravo.base.weld.WeldUtils;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
 import org.openbravo.database.SessionInfo;
-import org.openbravo.erpCommon.utility.OBMessageUtils;
-import org.openbravo.erpCommon.utility.Utility;
-import org.openbravo.model.ad.access.Role;
 import org.openbravo.model.ad.access.UserRoles;
-import org.openbravo.service.db.DalConnectionProvider;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 import static org.apache.http.entity.ContentType.APPLICATION_JSON;
@@ -72,82 +77,156 @@ import static org.apache.http.entity.ContentType.APPLICATION_JSON;
 public class WebhookServiceHandler extends HttpBaseServlet {
   private static final Logger log = LogManager.getLogger();
   public static final String CONTENT_TYPE = "Content-Type";
-  private static final String EN_US = "en_US";
+  private static final String JOBS_PATH = "/jobs/";
+  private static final String BATCH_PATH = "/_batch";
+  private static final String METRICS_PATH = "/_metrics";
+  private static final String METRICS_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+  private static final String RETRY_AFTER = "Retry-After";
+  private static final int SC_TOO_MANY_REQUESTS = 429;
+  private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+  private static final String IDEMPOTENT_REPLAYED = "Idempotent-Replayed";
+  private static final String ETAG = "ETag";
+  private static final String IF_NONE_MATCH = "If-None-Match";
+  private static final String ACCEPT_ENCODING = "Accept-Encoding";
+  private static final String CONTENT_ENCODING = "Content-Encoding";
+  private static final String CACHE_CONTROL = "Cache-Control";
+  private static final String VARY = "Vary";
+  private static final String GZIP = "gzip";
 
   enum HttpMethod {
     GET, POST, PUT, DELETE
   }
 
   /**
-   * Method to handle auth methods and cases
+   * Method to handle auth methods and cases. Resolved principals are cached, so the database is only
+   * queried the first time some credentials are received.
    *
    * @param apikey
-   *     Received token
-   * @return Token object
+   *     Received API key
+   * @param token
+   *     Received JWT
+   * @return Principal identified by the credentials
    */
-  private DefinedwebhookToken checkUserSecurity(String apikey, String token) {
-    // Check access by token
-    var keyCriteria = OBDal.getInstance()
-        .createCriteria(DefinedwebhookToken.class)
-        .setFilterOnReadableClients(false)
-        .setFilterOnReadableOrganization(false)
-        .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_ROLEACCESS, false));
-    keyCriteria.add(Restrictions.eq(DefinedwebhookToken.PROPERTY_APIKEY, apikey));
-    DefinedwebhookToken access = (DefinedwebhookToken) keyCriteria.setMaxResults(1).uniqueResult();
-    if (access == null && token != null) {
+  private WebhookPrincipal checkUserSecurity(String apikey, String token) {
+    var cache = WebhookAuthCache.getInstance();
+    String key = WebhookAuthCache.key(apikey, token);
+    WebhookPrincipal principal = cache.get(key);
+    if (principal == null) {
+      principal = loadPrincipal(apikey, token, cache.expiration());
+      cache.put(key, principal);
+    }
+    return principal;
+  }
+
+  /**
+   * Resolves the credentials against the database. The JWT, if any, is decoded only once.
+   *
+   * @param apikey
+   *     Received API key
+   * @param token
+   *     Received JWT
+   * @param expiresAt
+   *     Default expiration of the principal
+   * @return Principal identified by the credentials
+   */
+  private WebhookPrincipal loadPrincipal(String apikey, String token, long expiresAt) {
+    DefinedwebhookToken access = null;
+    if (StringUtils.isNotEmpty(apikey)) {
+      // Check access by token
+      access = (DefinedwebhookToken) OBDal.getInstance()
+          .createCriteria(DefinedwebhookToken.class)
+          .setFilterOnReadableClients(false)
+          .setFilterOnReadableOrganization(false)
+          .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_ROLEACCESS, false))
+          .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_APIKEY, apikey))
+          .setMaxResults(1)
+          .uniqueResult();
+    }
+    WebhookPrincipal.Claims claims = null;
+    if (token != null) {
       try {
         DecodedJWT decodedToken = SecureWebServicesUtils.decodeToken(token);
         if (decodedToken != null) {
-          String roleId = decodedToken.getClaim("role").asString();
-          String userId = decodedToken.getClaim("user").asString();
-          var userRole = OBDal.getInstance()
-              .createQuery(UserRoles.class,
-                  "as e where e.role.id = :roleId and e.userContact.id = :userId")
-              .setNamedParameter("roleId", roleId)
-              .setNamedParameter("userId", userId)
-              .setMaxResult(1)
-              .uniqueResult();
-          access = (DefinedwebhookToken) OBDal.getInstance()
-              .createCriteria(DefinedwebhookToken.class)
-              .setFilterOnReadableClients(false)
-              .setFilterOnReadableOrganization(false)
-              .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_ROLEACCESS, true))
-              .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_USERROLE, userRole))
-              .setMaxResults(1)
-              .uniqueResult();
+          if (decodedToken.getExpiresAt() != null) {
+            // A verified JWT is valid until it expires, changes in the granted access invalidate
+            // the cache anyway
+            long tokenExpiresAt = decodedToken.getExpiresAt().getTime();
+            expiresAt = access == null ? tokenExpiresAt : Math.min(expiresAt, tokenExpiresAt);
+          }
+          if (access == null) {
+            access = getRoleAccessToken(decodedToken.getClaim("role").asString(),
+                decodedToken.getClaim("user").asString());
+          }
+          claims = getClaims(decodedToken);
         }
       } catch (Exception e) {
         log.debug("Error decoding token", e);
       }
     }
-    if (access == null) {
+    return new WebhookPrincipal(access, claims, expiresAt);
+  }
+
+  /**
+   * Finds the token that grants access to the user and role of a JWT
+   *
+   * @param roleId
+   *     Role of the JWT
+   * @param userId
+   *     User of the JWT
+   * @return The role access token or null if there is none
+   */
+  private DefinedwebhookToken getRoleAccessToken(String roleId, String userId) {
+    var userRole = OBDal.getInstance()
+        .createQuery(UserRoles.class,
+            "as e where e.role.id = :roleId and e.userContact.id = :userId")
+        .setNamedParameter("roleId", roleId)
+        .setNamedParameter("userId", userId)
+        .setMaxResult(1)
+        .uniqueResult();
+    return (DefinedwebhookToken) OBDal.getInstance()
+        .createCriteria(DefinedwebhookToken.class)
+        .setFilterOnReadableClients(false)
+        .setFilterOnReadableOrganization(false)
+        .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_ROLEACCESS, true))
+        .add(Restrictions.eq(DefinedwebhookToken.PROPERTY_USERROLE, userRole))
+        .setMaxResults(1)
+        .uniqueResult();
+  }
+
+  /**
+   * Extracts the identity claims of a JWT
+   *
+   * @param decodedToken
+   *     Verified JWT
+   * @return The claims, or null if any of them is missing
+   */
+  private static WebhookPrincipal.Claims getClaims(DecodedJWT decodedToken) {
+    String userId = decodedToken.getClaim("user").asString();
+    String roleId = decodedToken.getClaim("role").asString();
+    String orgId = decodedToken.getClaim("organization").asString();
+    String warehouseId = decodedToken.getClaim("warehouse").asString();
+    String clientId = decodedToken.getClaim("client").asString();
+    if (StringUtils.isAnyEmpty(userId, roleId, orgId, warehouseId, clientId)) {
+      log.debug("SWS - Token is not valid");
       return null;
     }
-    var userRole = access.getUserRole();
-    OBContext.setOBContext(userRole.getUserContact().getId(), userRole.getRole().getId(),
-        userRole.getClient().getId(), userRole.getOrganization().getId());
-    return access;
+    return new WebhookPrincipal.Claims(userId, roleId, orgId, warehouseId, clientId);
   }
 
+
   /**
    * Cross filtering to find a called action and if the user is allowed to call it
    *
    * @param name
    *     Webhook name
-   * @return OBObject of the called webhook
+   * @return Snapshot of the called webhook
    * @throws WebhookNotfoundException
    *     Exception triggered in case of unexisting webhook
-   * @throws WebhookAuthException
-   *     Exception triggered in case of auth issues
    */
-  private DefinedWebHook getAction(String name) throws WebhookNotfoundException {
-    var criteria = OBDal.getInstance().createQuery(DefinedWebHook.class, "name = :name");
-    criteria.setNamedParameter("name", name);
-    var action = criteria.setMaxResult(1).uniqueResult();
+  private WebhookDefinition getAction(String name) throws WebhookNotfoundException {
+    var action = WebhookRegistry.getInstance().get(name);
     if (action == null) {
-      var message = Utility.messageBD(new DalConnectionProvider(false), "smfwhe_actionNotFound",
-          OBContext.getOBContext().getLanguage().getLanguage());
-      message = String.format(message, name);
+      var message = WebhookMessages.format("smfwhe_actionNotFound", name);
       log.error(message);
       throw new WebhookNotfoundException(message);
     }
@@ -155,7 +234,7 @@ public class WebhookServiceHandler extends HttpBaseServlet {
   }
 
   /**
-   * Weld helper to load configured webhook handler
+   * Weld helper to load configured webhook handler. Resolved handlers are cached by class name.
    *
    * @param javaClass
    *     Java class name of handler. Must extends {@link com.etendoerp.webhookevents.services.BaseWebhookService}
@@ -164,11 +243,7 @@ public class WebhookServiceHandler extends HttpBaseServlet {
    *     triggerd in case of instancing problems
    */
   private BaseWebhookService getInstance(String javaClass) throws ClassNotFoundException {
-
-    @SuppressWarnings("unchecked") final var handlerClass = (Class<BaseWebhookService>) OBClassLoader.getInstance()
-        .loadClass(javaClass);
-    return WeldUtils.getInstanceFromStaticBeanManager(handlerClass);
-
+    return WebhookHandlerCache.getInstance().get(javaClass);
   }
 
   /**
@@ -187,12 +262,29 @@ public class WebhookServiceHandler extends HttpBaseServlet {
    */
   private void buildResponse(HttpServletResponse response, int code,
       Map<String, String> responseVars) throws JSONException, IOException {
-    response.setStatus(code);
-    response.addHeader(CONTENT_TYPE, APPLICATION_JSON.getMimeType());
     JSONObject responseBody = new JSONObject();
     for (var entry : responseVars.entrySet()) {
       responseBody.put(entry.getKey(), entry.getValue());
     }
+    buildResponse(response, code, responseBody);
+  }
+
+  /**
+   * Build a json response with the given body
+   *
+   * @param response
+   *     Http Object needed to obtain the writer
+   * @param code
+   *     HTTP code of the response (200, 203, etc)
+   * @param responseBody
+   *     JSON to write in the response
+   * @throws IOException
+   *     Triggerd in case of issues with response writer
+   */
+  private void buildResponse(HttpServletResponse response, int code, JSONObject responseBody)
+      throws IOException {
+    response.setStatus(code);
+    response.addHeader(CONTENT_TYPE, APPLICATION_JSON.getMimeType());
     PrintWriter out = response.getWriter();
     out.print(responseBody);
   }
@@ -219,7 +311,10 @@ public class WebhookServiceHandler extends HttpBaseServlet {
   }
 
   /**
-   * Handle the request
+   * Handle the request. Once the call is authorized, it is executed on a virtual thread when the
+   * {@link WebhookExecutor} is enabled. Calls of webhooks with an execution timeout that run in the
+   * container thread are guarded too, so the caller gets the timeout response at the deadline even
+   * if the handler ignores its cancellation.
    *
    * @param httpMethod
    *     Http method of the request
@@ -230,6 +325,10 @@ public class WebhookServiceHandler extends HttpBaseServlet {
    */
   private void handleRequest(HttpMethod httpMethod, HttpServletRequest request,
       HttpServletResponse response) throws IOException {
+    var timer = WebhookMetrics.getInstance().start();
+    String webHookName = null;
+    String tokenId = null;
+    boolean recorded = false;
     try {
       OBContext.setAdminMode();
       // Check if webhook exists
@@ -238,38 +337,545 @@ public class WebhookServiceHandler extends HttpBaseServlet {
         name = request.getPathInfo().substring(1);
       }
       var webHook = getAction(name);
+      webHookName = webHook.getName();
 
       // Get JWT token if exists
       String token = obtainToken(request);
-      boolean allow = isAllowed(request, token, webHook);
+      var principal = checkUserSecurity(request.getParameter("apikey"), token);
+      tokenId = principal.getTokenId();
+      boolean allow = isAllowed(request, principal, webHook);
       if (!allow) {
         // User is not allowed to call webhook
-
-        OBContext obContext = OBContext.getOBContext();
-        var lang = obContext != null ? obContext.getLanguage().getLanguage() : EN_US;
-        var roleName = obContext != null ? obContext.getRole().getName() : "-";
-        var message = Utility.messageBD(new DalConnectionProvider(false), "smfwhe_unauthorizedToken", lang);
-        if (webHook.isAllowGroupAccess()) {
-          String roleMessage = Utility.messageBD(new DalConnectionProvider(false), "smfwhe_unauthorizedRole", lang);
-          message += " " + String.format(roleMessage, roleName, webHook.getName());
+        throw unauthorized(webHook);
+      }
+      timer.mark(WebhookMetrics.Phase.AUTH);
+      String idempotencyKey = httpMethod == HttpMethod.POST ? request.getHeader(IDEMPOTENCY_KEY)
+          : null;
+      WebhookExecutor.Task task = target -> {
+        if (StringUtils.isEmpty(idempotencyKey)) {
+          execute(httpMethod, request, target, webHook, principal, timer);
+        } else {
+          executeIdempotent(httpMethod, request, target, webHook, principal, idempotencyKey,
+              timer);
         }
-        log.error(message);
-        throw new WebhookAuthException(message);
+      };
+      var executor = WebhookExecutor.getInstance();
+      boolean dispatchable = executor.isDispatchable(request);
+      // Streamed responses cannot be buffered, they are written straight by the container thread
+      if (!webHook.isAsync() && (dispatchable || webHook.getExecutionTimeout() > 0)
+          && !(getInstance(webHook.getJavaClass()) instanceof BaseStreamingWebhookService)) {
+        String metricsName = webHookName;
+        String metricsToken = tokenId;
+        WebhookExecutor.Task guarded = target -> {
+          try {
+            task.run(target);
+          } catch (Exception e) {
+            handleError(target, e);
+          }
+        };
+        WebhookExecutor.TimeoutHandler timeoutHandler = (timedOut, timeout) -> buildErrorResponse(
+            timedOut, HttpStatus.SC_GATEWAY_TIMEOUT,
+            WebhookMessages.format("smfwhe_executionTimeout", metricsName, timeout));
+        IntConsumer onComplete = status -> WebhookMetrics.getInstance()
+            .record(metricsName, metricsToken, status, timer);
+        recorded = true;
+        if (dispatchable) {
+          executor.dispatch(request, webHook.getExecutionTimeout(), guarded, timeoutHandler,
+              onComplete);
+        } else {
+          executor.execute(response, webHook.getExecutionTimeout(), guarded, timeoutHandler,
+              onComplete);
+        }
+        return;
+      }
+      task.run(response);
+    } catch (Exception e) {
+      handleError(response, e);
+    } finally {
+      OBContext.restorePreviousMode();
+      if (!recorded) {
+        WebhookMetrics.getInstance().record(webHookName, tokenId, response.getStatus(), timer);
       }
+    }
+  }
+
+  /**
+   * Executes the handler of an authorized call
+   *
+   * @param httpMethod
+   *     Http method of the request
+   * @param request
+   *     Http request object
+   * @param response
+   *     Http response object
+   * @param webHook
+   *     Called webhook
+   * @param principal
+   *     Caller of the webhook
+   * @param timer
+   *     Timer of the phases of the call
+   */
+  private void execute(HttpMethod httpMethod, HttpServletRequest request,
+      HttpServletResponse response, WebhookDefinition webHook, WebhookPrincipal principal,
+      WebhookMetrics.Timer timer) throws Exception {
+    try (var permit = acquire(webHook, principal)) {
+      timer.mark(WebhookMetrics.Phase.AUTH);
       // Get handler
       var action = getInstance(webHook.getJavaClass());
-      JSONObject body = extractBodyData(httpMethod, request);
+      JSONObject body = extractBodyData(httpMethod, request, webHook);
       Map<String, String> requestParams = getRequestParams(webHook, body);
+      timer.mark(WebhookMetrics.Phase.PARAMS);
+      if (webHook.isAsync()) {
+        submitJob(response, webHook, action, requestParams, permit);
+        timer.mark(WebhookMetrics.Phase.HANDLER);
+        return;
+      }
       Map<String, String> responseVars = new HashMap<>();
-      action.get(requestParams, responseVars);
+      try (var session = WebhookReadOnlySession.open(webHook)) {
+        if (action instanceof BaseStreamingWebhookService) {
+          // Streamed responses are written while the handler runs
+          streamResponse(response, webHook, (BaseStreamingWebhookService) action, requestParams);
+          timer.mark(WebhookMetrics.Phase.HANDLER);
+          return;
+        }
+        WebhookCancellation.invoke(webHook, action, requestParams, responseVars);
+      }
+      timer.mark(WebhookMetrics.Phase.HANDLER);
       buildResponse(response, HttpStatus.SC_OK, responseVars);
-    } catch (WebhookAuthException e) {
+      timer.mark(WebhookMetrics.Phase.SERIALIZATION);
+    }
+  }
+
+  /**
+   * Executes a call made with an Idempotency-Key header. The first call with a key executes the
+   * handler and, if its response is final, commits the transaction and stores the response; retries
+   * and concurrent duplicates get that response, flagged with the Idempotent-Replayed header.
+   * Responses of streaming webhooks are buffered. When the call has already been answered by its
+   * timeout, nothing is stored and the key is released.
+   *
+   * @param httpMethod
+   *     Http method of the request
+   * @param request
+   *     Http request object
+   * @param response
+   *     Http response object
+   * @param webHook
+   *     Called webhook
+   * @param principal
+   *     Caller of the webhook
+   * @param idempotencyKey
+   *     Value of the Idempotency-Key header
+   * @param timer
+   *     Timer of the phases of the call
+   */
+  private void executeIdempotent(HttpMethod httpMethod, HttpServletRequest request,
+      HttpServletResponse response, WebhookDefinition webHook, WebhookPrincipal principal,
+      String idempotencyKey, WebhookMetrics.Timer timer) throws IOException, InterruptedException {
+    var cache = WebhookIdempotencyCache.getInstance();
+    var call = cache.begin(WebhookIdempotencyCache.key(principal, webHook, idempotencyKey),
+        webHook.getId());
+    WebhookIdempotencyCache.StoredResponse stored;
+    if (call.isOwner()) {
+      stored = null;
+      var buffered = new BufferedWebhookResponse(response);
+      try {
+        try {
+          execute(httpMethod, request, buffered, webHook, principal, timer);
+        } catch (Exception e) {
+          handleError(buffered, e);
+        }
+        var guard = WebhookResponseGuard.of(response);
+        if (guard != null && !guard.claim()) {
+          // The client already got the timeout response, the call is released without storing it
+          return;
+        }
+        stored = buffered.toStoredResponse();
+      } finally {
+        cache.complete(call, stored);
+      }
+    } else {
+      stored = call.await();
+      if (stored == null) {
+        buildErrorResponse(response, HttpStatus.SC_CONFLICT,
+            WebhookMessages.getMessage("smfwhe_idempotencyInProgress"));
+        return;
+      }
+      response.setHeader(IDEMPOTENT_REPLAYED, "true");
+    }
+    stored.writeTo(response);
+    timer.mark(WebhookMetrics.Phase.SERIALIZATION);
+  }
+
+  /**
+   * Builds the error response of a failed call
+   *
+   * @param response
+   *     Http response object
+   * @param e
+   *     Exception thrown by the call
+   */
+  private void handleError(HttpServletResponse response, Exception e) {
+    if (e instanceof InterruptedException) {
+      Thread.currentThread().interrupt();
+    }
+    if (e instanceof WebhookRateLimitException) {
+      response.setHeader(RETRY_AFTER,
+          String.valueOf(((WebhookRateLimitException) e).getRetryAfter()));
+      buildErrorResponse(response, SC_TOO_MANY_REQUESTS, e.getMessage());
+    } else if (e instanceof WebhookAuthException) {
       buildErrorResponse(response, HttpStatus.SC_UNAUTHORIZED, e.getMessage());
-    } catch (WebhookNotfoundException e) {
+    } else if (e instanceof WebhookNotfoundException) {
       buildErrorResponse(response, HttpStatus.SC_NOT_FOUND, e.getMessage());
-    } catch (ClassNotFoundException e) {
+    } else if (e instanceof WebhookPayloadTooLargeException) {
+      buildErrorResponse(response, HttpStatus.SC_REQUEST_TOO_LONG, e.getMessage());
+    } else if (e instanceof WebhookTimeoutException) {
+      buildErrorResponse(response, HttpStatus.SC_GATEWAY_TIMEOUT, e.getMessage());
+    } else if (e instanceof ClassNotFoundException) {
       buildErrorResponse(response, HttpStatus.SC_INTERNAL_SERVER_ERROR,
-          String.format(OBMessageUtils.messageBD("smfwhe_classNotFound"), e.getMessage()));
+          WebhookMessages.format("smfwhe_classNotFound", e.getMessage()));
+    } else {
+      buildErrorResponse(response, HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+    }
+  }
+
+  /**
+   * Streams the response of a webhook straight to the client. If the handler fails before anything
+   * has been sent, the response is reset so a regular error can be returned. Once the response is
+   * committed the status cannot change anymore, so the body is left incomplete to let the client
+   * detect the failure. The same happens when the call exceeds the execution timeout of the webhook.
+   *
+   * @param response
+   *     Http response object
+   * @param webHook
+   *     Called webhook
+   * @param action
+   *     Streaming handler of the webhook
+   * @param requestParams
+   *     Parameters of the call
+   */
+  private void streamResponse(HttpServletResponse response, WebhookDefinition webHook,
+      BaseStreamingWebhookService action, Map<String, String> requestParams)
+      throws IOException, WebhookTimeoutException {
+    response.setStatus(HttpStatus.SC_OK);
+    response.addHeader(CONTENT_TYPE, APPLICATION_JSON.getMimeType());
+    response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+    JsonGenerator generator = BaseStreamingWebhookService.JSON_FACTORY.createGenerator(
+        response.getOutputStream(), JsonEncoding.UTF8);
+    try (var cancellation = WebhookCancellation.start(webHook.getExecutionTimeout())) {
+      try {
+        action.stream(requestParams, generator);
+        generator.close();
+      } catch (IOException | RuntimeException e) {
+        if (!response.isCommitted()) {
+          response.reset();
+          cancellation.checkTimeout(webHook, e);
+          throw e;
+        }
+        log.error("Error streaming the response, the response is incomplete", e);
+        if (cancellation.isCancelled()) {
+          OBDal.getInstance().rollbackAndClose();
+        }
+      }
+    }
+  }
+
+  /**
+   * Takes a slot of the concurrency and rate limits of the webhook and the token of the caller
+   *
+   * @param webHook
+   *     Called webhook
+   * @param principal
+   *     Caller of the webhook
+   * @return The permit that must be closed once the call is finished
+   * @throws WebhookRateLimitException
+   *     If the call exceeds any of the limits
+   */
+  private static WebhookLimiter.Permit acquire(WebhookDefinition webHook,
+      WebhookPrincipal principal) throws WebhookRateLimitException {
+    var permit = WebhookLimiter.getInstance().acquire(webHook, principal);
+    if (!permit.isGranted()) {
+      var message = WebhookMessages.format("smfwhe_rateLimited", webHook.getName(),
+          permit.getRetryAfter());
+      log.warn(message);
+      throw new WebhookRateLimitException(message, permit.getRetryAfter());
+    }
+    return permit;
+  }
+
+  /**
+   * Builds the exception thrown when the current user is not allowed to call a webhook
+   *
+   * @param webHook
+   *     Called webhook
+   * @return Exception with the localized message
+   */
+  private static WebhookAuthException unauthorized(WebhookDefinition webHook) {
+    OBContext obContext = OBContext.getOBContext();
+    var roleName = obContext != null ? obContext.getRole().getName() : "-";
+    var message = WebhookMessages.getMessage("smfwhe_unauthorizedToken");
+    if (webHook.isAllowGroupAccess()) {
+      String roleMessage = WebhookMessages.getMessage("smfwhe_unauthorizedRole");
+      message += " " + String.format(roleMessage, roleName, webHook.getName());
+    }
+    log.error(message);
+    return new WebhookAuthException(message);
+  }
+
+  /**
+   * Handle a batch of webhook calls. The caller is authenticated once and each item is resolved,
+   * authorized and executed in order.
+   * <p>
+   * The body is either a JSON array of {@code {name, params}} items or an object with the
+   * {@code items} array and the {@code atomic} flag. Atomic batches run every item in a single
+   * transaction: the first failure rolls back the whole batch and the remaining items are skipped.
+   * Otherwise each item is committed or rolled back on its own. Asynchronous webhooks are queued
+   * as usual, except in atomic batches, where they run inline so they are part of the transaction.
+   *
+   * @param request
+   *     Http request object
+   * @param response
+   *     Http response object
+   */
+  private void handleBatch(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    try {
+      OBContext.setAdminMode();
+      JSONArray items;
+      boolean atomic;
+      try {
+        String content = new BufferedReader(
+            WebhookBodyParser.limit(request.getReader(), getMaxBodySize(request))).lines()
+            .collect(Collectors.joining());
+        if (StringUtils.startsWith(StringUtils.trim(content), "[")) {
+          items = new JSONArray(content);
+          atomic = false;
+        } else {
+          JSONObject body = new JSONObject(content);
+          items = body.getJSONArray("items");
+          atomic = body.optBoolean("atomic", false);
+        }
+      } catch (JSONException e) {
+        buildErrorResponse(response, HttpStatus.SC_BAD_REQUEST,
+            WebhookMessages.getMessage("smfwhe_batchInvalid"));
+        return;
+      } catch (UncheckedIOException e) {
+        if (e.getCause() instanceof WebhookBodyParser.BodyTooLargeException) {
+          throw bodyTooLarge();
+        }
+        throw e;
+      }
+      int maxItems = WebhookConfig.getInt("webhooks.batch.maxItems", 500);
+      if (items.length() > maxItems) {
+        buildErrorResponse(response, HttpStatus.SC_BAD_REQUEST,
+            WebhookMessages.format("smfwhe_batchTooLarge", maxItems));
+        return;
+      }
+
+      var principal = checkUserSecurity(request.getParameter("apikey"), obtainToken(request));
+      JSONArray results = new JSONArray();
+      boolean failed = false;
+      Grant current = null;
+      for (int i = 0; i < items.length(); i++) {
+        JSONObject item = items.optJSONObject(i);
+        String name = item != null ? item.optString("name", null) : null;
+        JSONObject result = new JSONObject();
+        result.put("name", name);
+        results.put(result);
+        if (failed) {
+          result.put("status", HttpStatus.SC_FAILED_DEPENDENCY);
+          result.put("message",
+              WebhookMessages.getMessage("smfwhe_batchItemSkipped"));
+          continue;
+        }
+        var timer = WebhookMetrics.getInstance().start();
+        String webHookName = null;
+        try {
+          if (name == null) {
+            throw new WebhookParamException(
+                WebhookMessages.getMessage("smfwhe_batchInvalid"));
+          }
+          var webHook = getAction(name);
+          webHookName = webHook.getName();
+          Grant grant = getGrant(principal, webHook);
+          if (grant != null && grant != current) {
+            current = applyGrant(request, principal, grant) ? grant : null;
+          }
+          if (grant == null || current != grant) {
+            throw unauthorized(webHook);
+          }
+          try (var permit = acquire(webHook, principal)) {
+            timer.mark(WebhookMetrics.Phase.AUTH);
+            var action = getInstance(webHook.getJavaClass());
+            JSONObject params = item.optJSONObject("params");
+            Map<String, String> requestParams = getRequestParams(webHook,
+                params != null ? params : new JSONObject());
+            timer.mark(WebhookMetrics.Phase.PARAMS);
+            if (webHook.isAsync() && !atomic) {
+              var job = WebhookJobManager.getInstance()
+                  .submit(webHook, action, requestParams, permit);
+              timer.mark(WebhookMetrics.Phase.HANDLER);
+              result.put("status", HttpStatus.SC_ACCEPTED);
+              result.put("response", job.toJSON());
+              continue;
+            }
+            Map<String, String> responseVars = new HashMap<>();
+            try (var session = WebhookReadOnlySession.open(webHook)) {
+              WebhookCancellation.invoke(webHook, action, requestParams, responseVars);
+            }
+            if (!atomic) {
+              OBDal.getInstance().commitAndClose();
+            }
+            timer.mark(WebhookMetrics.Phase.HANDLER);
+            result.put("status", HttpStatus.SC_OK);
+            result.put("response", new JSONObject(responseVars));
+          }
+        } catch (WebhookRateLimitException e) {
+          OBDal.getInstance().rollbackAndClose();
+          result.put("status", SC_TOO_MANY_REQUESTS);
+          result.put("message", e.getMessage());
+          result.put("retryAfter", e.getRetryAfter());
+          failed = atomic;
+        } catch (Exception e) {
+          log.error("Error executing batch item {}", name, e);
+          OBDal.getInstance().rollbackAndClose();
+          result.put("status", getErrorStatus(e));
+          result.put("message", e instanceof ClassNotFoundException
+              ? WebhookMessages.format("smfwhe_classNotFound", e.getMessage())
+              : e.getMessage());
+          failed = atomic;
+        } finally {
+          WebhookMetrics.getInstance().record(webHookName, principal.getTokenId(),
+              result.optInt("status"), timer);
+        }
+      }
+      JSONObject responseBody = new JSONObject();
+      responseBody.put("atomic", atomic);
+      if (atomic) {
+        responseBody.put("committed", !failed);
+      }
+      responseBody.put("results", results);
+      buildResponse(response, HttpStatus.SC_OK, responseBody);
+    } catch (WebhookPayloadTooLargeException e) {
+      buildErrorResponse(response, HttpStatus.SC_REQUEST_TOO_LONG, e.getMessage());
+    } catch (Exception e) {
+      buildErrorResponse(response, HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getMessage());
+    } finally {
+      OBContext.restorePreviousMode();
+    }
+  }
+
+  /**
+   * Credentials that grant access to a webhook
+   */
+  private enum Grant {
+    TOKEN, ROLE
+  }
+
+  /**
+   * Finds which of the credentials of the principal grants access to the webhook
+   *
+   * @param principal
+   *     The principal resolved from the request credentials
+   * @param webHook
+   *     Called webhook
+   * @return The credentials that grant access, or null if the webhook cannot be called
+   */
+  private static Grant getGrant(WebhookPrincipal principal, WebhookDefinition webHook) {
+    var index = WebhookAccessIndex.getInstance();
+    if (principal.getTokenId() != null
+        && index.isTokenAllowed(webHook.getId(), principal.getTokenOrdinal())) {
+      return Grant.TOKEN;
+    }
+    var claims = principal.getClaims();
+    if (claims != null && index.isRoleAllowed(webHook.getId(), claims.getRoleOrdinal())) {
+      return Grant.ROLE;
+    }
+    return null;
+  }
+
+  /**
+   * Sets the context of the credentials that grant access
+   *
+   * @return true if the context could be set
+   */
+  private static boolean applyGrant(HttpServletRequest request, WebhookPrincipal principal,
+      Grant grant) {
+    if (grant == Grant.TOKEN) {
+      OBContext.setOBContext(principal.getTokenUserId(), principal.getTokenRoleId(),
+          principal.getTokenClientId(), principal.getTokenOrgId());
+      return true;
+    }
+    return setClaimsContext(request, principal.getClaims());
+  }
+
+  private static int getErrorStatus(Exception e) {
+    if (e instanceof WebhookAuthException) {
+      return HttpStatus.SC_UNAUTHORIZED;
+    }
+    if (e instanceof WebhookNotfoundException) {
+      return HttpStatus.SC_NOT_FOUND;
+    }
+    if (e instanceof WebhookParamException) {
+      return HttpStatus.SC_BAD_REQUEST;
+    }
+    if (e instanceof WebhookTimeoutException) {
+      return HttpStatus.SC_GATEWAY_TIMEOUT;
+    }
+    return HttpStatus.SC_INTERNAL_SERVER_ERROR;
+  }
+
+  /**
+   * Queues the execution of an asynchronous webhook and answers with the identifier of the job
+   *
+   * @param response
+   *     Http response object
+   * @param webHook
+   *     Called webhook
+   * @param action
+   *     Handler of the webhook
+   * @param requestParams
+   *     Parameters of the call
+   * @param permit
+   *     Permit of the call, held by the job until it finishes
+   */
+  private void submitJob(HttpServletResponse response, WebhookDefinition webHook,
+      BaseWebhookService action, Map<String, String> requestParams, WebhookLimiter.Permit permit)
+      throws JSONException, IOException {
+    WebhookJob job;
+    try {
+      job = WebhookJobManager.getInstance().submit(webHook, action, requestParams, permit);
+    } catch (RejectedExecutionException e) {
+      var message = WebhookMessages.getMessage("smfwhe_jobQueueFull");
+      log.warn(message);
+      buildErrorResponse(response, HttpStatus.SC_SERVICE_UNAVAILABLE, message);
+      return;
+    }
+    response.addHeader("Location", "/webhooks" + JOBS_PATH + job.getId());
+    buildResponse(response, HttpStatus.SC_ACCEPTED, job.toJSON());
+  }
+
+  /**
+   * Answers the status of an asynchronous job. Jobs can only be polled with the credentials of the
+   * user that called the webhook.
+   *
+   * @param request
+   *     Http request object
+   * @param response
+   *     Http response object
+   */
+  private void handleJobStatus(HttpServletRequest request, HttpServletResponse response) {
+    try {
+      OBContext.setAdminMode();
+      String jobId = request.getPathInfo().substring(JOBS_PATH.length());
+      var principal = checkUserSecurity(request.getParameter("apikey"), obtainToken(request));
+      var job = WebhookJobManager.getInstance().get(jobId);
+      if (job == null || principal.getUserId() == null
+          || !StringUtils.equals(job.getOwnerId(), principal.getUserId())) {
+        var message = WebhookMessages.format("smfwhe_jobNotFound", jobId);
+        buildErrorResponse(response, HttpStatus.SC_NOT_FOUND, message);
+        return;
+      }
+      buildResponse(response, HttpStatus.SC_OK, job.toJSON());
     } catch (Exception e) {
       buildErrorResponse(response, HttpStatus.SC_INTERNAL_SERVER_ERROR, e.getMessage());
     } finally {
@@ -285,27 +891,14 @@ public class WebhookServiceHandler extends HttpBaseServlet {
     }
   }
 
-  private static Map<String, String> getRequestParams(DefinedWebHook webHook, JSONObject body)
+  private static Map<String, String> getRequestParams(WebhookDefinition webHook, JSONObject body)
       throws JSONException, WebhookParamException {
-    Map<String, String> requestParams = new HashMap<>();
-    var paramList = webHook.getSmfwheDefinedwebhookParamList();
-    for (DefinedWebhookParam param : paramList) {
-      String val = null;
-      if (body.has(param.getName())) {
-        val = body.getString(param.getName());
-      }
-      if (BooleanUtils.isTrue(param.isRequired()) && StringUtils.isEmpty(val)) {
-        var message = Utility.messageBD(new DalConnectionProvider(false),
-            "smfwhe_missingParameter", OBContext.getOBContext().getLanguage().getLanguage());
-        message = String.format(message, param.getName());
-        log.error(message);
-        throw new WebhookParamException(message);
-      }
-      if (val != null) {
-        requestParams.put(param.getName(), val);
-      }
+    try {
+      return webHook.decode(body);
+    } catch (WebhookParamException e) {
+      log.error(e.getMessage());
+      throw e;
     }
-    return requestParams;
   }
 
   private static String obtainToken(HttpServletRequest request) {
@@ -317,32 +910,37 @@ public class WebhookServiceHandler extends HttpBaseServlet {
     return token;
   }
 
-  private boolean isAllowed(HttpServletRequest request, String token, DefinedWebHook webHook) {
-    // Get API Key if exists
-    String apikey = request.getParameter("apikey");
+  private boolean isAllowed(HttpServletRequest request, WebhookPrincipal principal,
+      WebhookDefinition webHook) {
     // Check if user is allowed to call webhook
-    var definedwebhookToken = checkUserSecurity(apikey, token);
-    boolean allow = false;
-    if (definedwebhookToken != null) {
-      allow = webHook.getSmfwheDefinedwebhookAccessList()
-          .stream()
-          .filter(p -> p.getSmfwheDefinedwebhookToken()
-              .getId()
-              .compareTo(definedwebhookToken.getId()) == 0)
-          .count() == 1;
-    }
-    if (!allow) {
-      // Check if user is allowed to call webhook by role
-      var groupAccess = checkRoleSecurity(request, token, webHook);
-      if (groupAccess != null) {
-        allow = true;
+    if (principal.getTokenId() != null) {
+      OBContext.setOBContext(principal.getTokenUserId(), principal.getTokenRoleId(),
+          principal.getTokenClientId(), principal.getTokenOrgId());
+      if (WebhookAccessIndex.getInstance()
+          .isTokenAllowed(webHook.getId(), principal.getTokenOrdinal())) {
+        return true;
       }
     }
-    return allow;
+    // Check if user is allowed to call webhook by role
+    return checkRoleSecurity(request, principal, webHook);
   }
 
-  private static JSONObject extractBodyData(HttpMethod httpMethod, HttpServletRequest request)
-      throws IOException, WebhookParamException {
+  /**
+   * Reads the params of the request. POST bodies are parsed in streaming mode: only the declared
+   * params are extracted and the body is rejected once it exceeds {@code webhooks.body.maxSize}
+   * characters (10 MB by default).
+   *
+   * @param httpMethod
+   *     Http method of the request
+   * @param request
+   *     Http request object
+   * @param webHook
+   *     Called webhook
+   * @return Object with the received params
+   */
+  private static JSONObject extractBodyData(HttpMethod httpMethod, HttpServletRequest request,
+      WebhookDefinition webHook)
+      throws IOException, WebhookParamException, WebhookPayloadTooLargeException {
     JSONObject body;
     try {
       if (httpMethod == HttpMethod.GET) {
@@ -351,11 +949,13 @@ public class WebhookServiceHandler extends HttpBaseServlet {
           body.put(key, request.getParameter(key));
         }
       } else {
-        body = new JSONObject(request.getReader().lines().collect(Collectors.joining()));
+        long maxSize = getMaxBodySize(request);
+        body = WebhookBodyParser.parse(request.getReader(), webHook.getParamNames(), maxSize);
       }
-    } catch (JSONException e) {
-      var message = Utility.messageBD(new DalConnectionProvider(false),
-          "smfwhe_cannotCollectData", OBContext.getOBContext().getLanguage().getLanguage());
+    } catch (WebhookBodyParser.BodyTooLargeException e) {
+      throw bodyTooLarge();
+    } catch (JSONException | IOException e) {
+      var message = WebhookMessages.getMessage("smfwhe_cannotCollectData");
       log.error(message);
       throw new WebhookParamException(message);
     }
@@ -363,84 +963,84 @@ public class WebhookServiceHandler extends HttpBaseServlet {
   }
 
   /**
-   * This method checks the security of the role based on the provided HttpServletRequest, token, and DefinedWebHook.
-   * It first decodes the token to get the user ID, role ID, organization ID, warehouse ID, and client ID.
-   * If any of these are null or empty, it throws an OBException indicating that the token is not valid.
-   * It then sets the OBContext based on these IDs and logs the user ID.
-   * It retrieves the Role object based on the role ID and returns the DefinedwebhookRole object that matches the provided DefinedWebHook and the retrieved Role.
-   * If an exception occurs during the execution of the method, it logs the error and returns null.
+   * Returns the maximum size of the body, rejecting right away requests whose declared length is
+   * already bigger
    *
    * @param request
-   *     The HttpServletRequest object that contains the request the client has made of the servlet.
-   * @param token
-   *     The token string to decode and use for setting the OBContext.
-   * @param webHook
-   *     The DefinedWebHook object to match in the getDefinedwebhookRole method.
-   * @return The matching DefinedwebhookRole object, or null if no match is found, an exception occurs, or the token is not valid.
+   *     Http request object
+   * @return Maximum number of characters of the body
+   * @throws WebhookPayloadTooLargeException
+   *     If the declared length of the body is bigger than allowed
    */
-  private DefinedwebhookRole checkRoleSecurity(HttpServletRequest request, String token,
-      DefinedWebHook webHook) {
-    try {
-      DecodedJWT decodedToken = SecureWebServicesUtils.decodeToken(token);
-      String userId = decodedToken.getClaim("user").asString();
-      String roleId = decodedToken.getClaim("role").asString();
-      String orgId = decodedToken.getClaim("organization").asString();
-      String warehouseId = decodedToken.getClaim("warehouse").asString();
-      String clientId = decodedToken.getClaim("client").asString();
-      if (userId == null || userId.isEmpty() || roleId == null || roleId.isEmpty() || orgId == null || orgId.isEmpty() || warehouseId == null || warehouseId.isEmpty() || clientId == null || clientId.isEmpty()) {
-        throw new OBException("SWS - Token is not valid");
-      }
-      log.debug("SWS accessed by userId {}", userId);
-      OBContext.setOBContext(
-          SecureWebServicesUtils.createContext(userId, roleId, orgId, warehouseId, clientId));
-      OBContext.setOBContextInSession(request, OBContext.getOBContext());
-      SessionInfo.setUserId(userId);
-      SessionInfo.setProcessType("WS");
-      SessionInfo.setProcessId("DAL");
-
-      Role role = OBDal.getInstance().get(Role.class, roleId);
-
-      return getDefinedwebhookRole(webHook, role);
-    } catch (Exception e) {
-      log.debug("Error decoding token", e);
+  private static long getMaxBodySize(HttpServletRequest request)
+      throws WebhookPayloadTooLargeException {
+    long maxSize = WebhookConfig.getLong("webhooks.body.maxSize", 10L * 1024 * 1024);
+    if (maxSize >= 0 && request.getContentLengthLong() > maxSize) {
+      throw bodyTooLarge();
     }
-    return null;
+    return maxSize;
+  }
+
+  private static WebhookPayloadTooLargeException bodyTooLarge() {
+    long maxSize = WebhookConfig.getLong("webhooks.body.maxSize", 10L * 1024 * 1024);
+    var message = WebhookMessages.format("smfwhe_bodyTooLarge", maxSize);
+    log.error(message);
+    return new WebhookPayloadTooLargeException(message);
   }
 
   /**
-   * This method retrieves a DefinedwebhookRole object based on the provided DefinedWebHook and Role objects.
-   * It sets the OBContext to admin mode to bypass security checks, then creates a criteria query on the DefinedwebhookRole class.
-   * The query filters for a DefinedwebhookRole object that has the same DefinedWebHook and Role as the provided ones.
-   * If such a DefinedwebhookRole object is found, it is returned. Otherwise, null is returned.
-   * If an exception occurs during the execution of the method, it is logged and null is returned.
-   * The OBContext is restored to its previous mode at the end of the method, regardless of whether an exception occurred or not.
+   * This method checks the security of the role based on the JWT claims of the principal.
+   * If the principal has no complete JWT claims, access is denied.
+   * Otherwise it sets the OBContext based on the claims and checks whether the role of the JWT has been
+   * granted access to the webhook.
    *
+   * @param request
+   *     The HttpServletRequest object that contains the request the client has made of the servlet.
+   * @param principal
+   *     The principal resolved from the request credentials.
    * @param webHook
-   *     The DefinedWebHook object to match in the query.
-   * @param role
-   *     The Role object to match in the query.
-   * @return The matching DefinedwebhookRole object, or null if no match is found or an exception occurs.
+   *     The webhook definition to check.
+   * @return true if the role of the JWT is allowed to call the webhook, false otherwise.
    */
-  private DefinedwebhookRole getDefinedwebhookRole(DefinedWebHook webHook, Role role) {
-    DefinedwebhookRole definedwebhookRole = null;
+  private boolean checkRoleSecurity(HttpServletRequest request, WebhookPrincipal principal,
+      WebhookDefinition webHook) {
+    var claims = principal.getClaims();
+    if (claims == null || !setClaimsContext(request, claims)) {
+      return false;
+    }
+    return WebhookAccessIndex.getInstance()
+        .isRoleAllowed(webHook.getId(), claims.getRoleOrdinal());
+  }
 
+  /**
+   * Sets the OBContext of the user, role and organization of the JWT claims. The context is only
+   * stored in the HTTP session when the caller already has one, so stateless API calls do not
+   * create a session on every request.
+   *
+   * @param request
+   *     The HttpServletRequest object that contains the request the client has made of the servlet.
+   * @param claims
+   *     Claims of a verified JWT
+   * @return true if the context could be created
+   */
+  private static boolean setClaimsContext(HttpServletRequest request,
+      WebhookPrincipal.Claims claims) {
     try {
-      OBContext.setAdminMode();
-      definedwebhookRole = (DefinedwebhookRole) OBDal.getInstance()
-          .createCriteria(DefinedwebhookRole.class)
-          .setFilterOnReadableClients(false)
-          .setFilterOnReadableOrganization(false)
-          .add(Restrictions.eq(DefinedwebhookRole.PROPERTY_SMFWHEDEFINEDWEBHOOK, webHook))
-          .add(Restrictions.eq(DefinedwebhookRole.PROPERTY_ROLE, role))
-          .setMaxResults(1)
-          .uniqueResult();
-      return definedwebhookRole;
+      log.debug("SWS accessed by userId {}", claims.getUserId());
+      OBContext.setOBContext(
+          SecureWebServicesUtils.createContext(claims.getUserId(), claims.getRoleId(),
+              claims.getOrgId(), claims.getWarehouseId(), claims.getClientId()));
+      if (request.getSession(false) != null) {
+        OBContext.setOBContextInSession(request, OBContext.getOBContext());
+      }
+      SessionInfo.setUserId(claims.getUserId());
+      SessionInfo.setProcessType("WS");
+      SessionInfo.setProcessId("DAL");
+      return true;
     } catch (Exception e) {
-      log.error("Error getting definedwebhookRole", e);
-      return null;
-    } finally {
-      OBContext.restorePreviousMode();
+      log.debug("Error creating context from token", e);
     }
+    return false;
   }
 
   /**
@@ -462,6 +1062,14 @@ public class WebhookServiceHandler extends HttpBaseServlet {
         handleDocs(request, response);
         return;
       }
+      if (StringUtils.startsWith(request.getPathInfo(), JOBS_PATH)) {
+        handleJobStatus(request, response);
+        return;
+      }
+      if (StringUtils.equals(request.getPathInfo(), METRICS_PATH)) {
+        handleMetrics(request, response);
+        return;
+      }
       handleRequest(HttpMethod.GET, request, response);
     } catch (IOException | JSONException e) {
       response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
@@ -469,11 +1077,79 @@ public class WebhookServiceHandler extends HttpBaseServlet {
     }
   }
 
+  /**
+   * Writes the metrics of the webhook calls in the Prometheus text format. The same value of the
+   * webhooks.metrics.apikey property must be sent in the apikey param; the endpoint is not found
+   * while the property is not set, as the metrics name every webhook and token.
+   *
+   * @param request
+   *     Http request object
+   * @param response
+   *     Http response object
+   */
+  private void handleMetrics(HttpServletRequest request, HttpServletResponse response)
+      throws IOException {
+    String apikey = WebhookConfig.getString("webhooks.metrics.apikey", null);
+    if (StringUtils.isEmpty(apikey)) {
+      response.setStatus(HttpStatus.SC_NOT_FOUND);
+      return;
+    }
+    if (!MessageDigest.isEqual(
+        apikey.getBytes(StandardCharsets.UTF_8),
+        StringUtils.defaultString(request.getParameter("apikey")).getBytes(StandardCharsets.UTF_8))) {
+      response.setStatus(HttpStatus.SC_UNAUTHORIZED);
+      return;
+    }
+    response.setStatus(HttpStatus.SC_OK);
+    response.setHeader(CONTENT_TYPE, METRICS_CONTENT_TYPE);
+    response.setHeader(CACHE_CONTROL, "no-store");
+    PrintWriter out = response.getWriter();
+    WebhookMetrics.getInstance().write(out);
+    out.flush();
+  }
+
   private void handleDocs(HttpServletRequest request, HttpServletResponse response) throws JSONException {
     String hooklist = request.getParameter("hooks");
     String[] hooks = StringUtils.isNotEmpty(hooklist) ? hooklist.split(",") : null;
     List<String> hookList = hooks != null ? List.of(hooks) : new ArrayList<>();
+    String host = request.getParameter("host");
+    if (StringUtils.isEmpty(host)) {
+      host = OBPropertiesProvider.getInstance().getOpenbravoProperties().getProperty("ETENDO_HOST");
+    }
+
+    try {
+      long version = WebhookRegistry.getInstance().getVersion();
+      String key = WebhookDocsCache.key(hookList, host);
+      WebhookDocsCache.Document document = WebhookDocsCache.getInstance().get(key, version);
+      if (document == null) {
+        document = new WebhookDocsCache.Document(version, generateDocs(hookList, host));
+        WebhookDocsCache.getInstance().put(key, document);
+      }
+
+      boolean compressed = WebhookDocsCache.acceptsGzip(request.getHeader(ACCEPT_ENCODING));
+      response.setHeader(ETAG, document.getETag(compressed));
+      response.setHeader(VARY, ACCEPT_ENCODING);
+      response.setHeader(CACHE_CONTROL, "no-cache");
+      if (document.matches(request.getHeader(IF_NONE_MATCH))) {
+        response.setStatus(HttpStatus.SC_NOT_MODIFIED);
+        return;
+      }
+      response.setStatus(HttpStatus.SC_OK);
+      response.setHeader(CONTENT_TYPE, APPLICATION_JSON.getMimeType());
+      if (compressed) {
+        response.setHeader(CONTENT_ENCODING, GZIP);
+        response.setContentLength(document.getGzip().length);
+        response.getOutputStream().write(document.getGzip());
+      } else {
+        PrintWriter out = response.getWriter();
+        out.print(document.getJson());
+      }
+    } catch (IOException e) {
+      log.error("Error sending response", e);
+    }
+  }
 
+  private String generateDocs(List<String> hookList, String host) throws JSONException {
     try {
       OBContext.setAdminMode();
       JSONArray infoWebhooksArray = new JSONArray();
@@ -492,9 +1168,13 @@ public class WebhookServiceHandler extends HttpBaseServlet {
 
         JSONArray infoParams = new JSONArray();
         for (DefinedWebhookParam param : webhook.getSmfwheDefinedwebhookParamList()) {
+          WebhookParamType type = WebhookParamType.of(param.getParamType());
           JSONObject paramInfo = new JSONObject();
           paramInfo.put("name", param.getName());
-          paramInfo.put("type", "string");
+          paramInfo.put("type", type.getSchemaType());
+          if (type.getSchemaFormat() != null) {
+            paramInfo.put("format", type.getSchemaFormat());
+          }
           paramInfo.put("required", param.isRequired());
           paramInfo.put("description", param.getDescription());
           infoParams.put(paramInfo);
@@ -503,20 +1183,8 @@ public class WebhookServiceHandler extends HttpBaseServlet {
         info.put("params", infoParams);
         infoWebhooksArray.put(info);
       }
-      OBPropertiesProvider prop = OBPropertiesProvider.getInstance();
-      String host = request.getParameter("host");
-      if (StringUtils.isEmpty(host)) {
-        host = prop.getOpenbravoProperties().getProperty("ETENDO_HOST");
-      }
-      String jsonOpenAPI = OpenAPISpecUtils.generateJSONOpenAPISpec(
+      return OpenAPISpecUtils.generateJSONOpenAPISpec(
           host, "Webhooks API", "API to execute EtendoERP webhooks", "1.0.0", "/webhooks", infoWebhooksArray);
-
-      response.setStatus(HttpStatus.SC_OK);
-      response.setHeader(CONTENT_TYPE, APPLICATION_JSON.getMimeType());
-      PrintWriter out = response.getWriter();
-      out.print(jsonOpenAPI);
-    } catch (IOException e) {
-      log.error("Error sending response", e);
     } finally {
       OBContext.restorePreviousMode();
     }
@@ -538,6 +1206,10 @@ public class WebhookServiceHandler extends HttpBaseServlet {
   @Override
   public void doPost(HttpServletRequest request, HttpServletResponse response) {
     try {
+      if (StringUtils.equals(request.getPathInfo(), BATCH_PATH)) {
+        handleBatch(request, response);
+        return;
+      }
       handleRequest(HttpMethod.POST, request, response);
     } catch (IOException e) {
       response.setStatus(HttpStatus.SC_INTERNAL_SERVER_ERROR);
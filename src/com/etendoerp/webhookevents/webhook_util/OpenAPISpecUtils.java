@@ -14,6 +14,7 @@ public class OpenAPISpecUtils {
   public static final String SECURE_WS_TOKEN = "secureWSToken";
   public static final String PROP_NAME = "name";
   public static final String PROP_TYPE = "type";
+  public static final String PROP_FORMAT = "format";
   public static final String PROP_REQUIRED = "required";
   public static final String PROP_DESCRIPTION = "description";
 
@@ -151,7 +152,14 @@ public class OpenAPISpecUtils {
       for (int j = 0; j < params.length(); j++) {
         JSONObject param = params.getJSONObject(j);
         JSONObject paramInfo = new JSONObject();
-        paramInfo.put(PROP_TYPE, param.getString(PROP_TYPE));
+        String type = param.getString(PROP_TYPE);
+        paramInfo.put(PROP_TYPE, type);
+        if (param.has(PROP_FORMAT)) {
+          paramInfo.put(PROP_FORMAT, param.getString(PROP_FORMAT));
+        }
+        if (StringUtils.equals(type, "array")) {
+          paramInfo.put("items", new JSONObject());
+        }
         paramInfo.put(PROP_DESCRIPTION, param.optString(PROP_DESCRIPTION, ""));
         properties.put(param.getString(PROP_NAME), paramInfo);
 
@@ -17,18 +17,13 @@
 
 package com.etendoerp.webhookevents.webhook_util;
 
-import java.io.BufferedReader;
-import java.io.DataOutputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 
 import javax.enterprise.inject.Any;
-import javax.net.ssl.HttpsURLConnection;
 
 import com.etendoerp.webhookevents.interfaces.DynamicEventHandler;
 import com.etendoerp.webhookevents.interfaces.DynamicNode;
@@ -50,11 +45,8 @@ import org.openbravo.dal.core.DalUtil;
 import org.openbravo.dal.core.OBContext;
 import org.openbravo.dal.service.OBCriteria;
 import org.openbravo.dal.service.OBDal;
-import org.openbravo.database.ConnectionProvider;
-import org.openbravo.erpCommon.utility.Utility;
 import org.openbravo.model.ad.datamodel.Table;
 import org.openbravo.model.common.enterprise.Organization;
-import org.openbravo.service.db.DalConnectionProvider;
 
 import com.etendoerp.webhookevents.annotation.InjectHook;
 import com.etendoerp.webhookevents.data.Arguments;
@@ -73,8 +65,6 @@ public class WebHookUtil {
   private WebHookUtil() {
   }
 
-  private static final String LANGUAGE = OBContext.getOBContext().getLanguage().getLanguage();
-  private static final ConnectionProvider conn = new DalConnectionProvider(false);
   private static final Class<ComputedFunction> computedFunction = ComputedFunction.class;
   private static final Class<DynamicNode> dynamicNode = DynamicNode.class;
   public static final String TABLE = "table";
@@ -178,25 +168,52 @@ public class WebHookUtil {
   }
 
   /**
-   * Call the all webhook defined in this event
+   * Call the all webhook defined in this event. The events are sent to the webhooks in parallel,
+   * up to webhooks.fanout.maxParallel requests at a time (16 by default), and a webhook failing
+   * does not prevent the delivery to the rest.
    *
    * @param event  Events
    * @param bob    BaseOBObject to generate data (JSON or XML)
    * @param logger Info logger in log
-   * @throws OBException
+   * @throws OBException If any webhook failed, once all of them were called. The failure of the
+   *                     first webhook is the cause and the rest are added as suppressed
    */
   public static void callWebHook(Events event, BaseOBObject bob, Logger logger) throws OBException {
-    OBCriteria<Webhook> cWebhook = OBDal.getInstance().createCriteria(Webhook.class);
-    cWebhook.add(Restrictions.eq(Webhook.PROPERTY_SMFWHEEVENTS, event));
-    for (Webhook hook : cWebhook.list()) {
-      try {
-        if (BooleanUtils.isTrue(hook.isActive())) {
-          sendEvent(hook, bob, logger);
-        }
-      } catch (Exception e) {
-        throw new OBException(e);
+    List<String> messages = new ArrayList<>();
+    List<Exception> errors = new ArrayList<>();
+    for (WebhookDeliveryResult result : deliverWebHook(event, bob, logger)) {
+      if (!result.isSuccessful()) {
+        messages.add(WebhookMessages.format("smfwhe_WebhookDeliveryFailed",
+            result.getWebhook().getName(), event.getName(), result.getError().getMessage()));
+        errors.add(result.getError());
       }
     }
+    if (!errors.isEmpty()) {
+      OBException failure = new OBException(String.join("\n", messages), errors.get(0));
+      errors.stream().skip(1).forEach(failure::addSuppressed);
+      throw failure;
+    }
+  }
+
+  /**
+   * Call the all webhook defined in this event, as {@link #callWebHook(Events, BaseOBObject,
+   * Logger)} does, and return the outcome of each one instead of failing.
+   *
+   * @param event  Events
+   * @param bob    BaseOBObject to generate data (JSON or XML)
+   * @param logger Info logger in log
+   * @return Return the outcome of the delivery to each active webhook
+   */
+  public static List<WebhookDeliveryResult> deliverWebHook(Events event, BaseOBObject bob,
+      Logger logger) {
+    WebhookDispatcher dispatcher = new WebhookDispatcher(
+        WebhookConfig.getInt("webhooks.fanout.maxParallel", 16), logger);
+    List<CompletableFuture<WebhookDeliveryResult>> deliveries = dispatcher.dispatch(event, bob);
+    List<WebhookDeliveryResult> results = new ArrayList<>();
+    for (CompletableFuture<WebhookDeliveryResult> delivery : deliveries) {
+      results.add(delivery.join());
+    }
+    return results;
   }
 
   /**
@@ -208,19 +225,30 @@ public class WebHookUtil {
    * @throws Exception
    */
   public static void sendEvent(Webhook hook, BaseOBObject bob, Logger logger) throws Exception {
+    WebhookHttpClient.Request request = prepareEvent(hook, bob, logger);
+    WebhookDispatcher.send(request, logger);
+  }
+
+  /**
+   * Build the request to url to notify defined in webhook
+   *
+   * @param hook   Webhook defined in events
+   * @param bob    BaseOBObject to generate data (JSON or XML)
+   * @param logger Info logger in log
+   * @return Return the request to send
+   * @throws Exception
+   */
+  public static WebhookHttpClient.Request prepareEvent(Webhook hook, BaseOBObject bob,
+      Logger logger) throws Exception {
 
     OBCriteria<UrlPathParam> cUrlPathParam = OBDal.getInstance().createCriteria(UrlPathParam.class);
     cUrlPathParam.add(Restrictions.eq(UrlPathParam.PROPERTY_TYPEPARAMETER, "P"));
 
     String url = generateUrlParameter(cUrlPathParam.list(), hook.getUrlnotify(), bob,
         logger).toLowerCase();
-    URL obj = new URL(url);
-    HttpURLConnection con = getConnection(url, obj);
-    // Setting basic post request
     cUrlPathParam = OBDal.getInstance().createCriteria(UrlPathParam.class);
     cUrlPathParam.add(Restrictions.eq(UrlPathParam.PROPERTY_TYPEPARAMETER, "H"));
-    con.setRequestMethod(hook.getSmfwheEvents().getMethod());
-    setHeaderConnection(con, cUrlPathParam.list(), logger, bob);
+    Map<String, String> headers = getHeaders(cUrlPathParam.list(), logger, bob);
 
     // Verify if can data is json or xml
     String sendData = "";
@@ -231,28 +259,8 @@ public class WebHookUtil {
       sendData = getXMLToSend(hook, bob, logger);
     }
 
-    // Send post request
-    con.setDoOutput(true);
-    DataOutputStream wr = new DataOutputStream(con.getOutputStream());
-    wr.writeBytes(sendData);
-    wr.flush();
-    wr.close();
-
-    int responseCode = con.getResponseCode();
-    logger.debug("nSending " + hook.getSmfwheEvents().getMethod() + "request to URL : " + url);
-    logger.debug("Post Data : " + sendData);
-    logger.debug("Response Code : " + responseCode);
-
-    BufferedReader in = new BufferedReader(new InputStreamReader(con.getInputStream()));
-    String output;
-    StringBuilder response = new StringBuilder();
-    while ((output = in.readLine()) != null) {
-      response.append(output);
-    }
-    in.close();
-
-    // printing result from response
-    logger.debug(response.toString());
+    return new WebhookHttpClient.Request(hook.getSmfwheEvents().getMethod(), url, headers,
+        sendData);
   }
 
   private static String getXMLToSend(Webhook hook, BaseOBObject bob, Logger logger) throws Exception {
@@ -282,19 +290,6 @@ public class WebHookUtil {
     return sendData;
   }
 
-  private static HttpURLConnection getConnection(String url, URL obj) throws IOException {
-    HttpURLConnection con = null;
-    if (url.contains("http")) {
-      con = (HttpURLConnection) obj.openConnection();
-    } else if (url.contains("https")) {
-      con = (HttpsURLConnection) obj.openConnection();
-    }
-    if (con == null) {
-      throw new OBException("Invalid URL: " + url);
-    }
-    return con;
-  }
-
   /**
    * Generate a JSON data parameter, take a StandardParameter list and return json with
    * StandardParameter set
@@ -317,8 +312,7 @@ public class WebHookUtil {
         return staticValues;
       }
     } catch (Exception e) {
-      String message = String.format(Utility.messageBD(conn, "smfwhe_errorGenerateJson", LANGUAGE),
-          bob.getIdentifier());
+      String message = WebhookMessages.format("smfwhe_errorGenerateJson", bob.getIdentifier());
       logger.error(message, e);
       throw new OBException(message);
     }
@@ -418,8 +412,7 @@ public class WebHookUtil {
           }
         }
       } catch (Exception e) {
-        String message = String.format(
-            Utility.messageBD(conn, "smfwhe_errorReplacePathParameter", LANGUAGE), param.getName());
+        String message = WebhookMessages.format("smfwhe_errorReplacePathParameter", param.getName());
         logger.error(message, e);
         throw new OBException(message);
       }
@@ -510,8 +503,7 @@ public class WebHookUtil {
         }
       }
     } catch (Exception e) {
-      String message = String.format(
-          Utility.messageBD(conn, "smfwhe_errorParserParameter", LANGUAGE), propertyError);
+      String message = WebhookMessages.format("smfwhe_errorParserParameter", propertyError);
       logger.error(message, e);
       throw new OBException(message);
     }
@@ -583,9 +575,7 @@ public class WebHookUtil {
             getArgumentsForMethod(recordParam.getSmfwheArgsList(), bob, logger);
         result = setNameMethod.invoke(dog, params); // pass arg
       } else {
-        message = String.format(
-            Utility.messageBD(conn, "smfwhe_errorParserClassMethodName", LANGUAGE),
-            classMethodName);
+        message = WebhookMessages.format("smfwhe_errorParserClassMethodName", classMethodName);
         throw new OBException(message);
       }
     } catch (Exception e) {
@@ -608,13 +598,43 @@ public class WebHookUtil {
     return dog.getClass().getMethod(methodName, HashMap.class);
   }
 
+  /**
+   * Computes the headers to send to a webhook
+   *
+   * @param lUrlPathParam List the UrlPathParam of type header
+   * @param logger        Info logger in log
+   * @param bob           BaseOBObject to get the events defined
+   * @return Return the header values by name, in the order of the params
+   * @throws OBException
+   */
+  public static Map<String, String> getHeaders(List<UrlPathParam> lUrlPathParam, Logger logger,
+      BaseOBObject bob) throws OBException {
+    Map<String, String> headers = new LinkedHashMap<>();
+    String result = "";
+    for (UrlPathParam param : lUrlPathParam) {
+      if (Constants.TYPE_VALUE_STRING.equals(param.getTypeValue())) {
+        result = replaceValueData(param.getValue(), bob, logger);
+      } else if (Constants.TYPE_VALUE_PROPERTY.equals(param.getTypeValue())) {
+        result = DalUtil.getValueFromPath(bob, param.getProperty()).toString();
+      } else if (Constants.TYPE_VALUE_COMPUTED.equals(param.getTypeValue())) {
+        // call the function
+        result = getValueExecuteMethod(param, bob, logger, computedFunction).toString();
+      }
+      headers.put(param.getName(), result);
+    }
+    return headers;
+  }
+
   /**
    * @param con           HttpURLConnection
    * @param lUrlPathParam List the UrlPathParam
    * @param logger        Info logger in log
    * @param bob           BaseOBObject to get the events defined
    * @throws Exception
+   * @deprecated Events are sent by {@link WebhookHttpClient}, use
+   *     {@link #getHeaders(List, Logger, BaseOBObject)}
    */
+  @Deprecated
   public static void setHeaderConnection(HttpURLConnection con, List<UrlPathParam> lUrlPathParam,
       Logger logger, BaseOBObject bob) throws OBException {
     String result = "";
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import com.etendoerp.webhookevents.exceptions.WebhookCircuitOpenException;
+
+/**
+ * Circuit breakers of the destinations of the webhooks, keyed by scheme, host and port, so the
+ * webhooks sharing a failing server stop sending to it together.
+ * <p>
+ * A breaker starts closed and keeps the outcome of the last deliveries. When enough of them
+ * failed, it opens and the deliveries to the destination are deferred without being attempted.
+ * Once the open period ends, it becomes half-open and lets a few trial deliveries through: if all
+ * of them succeed it closes again, and if any fails it opens for another period. Deliveries
+ * deferred while all the trials are in progress are retried after the first delay of the
+ * {@link WebhookRetryPolicy}, since the breaker may close as soon as the trials finish. Connection
+ * errors, timeouts, HTTP 429 and server errors count as failures, other statuses mean the server
+ * is up.
+ * <p>
+ * The breakers are tuned with these properties of Openbravo.properties:
+ * <ul>
+ * <li>{@code webhooks.breaker.enabled}: true by default.</li>
+ * <li>{@code webhooks.breaker.windowSize}: number of last deliveries whose failure rate is
+ * checked, 20 by default.</li>
+ * <li>{@code webhooks.breaker.minCalls}: deliveries needed before the breaker can open, 10 by
+ * default.</li>
+ * <li>{@code webhooks.breaker.failureRate}: percentage of failed deliveries that opens the
+ * breaker, 50 by default.</li>
+ * <li>{@code webhooks.breaker.openDuration}: milliseconds the breaker stays open, 60000 by
+ * default.</li>
+ * <li>{@code webhooks.breaker.halfOpenCalls}: trial deliveries of a half-open breaker, 3 by
+ * default.</li>
+ * </ul>
+ */
+public class WebhookCircuitBreaker {
+  private static final Logger log = LogManager.getLogger();
+  private static final WebhookCircuitBreaker INSTANCE = new WebhookCircuitBreaker(
+      WebhookConfig.getBoolean("webhooks.breaker.enabled", true),
+      WebhookConfig.getInt("webhooks.breaker.windowSize", 20),
+      WebhookConfig.getInt("webhooks.breaker.minCalls", 10),
+      WebhookConfig.getInt("webhooks.breaker.failureRate", 50),
+      WebhookConfig.getLong("webhooks.breaker.openDuration", 60000),
+      WebhookConfig.getInt("webhooks.breaker.halfOpenCalls", 3),
+      WebhookConfig.getLong("webhooks.delivery.retryDelay", 30000),
+      System::currentTimeMillis);
+
+  /**
+   * States of a breaker
+   */
+  public enum State {
+    /** Deliveries are attempted and their outcome recorded */
+    CLOSED,
+    /** Deliveries are deferred */
+    OPEN,
+    /** A few trial deliveries are attempted */
+    HALF_OPEN
+  }
+
+  private final Map<String, Breaker> breakers = new ConcurrentHashMap<>();
+  private final boolean enabled;
+  private final int windowSize;
+  private final int minCalls;
+  private final int failureRate;
+  private final long openDuration;
+  private final int halfOpenCalls;
+  private final long trialRetryDelay;
+  private final LongSupplier clock;
+
+  WebhookCircuitBreaker(boolean enabled, int windowSize, int minCalls, int failureRate,
+      long openDuration, int halfOpenCalls, long trialRetryDelay, LongSupplier clock) {
+    this.enabled = enabled;
+    this.windowSize = Math.max(1, windowSize);
+    this.minCalls = Math.max(1, Math.min(minCalls, this.windowSize));
+    this.failureRate = failureRate;
+    this.openDuration = openDuration;
+    this.halfOpenCalls = Math.max(1, halfOpenCalls);
+    this.trialRetryDelay = Math.max(1, trialRetryDelay);
+    this.clock = clock;
+  }
+
+  public static WebhookCircuitBreaker getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * Returns the destination of a URL, used as the key of its breaker.
+   *
+   * @param url
+   *     URL of a webhook
+   * @return The scheme, host and port of the URL, or the URL itself if it cannot be parsed
+   */
+  public static String getDestination(String url) {
+    try {
+      URI uri = new URI(url);
+      if (uri.getScheme() == null || uri.getHost() == null) {
+        return url;
+      }
+      String scheme = uri.getScheme().toLowerCase(Locale.ROOT);
+      int port = uri.getPort() != -1 ? uri.getPort() : "https".equals(scheme) ? 443 : 80;
+      return scheme + "://" + uri.getHost().toLowerCase(Locale.ROOT) + ":" + port;
+    } catch (URISyntaxException e) {
+      return url;
+    }
+  }
+
+  /**
+   * Checks whether a delivery to a destination can be attempted. Every delivery allowed must
+   * record its outcome with {@link #record(String, boolean)}, or be released with
+   * {@link #release(String)} if it was not sent.
+   *
+   * @param destination
+   *     Destination of the delivery
+   * @throws WebhookCircuitOpenException
+   *     If the breaker of the destination is open, or half-open with all its trial deliveries in
+   *     progress
+   */
+  public void acquire(String destination) throws WebhookCircuitOpenException {
+    if (enabled) {
+      breakers.computeIfAbsent(destination, d -> new Breaker()).acquire(destination);
+    }
+  }
+
+  /**
+   * Records the outcome of a delivery allowed by {@link #acquire(String)}.
+   *
+   * @param destination
+   *     Destination of the delivery
+   * @param failure
+   *     True if the destination failed, as told by {@link #isFailure(int, Throwable)}
+   */
+  public void record(String destination, boolean failure) {
+    if (enabled) {
+      breakers.computeIfAbsent(destination, d -> new Breaker()).record(destination, failure);
+    }
+  }
+
+  /**
+   * Releases a delivery allowed by {@link #acquire(String)} that failed before reaching the
+   * destination, such as a request with an invalid URL. It frees its trial slot without counting
+   * as a success or a failure of the destination.
+   *
+   * @param destination
+   *     Destination of the delivery
+   */
+  public void release(String destination) {
+    if (enabled) {
+      Breaker breaker = breakers.get(destination);
+      if (breaker != null) {
+        breaker.release();
+      }
+    }
+  }
+
+  /**
+   * @param status
+   *     HTTP status of the response, ignored if there is an error
+   * @param error
+   *     Error of the delivery, or null if a response was received
+   * @return True if the outcome means that the destination is failing
+   */
+  public static boolean isFailure(int status, Throwable error) {
+    return error != null || status == 429 || status >= 500;
+  }
+
+  /**
+   * @param destination
+   *     Destination of the deliveries
+   * @return The current state of the breaker of the destination
+   */
+  public State getState(String destination) {
+    Breaker breaker = breakers.get(destination);
+    return breaker != null ? breaker.getState() : State.CLOSED;
+  }
+
+  /**
+   * Closes every breaker and discards the recorded outcomes.
+   */
+  public void reset() {
+    breakers.clear();
+  }
+
+  private class Breaker {
+    private final boolean[] window = new boolean[windowSize];
+    private int calls;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int trials;
+    private int trialSuccesses;
+
+    synchronized void acquire(String destination) throws WebhookCircuitOpenException {
+      long now = clock.getAsLong();
+      if (state == State.OPEN && now >= openUntil) {
+        state = State.HALF_OPEN;
+        trials = 0;
+        trialSuccesses = 0;
+      }
+      if (state == State.OPEN || (state == State.HALF_OPEN && trials >= halfOpenCalls)) {
+        long retryAt = state == State.OPEN ? openUntil : now + trialRetryDelay;
+        throw new WebhookCircuitOpenException(WebhookMessages.format("smfwhe_circuitOpen",
+            destination, Instant.ofEpochMilli(retryAt)), retryAt);
+      }
+      if (state == State.HALF_OPEN) {
+        trials++;
+      }
+    }
+
+    synchronized void record(String destination, boolean failure) {
+      if (state == State.HALF_OPEN) {
+        if (failure) {
+          open(destination);
+        } else if (++trialSuccesses >= halfOpenCalls) {
+          log.info("Circuit breaker of {} closed", destination);
+          state = State.CLOSED;
+          calls = 0;
+          next = 0;
+          failures = 0;
+        }
+        return;
+      }
+      if (state == State.OPEN) {
+        // Deliveries started before the breaker opened
+        return;
+      }
+      if (calls == windowSize) {
+        failures -= window[next] ? 1 : 0;
+      } else {
+        calls++;
+      }
+      window[next] = failure;
+      failures += failure ? 1 : 0;
+      next = (next + 1) % windowSize;
+      if (calls >= minCalls && failures * 100L >= (long) failureRate * calls) {
+        open(destination);
+      }
+    }
+
+    synchronized void release() {
+      if (state == State.HALF_OPEN && trials > trialSuccesses) {
+        trials--;
+      }
+    }
+
+    synchronized State getState() {
+      return state;
+    }
+
+    private void open(String destination) {
+      log.warn("Circuit breaker of {} opened for {} ms", destination, openDuration);
+      state = State.OPEN;
+      openUntil = clock.getAsLong() + openDuration;
+    }
+  }
+}
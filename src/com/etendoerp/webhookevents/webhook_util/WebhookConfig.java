@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.util.Properties;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.session.OBPropertiesProvider;
+
+/**
+ * Reads the webhook tuning settings from Openbravo.properties. Missing or invalid values fall back
+ * to the given default, so none of the settings is mandatory.
+ */
+public class WebhookConfig {
+  private static final Logger log = LogManager.getLogger();
+
+  private WebhookConfig() {
+  }
+
+  /**
+   * Returns the raw value of a property.
+   *
+   * @param property
+   *     Property name
+   * @param defaultValue
+   *     Value returned when the property is not defined
+   * @return The property value or the default value
+   */
+  public static String getString(String property, String defaultValue) {
+    try {
+      Properties properties = OBPropertiesProvider.getInstance().getOpenbravoProperties();
+      String value = properties != null ? properties.getProperty(property) : null;
+      return StringUtils.isBlank(value) ? defaultValue : value.trim();
+    } catch (RuntimeException e) {
+      log.debug("Cannot read property {}", property, e);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Returns the value of a numeric property.
+   *
+   * @param property
+   *     Property name
+   * @param defaultValue
+   *     Value returned when the property is not defined or is not a number
+   * @return The property value or the default value
+   */
+  public static long getLong(String property, long defaultValue) {
+    String value = getString(property, null);
+    if (value == null) {
+      return defaultValue;
+    }
+    try {
+      return Long.parseLong(value);
+    } catch (NumberFormatException e) {
+      log.warn("Invalid value '{}' for property {}, using {}", value, property, defaultValue);
+      return defaultValue;
+    }
+  }
+
+  /**
+   * Returns the value of a numeric property.
+   *
+   * @param property
+   *     Property name
+   * @param defaultValue
+   *     Value returned when the property is not defined or is not a number
+   * @return The property value or the default value
+   */
+  public static int getInt(String property, int defaultValue) {
+    return (int) getLong(property, defaultValue);
+  }
+
+  /**
+   * Returns the value of a boolean property.
+   *
+   * @param property
+   *     Property name
+   * @param defaultValue
+   *     Value returned when the property is not defined
+   * @return The property value or the default value
+   */
+  public static boolean getBoolean(String property, boolean defaultValue) {
+    String value = getString(property, null);
+    return value == null ? defaultValue : Boolean.parseBoolean(value);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.log4j.Logger;
+import org.openbravo.base.structure.BaseOBObject;
+
+import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.data.Webhook;
+
+/**
+ * Delivers the queued events in two stages. The payloads are rendered in the thread that submits
+ * the events, which is the only one using the DAL, and the HTTP exchanges run asynchronously, up
+ * to a bounded number of requests in flight. The submitting thread only waits when that window
+ * is full.
+ * <p>
+ * The finished deliveries are collected by {@link #poll()} and {@link #drain()}, so their outcome
+ * is recorded in the queue from the submitting thread too.
+ */
+public class WebhookDeliveryPipeline {
+  private final WebhookDispatcher dispatcher;
+  private final Queue<Delivery> completed = new ConcurrentLinkedQueue<>();
+  private final Set<CompletableFuture<Void>> pending = ConcurrentHashMap.newKeySet();
+
+  /**
+   * @param maxInFlight
+   *     Maximum number of requests waiting for their response
+   * @param logger
+   *     Info logger in log
+   */
+  public WebhookDeliveryPipeline(int maxInFlight, Logger logger) {
+    this.dispatcher = new WebhookDispatcher(maxInFlight, logger);
+  }
+
+  /**
+   * Renders the payloads of an event for all its active webhooks and hands them to the HTTP
+   * stage.
+   *
+   * @param queueEntryId
+   *     Id of the queue entry of the event
+   * @param event
+   *     Event to send
+   * @param bob
+   *     BaseOBObject to generate data (JSON or XML)
+   */
+  public void submit(String queueEntryId, Events event, BaseOBObject bob) {
+    submit(queueEntryId, event, bob, null);
+  }
+
+  /**
+   * Renders the payload of an event for one of its webhooks and hands it to the HTTP stage.
+   *
+   * @param queueEntryId
+   *     Id of the queue entry of the event
+   * @param event
+   *     Event to send
+   * @param bob
+   *     BaseOBObject to generate data (JSON or XML)
+   * @param webhook
+   *     Webhook to send the event to, or null to send it to all the active webhooks of the event.
+   *     Nothing is sent if the webhook is not active.
+   */
+  public void submit(String queueEntryId, Events event, BaseOBObject bob, Webhook webhook) {
+    String eventName = event.getName();
+    List<CompletableFuture<WebhookDeliveryResult>> deliveries;
+    if (webhook == null) {
+      deliveries = dispatcher.dispatch(event, bob);
+    } else if (BooleanUtils.isTrue(webhook.isActive())) {
+      deliveries = List.of(dispatcher.dispatch(webhook, bob));
+    } else {
+      deliveries = List.of();
+    }
+    CompletableFuture<Void> recorded = CompletableFuture
+        .allOf(deliveries.toArray(new CompletableFuture<?>[0]))
+        .thenRun(() -> {
+          List<WebhookDeliveryResult> results = new ArrayList<>();
+          for (CompletableFuture<WebhookDeliveryResult> delivery : deliveries) {
+            results.add(delivery.join());
+          }
+          completed.add(new Delivery(queueEntryId, eventName, results));
+        });
+    pending.add(recorded);
+    recorded.whenComplete((result, error) -> pending.remove(recorded));
+  }
+
+  /**
+   * @return The deliveries finished since the previous call, without waiting for the rest
+   */
+  public List<Delivery> poll() {
+    List<Delivery> deliveries = new ArrayList<>();
+    Delivery delivery;
+    while ((delivery = completed.poll()) != null) {
+      deliveries.add(delivery);
+    }
+    return deliveries;
+  }
+
+  /**
+   * Waits until every submitted event is delivered.
+   *
+   * @return The deliveries finished since the previous call to {@link #poll()}
+   */
+  public List<Delivery> drain() {
+    while (!pending.isEmpty()) {
+      CompletableFuture.allOf(pending.toArray(new CompletableFuture<?>[0])).join();
+    }
+    return poll();
+  }
+
+  /**
+   * Outcome of the delivery of a queued event to all its webhooks.
+   */
+  public static class Delivery {
+    private final String queueEntryId;
+    private final String eventName;
+    private final List<WebhookDeliveryResult> results;
+
+    Delivery(String queueEntryId, String eventName, List<WebhookDeliveryResult> results) {
+      this.queueEntryId = queueEntryId;
+      this.eventName = eventName;
+      this.results = results;
+    }
+
+    public String getQueueEntryId() {
+      return queueEntryId;
+    }
+
+    public String getEventName() {
+      return eventName;
+    }
+
+    public List<WebhookDeliveryResult> getResults() {
+      return results;
+    }
+
+    /**
+     * @return True if the event was delivered to all its webhooks
+     */
+    public boolean isSuccessful() {
+      return results.stream().allMatch(WebhookDeliveryResult::isSuccessful);
+    }
+  }
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import com.etendoerp.webhookevents.data.Webhook;
+
+/**
+ * Outcome of the delivery of an event to one of its webhooks.
+ */
+public class WebhookDeliveryResult {
+  private final Webhook webhook;
+  private final int status;
+  private final Exception error;
+
+  /**
+   * @param webhook
+   *     Webhook the event was sent to
+   * @param status
+   *     HTTP status of the response, or 0 if no response was received
+   * @param error
+   *     Cause of the failure, or null if the event was delivered
+   */
+  WebhookDeliveryResult(Webhook webhook, int status, Exception error) {
+    this.webhook = webhook;
+    this.status = status;
+    this.error = error;
+  }
+
+  public Webhook getWebhook() {
+    return webhook;
+  }
+
+  public int getStatus() {
+    return status;
+  }
+
+  public Exception getError() {
+    return error;
+  }
+
+  public boolean isSuccessful() {
+    return error == null;
+  }
+}
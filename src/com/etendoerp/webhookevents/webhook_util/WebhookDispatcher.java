@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+
+import org.apache.commons.lang3.BooleanUtils;
+import org.apache.log4j.Logger;
+import org.hibernate.criterion.Restrictions;
+import org.openbravo.base.structure.BaseOBObject;
+import org.openbravo.dal.service.OBCriteria;
+import org.openbravo.dal.service.OBDal;
+
+import com.etendoerp.webhookevents.data.Events;
+import com.etendoerp.webhookevents.data.Webhook;
+import com.etendoerp.webhookevents.exceptions.WebhookCircuitOpenException;
+
+/**
+ * Sends the events of a record to its webhooks in parallel, with a bounded number of requests in
+ * flight. The requests are built in the calling thread, as they read the record through the DAL,
+ * and only the HTTP exchanges run concurrently.
+ */
+class WebhookDispatcher {
+  private final Semaphore permits;
+  private final Logger logger;
+
+  /**
+   * @param maxParallel
+   *     Maximum number of requests waiting for their response
+   * @param logger
+   *     Info logger in log
+   */
+  WebhookDispatcher(int maxParallel, Logger logger) {
+    this.permits = new Semaphore(Math.max(1, maxParallel));
+    this.logger = logger;
+  }
+
+  /**
+   * Sends an event to all its active webhooks.
+   *
+   * @param event
+   *     Event to send
+   * @param bob
+   *     BaseOBObject to generate data (JSON or XML)
+   * @return The futures of the deliveries to each active webhook, they are never completed
+   *     exceptionally
+   */
+  List<CompletableFuture<WebhookDeliveryResult>> dispatch(Events event, BaseOBObject bob) {
+    OBCriteria<Webhook> cWebhook = OBDal.getInstance().createCriteria(Webhook.class);
+    cWebhook.add(Restrictions.eq(Webhook.PROPERTY_SMFWHEEVENTS, event));
+    List<CompletableFuture<WebhookDeliveryResult>> deliveries = new ArrayList<>();
+    for (Webhook hook : cWebhook.list()) {
+      if (BooleanUtils.isTrue(hook.isActive())) {
+        deliveries.add(dispatch(hook, bob));
+      }
+    }
+    return deliveries;
+  }
+
+  /**
+   * Builds the request of a webhook and sends it without waiting for the response. If the maximum
+   * number of requests are in flight, waits until one of them finishes.
+   *
+   * @param hook
+   *     Webhook to send the event to
+   * @param bob
+   *     BaseOBObject to generate data (JSON or XML)
+   * @return A future completed with the outcome of the delivery, it is never completed
+   *     exceptionally
+   */
+  CompletableFuture<WebhookDeliveryResult> dispatch(Webhook hook, BaseOBObject bob) {
+    WebhookHttpClient.Request request;
+    String destination;
+    try {
+      request = WebHookUtil.prepareEvent(hook, bob, logger);
+      destination = WebhookCircuitBreaker.getDestination(request.getUrl());
+      permits.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return CompletableFuture.completedFuture(new WebhookDeliveryResult(hook, 0, e));
+    } catch (Exception e) {
+      return CompletableFuture.completedFuture(new WebhookDeliveryResult(hook, 0, e));
+    }
+    WebhookCircuitBreaker breaker = WebhookCircuitBreaker.getInstance();
+    try {
+      breaker.acquire(destination);
+    } catch (WebhookCircuitOpenException e) {
+      permits.release();
+      return CompletableFuture.completedFuture(new WebhookDeliveryResult(hook, 0, e));
+    }
+    try {
+      return WebhookHttpClient.getInstance().sendAsync(request).handle((response, error) -> {
+        permits.release();
+        breaker.record(destination, WebhookCircuitBreaker.isFailure(
+            response != null ? response.getStatus() : 0, error));
+        if (error != null) {
+          return new WebhookDeliveryResult(hook, 0, toException(error));
+        }
+        try {
+          checkResponse(request, response, logger);
+          return new WebhookDeliveryResult(hook, response.getStatus(), null);
+        } catch (IOException e) {
+          return new WebhookDeliveryResult(hook, response.getStatus(), e);
+        }
+      });
+    } catch (RuntimeException e) {
+      // The request was not sent, so it says nothing about the destination
+      permits.release();
+      breaker.release(destination);
+      return CompletableFuture.completedFuture(new WebhookDeliveryResult(hook, 0, e));
+    }
+  }
+
+  /**
+   * Sends a request and waits for the response, unless the circuit breaker of its destination is
+   * open.
+   *
+   * @throws WebhookCircuitOpenException
+   *     If the breaker of the destination is open
+   * @throws IOException
+   *     If the request fails or the status of the response is an error
+   * @throws InterruptedException
+   *     If the thread is interrupted while waiting for the response
+   */
+  static void send(WebhookHttpClient.Request request, Logger logger)
+      throws WebhookCircuitOpenException, IOException, InterruptedException {
+    WebhookCircuitBreaker breaker = WebhookCircuitBreaker.getInstance();
+    String destination = WebhookCircuitBreaker.getDestination(request.getUrl());
+    breaker.acquire(destination);
+    WebhookHttpClient.Response response;
+    try {
+      response = WebhookHttpClient.getInstance().send(request);
+    } catch (IOException e) {
+      breaker.record(destination, true);
+      throw e;
+    } catch (InterruptedException | RuntimeException e) {
+      // The request was not sent or its outcome is unknown
+      breaker.release(destination);
+      throw e;
+    }
+    breaker.record(destination, WebhookCircuitBreaker.isFailure(response.getStatus(), null));
+    checkResponse(request, response, logger);
+  }
+
+  /**
+   * Logs the exchange and fails if the server answered with an error status.
+   *
+   * @throws IOException
+   *     If the status of the response is an error
+   */
+  static void checkResponse(WebhookHttpClient.Request request, WebhookHttpClient.Response response,
+      Logger logger) throws IOException {
+    logger.debug("nSending " + request.getMethod() + "request to URL : " + request.getUrl());
+    logger.debug("Post Data : " + request.getBody());
+    logger.debug("Response Code : " + response.getStatus());
+    if (!response.isSuccessful()) {
+      throw new IOException("Server returned HTTP response code: " + response.getStatus()
+          + " for URL: " + request.getUrl());
+    }
+
+    // printing result from response
+    logger.debug(response.getBody());
+  }
+
+  private static Exception toException(Throwable error) {
+    Throwable cause = error instanceof CompletionException && error.getCause() != null
+        ? error.getCause() : error;
+    return cause instanceof Exception ? (Exception) cause : new IOException(cause);
+  }
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.openbravo.base.exception.OBException;
+
+/**
+ * Shared client used to deliver the events to the webhooks. A single {@link HttpClient} is kept
+ * for the whole application, so connections are pooled per host and reused by keep-alive, HTTP/2
+ * connections multiplex the concurrent requests to the same host and TLS sessions are resumed
+ * instead of negotiated for every event.
+ * <p>
+ * The client is tuned with these properties of Openbravo.properties:
+ * <ul>
+ * <li>{@code webhooks.http.version}: HTTP_2 (default) or HTTP_1_1. HTTP/2 falls back to HTTP/1.1
+ * when the server does not support it.</li>
+ * <li>{@code webhooks.http.connectTimeout}: milliseconds to establish a connection, 5000 by
+ * default.</li>
+ * <li>{@code webhooks.http.readTimeout}: milliseconds to wait for the response headers, 30000 by
+ * default.</li>
+ * <li>{@code webhooks.http.totalTimeout}: milliseconds for the whole request, including the
+ * response body, 60000 by default.</li>
+ * </ul>
+ */
+public class WebhookHttpClient {
+  private static final Logger log = LogManager.getLogger();
+  private static final Set<String> RESTRICTED_HEADERS = new TreeSet<>(
+      String.CASE_INSENSITIVE_ORDER);
+
+  static {
+    RESTRICTED_HEADERS.addAll(Set.of("connection", "content-length", "expect", "host", "upgrade"));
+  }
+
+  private static WebhookHttpClient instance;
+
+  private final HttpClient client;
+  private final Duration readTimeout;
+  private final long totalTimeout;
+
+  WebhookHttpClient(HttpClient client, long readTimeout, long totalTimeout) {
+    this.client = client;
+    this.readTimeout = Duration.ofMillis(readTimeout);
+    this.totalTimeout = totalTimeout;
+  }
+
+  public static synchronized WebhookHttpClient getInstance() {
+    if (instance == null) {
+      instance = new WebhookHttpClient(HttpClient.newBuilder()
+          .version(getVersion())
+          .connectTimeout(Duration.ofMillis(
+              WebhookConfig.getLong("webhooks.http.connectTimeout", 5000)))
+          .followRedirects(HttpClient.Redirect.NORMAL)
+          .build(),
+          WebhookConfig.getLong("webhooks.http.readTimeout", 30000),
+          WebhookConfig.getLong("webhooks.http.totalTimeout", 60000));
+    }
+    return instance;
+  }
+
+  /**
+   * Discards the shared client, so the next call reads the settings again. Connections already
+   * open are closed by the previous client once they become idle.
+   */
+  public static synchronized void invalidate() {
+    instance = null;
+  }
+
+  /**
+   * Sends a request and waits for the whole response.
+   *
+   * @param request
+   *     Request to send
+   * @return The response of the server
+   * @throws IOException
+   *     If the request fails or does not finish within the timeouts
+   * @throws InterruptedException
+   *     If the thread is interrupted while waiting for the response
+   */
+  public Response send(Request request) throws IOException, InterruptedException {
+    CompletableFuture<Response> future = sendAsync(request);
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(true);
+      throw e;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Sends a request without blocking the calling thread.
+   *
+   * @param request
+   *     Request to send
+   * @return A future completed with the response of the server, or completed exceptionally with
+   *     an IOException if the request fails or does not finish within the timeouts. Cancelling
+   *     it aborts the request.
+   */
+  public CompletableFuture<Response> sendAsync(Request request) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(toUri(request.url))
+        .timeout(readTimeout)
+        .method(request.method, request.body == null ? HttpRequest.BodyPublishers.noBody()
+            : HttpRequest.BodyPublishers.ofString(request.body, StandardCharsets.UTF_8));
+    for (Map.Entry<String, String> header : request.headers.entrySet()) {
+      if (RESTRICTED_HEADERS.contains(header.getKey())) {
+        log.debug("Header {} is managed by the HTTP client and is not sent", header.getKey());
+      } else {
+        builder.setHeader(header.getKey(), StringUtils.defaultString(header.getValue()));
+      }
+    }
+
+    CompletableFuture<HttpResponse<String>> exchange = client.sendAsync(builder.build(),
+        HttpResponse.BodyHandlers.ofString());
+    CompletableFuture<Response> future = exchange.copy()
+        .orTimeout(totalTimeout, TimeUnit.MILLISECONDS)
+        .handle((response, error) -> {
+          if (error == null) {
+            return new Response(response.statusCode(), response.body());
+          }
+          Throwable cause = error instanceof CompletionException && error.getCause() != null
+              ? error.getCause() : error;
+          if (cause instanceof TimeoutException) {
+            cause = new HttpTimeoutException(
+                "Request to " + request.url + " did not finish within " + totalTimeout + " ms");
+          } else if (!(cause instanceof IOException)) {
+            cause = new IOException(cause);
+          }
+          throw new CompletionException(cause);
+        });
+    // Timing out or cancelling the returned future does not stop the exchange by itself
+    future.whenComplete((response, error) -> {
+      if (error != null) {
+        exchange.cancel(true);
+      }
+    });
+    return future;
+  }
+
+  private static URI toUri(String url) {
+    try {
+      URI uri = new URI(url);
+      if (!"http".equalsIgnoreCase(uri.getScheme()) && !"https".equalsIgnoreCase(uri.getScheme())) {
+        throw new OBException("Invalid URL: " + url);
+      }
+      return uri;
+    } catch (URISyntaxException e) {
+      throw new OBException("Invalid URL: " + url, e);
+    }
+  }
+
+  private static HttpClient.Version getVersion() {
+    String version = WebhookConfig.getString("webhooks.http.version", "HTTP_2");
+    try {
+      return HttpClient.Version.valueOf(version);
+    } catch (IllegalArgumentException e) {
+      log.warn("Invalid value '{}' for property webhooks.http.version, using HTTP_2", version);
+      return HttpClient.Version.HTTP_2;
+    }
+  }
+
+  /**
+   * Request to a webhook.
+   */
+  public static class Request {
+    private final String method;
+    private final String url;
+    private final Map<String, String> headers;
+    private final String body;
+
+    /**
+     * @param method
+     *     HTTP method
+     * @param url
+     *     Absolute http or https URL
+     * @param headers
+     *     Headers of the request. Headers managed by the client, like Connection or
+     *     Content-Length, are ignored.
+     * @param body
+     *     Body of the request, sent in UTF-8, or null to send no body
+     */
+    public Request(String method, String url, Map<String, String> headers, String body) {
+      this.method = method;
+      this.url = url;
+      this.headers = headers;
+      this.body = body;
+    }
+
+    public String getMethod() {
+      return method;
+    }
+
+    public String getUrl() {
+      return url;
+    }
+
+    public Map<String, String> getHeaders() {
+      return headers;
+    }
+
+    public String getBody() {
+      return body;
+    }
+  }
+
+  /**
+   * Status and body of a response.
+   */
+  public static class Response {
+    private final int status;
+    private final String body;
+
+    Response(int status, String body) {
+      this.status = status;
+      this.body = body;
+    }
+
+    public int getStatus() {
+      return status;
+    }
+
+    public String getBody() {
+      return body;
+    }
+
+    /**
+     * @return True if the status is not an error, that is, lower than 400
+     */
+    public boolean isSuccessful() {
+      return status < 400;
+    }
+  }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.openbravo.dal.core.OBContext;
+import org.openbravo.erpCommon.utility.Utility;
+import org.openbravo.service.db.DalConnectionProvider;
+
+/**
+ * Cache of the translated messages used by the webhooks, keyed by message and language. Messages
+ * are read from the database only the first time they are used in each language, so error paths
+ * do not query the database. Changes in the messages or their translations must call
+ * {@link #invalidate()}.
+ */
+public class WebhookMessages {
+  private static final String DEFAULT_LANGUAGE = "en_US";
+  private static final Map<String, String> messages = new ConcurrentHashMap<>();
+
+  private WebhookMessages() {
+  }
+
+  /**
+   * Returns a message in the language of the current context.
+   *
+   * @param key
+   *     Search key of the message
+   * @return The translated message
+   */
+  public static String getMessage(String key) {
+    return getMessage(key, getLanguage());
+  }
+
+  /**
+   * Returns a message in the given language.
+   *
+   * @param key
+   *     Search key of the message
+   * @param language
+   *     Language of the message
+   * @return The translated message
+   */
+  public static String getMessage(String key, String language) {
+    String cacheKey = language + "\n" + key;
+    String message = messages.get(cacheKey);
+    if (message == null) {
+      message = Utility.messageBD(new DalConnectionProvider(false), key, language);
+      if (message != null) {
+        messages.put(cacheKey, message);
+      }
+    }
+    return message;
+  }
+
+  /**
+   * Returns a message in the language of the current context, formatted with the given arguments.
+   *
+   * @param key
+   *     Search key of the message
+   * @param args
+   *     Arguments referenced by the format specifiers of the message
+   * @return The formatted message
+   */
+  public static String format(String key, Object... args) {
+    return String.format(getMessage(key), args);
+  }
+
+  /**
+   * @return Language of the current context, or en_US if there is no context
+   */
+  public static String getLanguage() {
+    OBContext obContext = OBContext.getOBContext();
+    return obContext != null && obContext.getLanguage() != null
+        ? obContext.getLanguage().getLanguage()
+        : DEFAULT_LANGUAGE;
+  }
+
+  /**
+   * Discards every cached message.
+   */
+  public static void invalidate() {
+    messages.clear();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2022 Futit Services SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ */
+
+package com.etendoerp.webhookevents.webhook_util;
+
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Schedules the retries of the failed deliveries with an exponential backoff. The delay doubles
+ * on every attempt, up to a maximum, and a random jitter of up to half the delay spreads the
+ * retries of the events that failed together.
+ * <p>
+ * The policy is tuned with these properties of Openbravo.properties:
+ * <ul>
+ * <li>{@code webhooks.delivery.maxAttempts}: failed attempts after which the event is moved to
+ * the dead letters, 8 by default.</li>
+ * <li>{@code webhooks.delivery.retryDelay}: milliseconds before the first retry, 30000 by
+ * default.</li>
+ * <li>{@code webhooks.delivery.maxRetryDelay}: maximum milliseconds between retries, 3600000 by
+ * default.</li>
+ * </ul>
+ */
+public class WebhookRetryPolicy {
+  private final int maxAttempts;
+  private final long retryDelay;
+  private final long maxRetryDelay;
+
+  /**
+   * Creates the policy configured in Openbravo.properties.
+   */
+  public WebhookRetryPolicy() {
+    this(WebhookConfig.getInt("webhooks.delivery.maxAttempts", 8),
+        WebhookConfig.getLong("webhooks.delivery.retryDelay", 30000),
+        WebhookConfig.getLong("webhooks.delivery.maxRetryDelay", 3600000));
+  }
+
+  WebhookRetryPolicy(int maxAttempts, long retryDelay, long maxRetryDelay) {
+    this.maxAttempts = Math.max(1, maxAttempts);
+    this.retryDelay = Math.max(1, retryDelay);
+    this.maxRetryDelay = Math.max(this.retryDelay, maxRetryDelay);
+  }
+
+  /**
+   * @param attempts
+   *     Number of failed attempts, including the last one
+   * @return True if the event must not be retried anymore
+   */
+  public boolean isExhausted(long attempts) {
+    return attempts >= maxAttempts;
+  }
+
+  /**
+   * @param attempts
+   *     Number of failed attempts, including the last one
+   * @return Milliseconds to wait before the next attempt
+   */
+  public long getDelay(long attempts) {
+    int exponent = (int) Math.min(Math.max(attempts - 1, 0), 62);
+    long delay = retryDelay > maxRetryDelay >> exponent ? maxRetryDelay : retryDelay << exponent;
+    long half = delay / 2;
+    return delay - half + ThreadLocalRandom.current().nextLong(half + 1);
+  }
+
+  /**
+   * @param attempts
+   *     Number of failed attempts, including the last one
+   * @return Date of the next attempt
+   */
+  public Date getNextAttempt(long attempts) {
+    return new Date(System.currentTimeMillis() + getDelay(attempts));
+  }
+}